@@ -0,0 +1,152 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A KeyList that keeps its keys in an array instead of a LinkedList. The first key is stored in a
+ * field of its own, so a node holding a single key needs no array at all, and further keys go into
+ * an array that doubles in size when it fills up. Compared to KeyList this saves the list object
+ * and one node object per key, and iteration reads consecutive array slots.
+ */
+public class ArrayKeyList<T extends Comparable<T>> implements KeyListInterface<T> {
+
+  // the first key, which every other key must compare equal to
+  private T first;
+  // keys after the first, null until a second key is added
+  private Object[] rest;
+  // number of keys, including the first
+  private int size;
+
+  /**
+   * Create a new ArrayKeyList holding a single key.
+   * @param firstKey the first key of the list
+   */
+  public ArrayKeyList(T firstKey) {
+    if (firstKey == null) throw new NullPointerException("keys cannot be null");
+    first = firstKey;
+    size = 1;
+  }
+
+  /**
+   * Adds another object with the same key to the list.
+   * @param newKey new object that maps to the same key as all objects in the list
+   */
+  @Override
+  public void addKey(T newKey) {
+    if (first.compareTo(newKey) != 0) {
+      throw new IllegalArgumentException("compareTo for keys in same list must return 0");
+    }
+    if (rest == null) {
+      rest = new Object[2];
+    } else if (size - 1 == rest.length) {
+      rest = Arrays.copyOf(rest, rest.length * 2);
+    }
+    rest[size - 1] = newKey;
+    size++;
+  }
+
+  /**
+   * Checks if the list contains key.
+   * @return true if this list contains key, false if not
+   */
+  @Override
+  public boolean containsKey(T key) {
+    if (first.equals(key)) {
+      return true;
+    }
+    for (int i = 0; i < size - 1; i++) {
+      if (rest[i].equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes the first key in the list that is equal to key. The keys after it move up one slot,
+   * so the remaining keys keep the order they were added in.
+   * @return true if a key was removed, false if this list does not contain key
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean removeKey(T key) {
+    int index = -1;
+    if (size > 0 && first.equals(key)) {
+      index = 0;
+    } else {
+      for (int i = 0; i < size - 1 && index < 0; i++) {
+        if (rest[i].equals(key)) {
+          index = i + 1;
+        }
+      }
+    }
+    if (index < 0) {
+      return false;
+    }
+    if (index == 0 && size > 1) {
+      first = (T) rest[0];
+      index = 1;
+    }
+    if (index > 0) {
+      System.arraycopy(rest, index, rest, index - 1, size - 1 - index);
+      rest[size - 2] = null;
+    }
+    size--;
+    return true;
+  }
+
+  /**
+   * Returns the first key added to the list.
+   * @return the first key
+   */
+  @Override
+  public T firstKey() {
+    return first;
+  }
+
+  /**
+   * Returns the number of keys in the list.
+   * @return the number of keys
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Compares this list to another list based on their first keys.
+   * @param o reference to the other list for this comparison
+   * @return negative, zero or positive as the keys in this list are smaller than, equal to or
+   *         larger than the keys in the other list
+   */
+  @Override
+  public int compareTo(KeyListInterface<T> o) {
+    return first.compareTo(o.firstKey());
+  }
+
+  /**
+   * Returns an iterator over the keys in the order they were added.
+   * @return the iterator object
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        return index++ == 0 ? first : (T) rest[index - 2];
+      }
+    };
+  }
+
+}
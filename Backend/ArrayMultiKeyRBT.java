@@ -0,0 +1,980 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A red-black tree with multiple keys per node, like IterableMultiKeyRBT, that keeps its nodes in
+ * parallel arrays instead of objects. A node is an int id: its first key, children, parent and
+ * color are stored at that position of the arrays, and further keys equal to the first are
+ * chained through a shared pool of arrays in insertion order. A tree of n distinct keys therefore
+ * uses a handful of large arrays instead of several objects per node, which leaves the garbage
+ * collector almost nothing to trace. After compact, the nodes are numbered in key order, so a scan
+ * reads the arrays sequentially.
+ *
+ * When a node loses its last key, the last node moves into its id, so the ids stay contiguous.
+ * Removed extra keys leave a hole in the pool until the next compact. The KeyListInterface values
+ * of the SortedCollectionInterface methods are views of a node and are created on demand.
+ *
+ * @param <T> The type of the keys in the tree. Must be Comparable.
+ */
+public class ArrayMultiKeyRBT<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  // Id used for a missing child or parent
+  private static final int NIL = -1;
+  // Number of nodes and extra keys the arrays start with
+  private static final int INITIAL_CAPACITY = 16;
+  // The ids a node links to are stored next to each other in links, at these offsets
+  private static final int LEFT = 0;
+  private static final int RIGHT = 1;
+  private static final int PARENT = 2;
+  private static final int FIRST_EXTRA = 3; // position in extraKeys of the node's second key
+  private static final int LINKS = 4;
+
+  // First key of each node
+  private Object[] keys;
+  // Left child, right child, parent and first extra key of each node, NIL if missing. Keeping
+  // them in one array puts everything a scan reads about a node into the same cache line.
+  private int[] links;
+  // Color of each node, true for red
+  private boolean[] red;
+  // Position in extraKeys of the last key of each node, NIL if it has a single key
+  private int[] lastExtra;
+
+  // Keys after the first of a node, and the position of the next key of the same node
+  private Object[] extraKeys;
+  private int[] nextExtra;
+  private int extraCount;
+
+  private int root;
+  // Number of nodes, which are the ids 0 to size - 1
+  private int size;
+  // Number of keys in the tree
+  private int numKeys;
+  // The starting point for the iteration
+  private Comparable<T> startPoint;
+
+  /**
+   * Creates an empty tree.
+   */
+  public ArrayMultiKeyRBT() {
+    clear();
+  }
+
+  /**
+   * Inserts a key into the tree. If the tree has an equal key, the key is added to that key's
+   * node, after the keys it already has.
+   *
+   * @param key object to insert
+   * @return true if a new node was created for the key, false if the key was added to an existing
+   *         node.
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  public boolean insertSingleKey(T key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key cannot be null.");
+    }
+    numKeys++;
+    int node = findOrCreateNode(key);
+    if (node < 0) {
+      return true;
+    }
+    addExtraKey(node, key);
+    return false;
+  }
+
+  /**
+   * Removes one key that is equal to key. The node holding keys that compare equal to key is found
+   * in O(log n), and the first of its keys that is equal to key is removed, so the others keep
+   * their order. When that was the node's last key, the node is removed from the tree.
+   *
+   * @param key object to remove
+   * @return true if a key was removed, false if the tree does not contain key
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean removeKey(T key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key cannot be null.");
+    }
+    int node = root;
+    while (node != NIL) {
+      int compare = key.compareTo((T) keys[node]);
+      if (compare == 0) {
+        break;
+      }
+      node = compare < 0 ? left(node) : right(node);
+    }
+    if (node == NIL) {
+      return false;
+    }
+    if (keys[node].equals(key)) {
+      int extra = firstExtra(node);
+      if (extra == NIL) {
+        removeNode(node);
+      } else {
+        // The second key becomes the first.
+        keys[node] = extraKeys[extra];
+        setFirstExtra(node, nextExtra[extra]);
+        if (nextExtra[extra] == NIL) {
+          lastExtra[node] = NIL;
+        }
+        extraKeys[extra] = null;
+      }
+      numKeys--;
+      return true;
+    }
+    int previous = NIL;
+    for (int extra = firstExtra(node); extra != NIL; extra = nextExtra[extra]) {
+      if (extraKeys[extra].equals(key)) {
+        if (previous == NIL) {
+          setFirstExtra(node, nextExtra[extra]);
+        } else {
+          nextExtra[previous] = nextExtra[extra];
+        }
+        if (lastExtra[node] == extra) {
+          lastExtra[node] = previous;
+        }
+        extraKeys[extra] = null;
+        numKeys--;
+        return true;
+      }
+      previous = extra;
+    }
+    return false;
+  }
+
+  /**
+   * Inserts all keys of a list as a new node.
+   *
+   * @param data the keys to insert, which must all be equal
+   * @return true if the keys were inserted, false if the tree already has a node for them
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the tree.");
+    }
+    if (contains(data)) {
+      return false;
+    }
+    Iterator<T> values = data.iterator();
+    int node = ~findOrCreateNode(values.next());
+    numKeys++;
+    while (values.hasNext()) {
+      addExtraKey(node, values.next());
+      numKeys++;
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the tree has a node whose keys compare equal to data.
+   *
+   * @param data the key list to find
+   * @return true if there is such a node
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    if (data == null) {
+      throw new NullPointerException("This tree cannot store null references.");
+    }
+    int node = root;
+    while (node != NIL) {
+      int compare = data.compareTo(new NodeKeys(node));
+      if (compare == 0) {
+        return true;
+      }
+      node = compare < 0 ? left(node) : right(node);
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of nodes, which is the number of distinct keys
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of keys in the tree
+   */
+  @Override
+  public int numKeys() {
+    return numKeys;
+  }
+
+  /**
+   * Removes all keys from the tree and releases its arrays.
+   */
+  @Override
+  public void clear() {
+    keys = new Object[INITIAL_CAPACITY];
+    links = new int[INITIAL_CAPACITY * LINKS];
+    red = new boolean[INITIAL_CAPACITY];
+    lastExtra = new int[INITIAL_CAPACITY];
+    extraKeys = new Object[INITIAL_CAPACITY];
+    nextExtra = new int[INITIAL_CAPACITY];
+    extraCount = 0;
+    root = NIL;
+    size = 0;
+    numKeys = 0;
+  }
+
+  /**
+   * Renumbers the nodes and extra keys in key order, so that a scan reads every array from front
+   * to back instead of jumping between positions in insertion order. The tree keeps the same
+   * shape and colors. The arrays are resized to the keys the tree holds, which also frees the
+   * holes that removed extra keys left in the pool. This takes O(n) time and is worth doing once
+   * after loading or removing many keys.
+   */
+  public void compact() {
+    int[] newId = new int[size];
+    int next = 0;
+    for (int node = leftmost(); node != NIL; node = successor(node)) {
+      newId[node] = next++;
+    }
+    Object[] newKeys = new Object[Math.max(size, INITIAL_CAPACITY)];
+    int[] newLinks = new int[newKeys.length * LINKS];
+    boolean[] newRed = new boolean[newKeys.length];
+    int[] newLastExtra = new int[newKeys.length];
+    // Every key after the first of a node is an extra key.
+    Object[] newExtraKeys = new Object[Math.max(numKeys - size, INITIAL_CAPACITY)];
+    int[] newNextExtra = new int[newExtraKeys.length];
+    int extras = 0;
+    for (int node = 0; node < size; node++) {
+      int id = newId[node];
+      newKeys[id] = keys[node];
+      newRed[id] = red[node];
+      newLinks[id * LINKS + LEFT] = left(node) == NIL ? NIL : newId[left(node)];
+      newLinks[id * LINKS + RIGHT] = right(node) == NIL ? NIL : newId[right(node)];
+      newLinks[id * LINKS + PARENT] = parent(node) == NIL ? NIL : newId[parent(node)];
+    }
+    // Copy the extra keys node by node in key order, so each node's keys are adjacent.
+    for (int node = leftmost(); node != NIL; node = successor(node)) {
+      int id = newId[node];
+      newLinks[id * LINKS + FIRST_EXTRA] = firstExtra(node) == NIL ? NIL : extras;
+      newLastExtra[id] = NIL;
+      for (int extra = firstExtra(node); extra != NIL; extra = nextExtra[extra]) {
+        newExtraKeys[extras] = extraKeys[extra];
+        newNextExtra[extras] = nextExtra[extra] == NIL ? NIL : extras + 1;
+        newLastExtra[id] = extras++;
+      }
+    }
+    root = root == NIL ? NIL : newId[root];
+    keys = newKeys;
+    links = newLinks;
+    red = newRed;
+    lastExtra = newLastExtra;
+    extraKeys = newExtraKeys;
+    nextExtra = newNextExtra;
+    extraCount = extras;
+  }
+
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  /**
+   * Returns an iterator over all keys in order, starting at the iteration start point if one is
+   * set. Each iterator keeps its own position.
+   *
+   * @return the iterator
+   */
+  @Override
+  public Iterator<T> iterator() {
+    int start;
+    if (startPoint == null) {
+      start = leftmost();
+    } else {
+      start = ceilingNode(startPoint);
+    }
+    return new ArrayTreeIterator(start);
+  }
+
+  /**
+   * Iterates over the keys of the nodes from a start node on, following parent ids.
+   */
+  private class ArrayTreeIterator implements Iterator<T> {
+    private int node;
+    private int extra = NIL; // position of the next key in extraKeys, NIL for the first key
+
+    private ArrayTreeIterator(int start) {
+      this.node = start;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return node != NIL;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (node == NIL) {
+        throw new NoSuchElementException();
+      }
+      T key;
+      if (extra == NIL) {
+        key = (T) keys[node];
+        extra = firstExtra(node);
+      } else {
+        key = (T) extraKeys[extra];
+        extra = nextExtra[extra];
+      }
+      if (extra == NIL) {
+        node = successor(node);
+      }
+      return key;
+    }
+  }
+
+  /**
+   * A view of the keys of one node.
+   */
+  private class NodeKeys implements KeyListInterface<T> {
+    private final int node;
+
+    private NodeKeys(int node) {
+      this.node = node;
+    }
+
+    @Override
+    public void addKey(T newKey) {
+      addExtraKey(node, newKey);
+      numKeys++;
+    }
+
+    @Override
+    public boolean containsKey(T key) {
+      for (T other : this) {
+        if (other.equals(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Removes a key of this node with ArrayMultiKeyRBT.removeKey. The view must not be used once
+     * the node has lost its last key, since its id then belongs to another node.
+     */
+    @Override
+    public boolean removeKey(T key) {
+      return containsKey(key) && ArrayMultiKeyRBT.this.removeKey(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T firstKey() {
+      return (T) keys[node];
+    }
+
+    @Override
+    public int size() {
+      int count = 1;
+      for (int extra = firstExtra(node); extra != NIL; extra = nextExtra[extra]) {
+        count++;
+      }
+      return count;
+    }
+
+    @Override
+    public int compareTo(KeyListInterface<T> other) {
+      return firstKey().compareTo(other.firstKey());
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        private int extra = NIL;
+        private boolean started = false;
+
+        @Override
+        public boolean hasNext() {
+          return !started || extra != NIL;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          if (!started) {
+            started = true;
+            extra = firstExtra(node);
+            return (T) keys[node];
+          }
+          T key = (T) extraKeys[extra];
+          extra = nextExtra[extra];
+          return key;
+        }
+      };
+    }
+  }
+
+  /**
+   * Finds the node of a key, or creates one if there is none.
+   *
+   * @param key the key
+   * @return the id of the existing node, or ~id of the new node (a negative number)
+   */
+  @SuppressWarnings("unchecked")
+  private int findOrCreateNode(T key) {
+    int node = root;
+    int above = NIL;
+    int compare = 0;
+    while (node != NIL) {
+      compare = key.compareTo((T) keys[node]);
+      if (compare == 0) {
+        return node;
+      }
+      above = node;
+      node = compare < 0 ? left(node) : right(node);
+    }
+
+    if (size == keys.length) {
+      int capacity = keys.length * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      links = Arrays.copyOf(links, capacity * LINKS);
+      red = Arrays.copyOf(red, capacity);
+      lastExtra = Arrays.copyOf(lastExtra, capacity);
+    }
+    node = size++;
+    keys[node] = key;
+    setLeft(node, NIL);
+    setRight(node, NIL);
+    setParent(node, above);
+    red[node] = true;
+    setFirstExtra(node, NIL);
+    lastExtra[node] = NIL;
+    if (above == NIL) {
+      root = node;
+    } else if (compare < 0) {
+      setLeft(above, node);
+    } else {
+      setRight(above, node);
+    }
+    enforceRBTreePropertiesAfterInsert(node);
+    return ~node;
+  }
+
+  /**
+   * Removes a node from the tree and restores the red-black properties. A node with two children
+   * first takes over the keys of its successor, which is then removed instead.
+   *
+   * @param node the node to remove
+   */
+  private void removeNode(int node) {
+    if (left(node) != NIL && right(node) != NIL) {
+      int next = right(node);
+      while (left(next) != NIL) {
+        next = left(next);
+      }
+      keys[node] = keys[next];
+      setFirstExtra(node, firstExtra(next));
+      lastExtra[node] = lastExtra[next];
+      node = next;
+    }
+    int child = left(node) != NIL ? left(node) : right(node);
+    if (child != NIL) {
+      // A node with one child is black and its child red, so the child takes its place and color.
+      replaceChild(node, child);
+      red[child] = false;
+    } else {
+      if (!red[node]) {
+        // Removing a black leaf shortens its paths, so fix that while the node still holds them.
+        enforceRBTreePropertiesBeforeRemove(node);
+      }
+      int above = parent(node);
+      if (above == NIL) {
+        root = NIL;
+      } else if (left(above) == node) {
+        setLeft(above, NIL);
+      } else {
+        setRight(above, NIL);
+      }
+    }
+    freeId(node);
+  }
+
+  /**
+   * Restores the red-black properties when a black node without children is about to be removed,
+   * by moving a black node into its paths from a sibling subtree or pushing the missing black up.
+   *
+   * @param node the black node that will be removed
+   */
+  private void enforceRBTreePropertiesBeforeRemove(int node) {
+    while (node != root && !red[node]) {
+      int above = parent(node);
+      boolean isLeft = node == left(above);
+      int sibling = isLeft ? right(above) : left(above); // exists because node is black
+      if (red[sibling]) {
+        red[sibling] = false;
+        red[above] = true;
+        if (isLeft) {
+          rotateLeft(above);
+        } else {
+          rotateRight(above);
+        }
+        sibling = isLeft ? right(above) : left(above);
+      }
+      int near = isLeft ? left(sibling) : right(sibling);
+      int far = isLeft ? right(sibling) : left(sibling);
+      if (!isRed(near) && !isRed(far)) {
+        red[sibling] = true;
+        node = above;
+        continue;
+      }
+      if (!isRed(far)) {
+        red[near] = false;
+        red[sibling] = true;
+        if (isLeft) {
+          rotateRight(sibling);
+        } else {
+          rotateLeft(sibling);
+        }
+        sibling = isLeft ? right(above) : left(above);
+        far = isLeft ? right(sibling) : left(sibling);
+      }
+      red[sibling] = red[above];
+      red[above] = false;
+      red[far] = false;
+      if (isLeft) {
+        rotateLeft(above);
+      } else {
+        rotateRight(above);
+      }
+      node = root;
+    }
+    red[node] = false;
+  }
+
+  /**
+   * @param node a node id or NIL
+   * @return true if node is a red node
+   */
+  private boolean isRed(int node) {
+    return node != NIL && red[node];
+  }
+
+  /**
+   * Releases the id of a node that is no longer linked into the tree by moving the last node into
+   * it, so the nodes keep the ids 0 to size - 1.
+   *
+   * @param node the id to release
+   */
+  private void freeId(int node) {
+    int last = --size;
+    if (node != last) {
+      keys[node] = keys[last];
+      red[node] = red[last];
+      lastExtra[node] = lastExtra[last];
+      System.arraycopy(links, last * LINKS, links, node * LINKS, LINKS);
+      int above = parent(node);
+      if (above == NIL) {
+        root = node;
+      } else if (left(above) == last) {
+        setLeft(above, node);
+      } else {
+        setRight(above, node);
+      }
+      if (left(node) != NIL) {
+        setParent(left(node), node);
+      }
+      if (right(node) != NIL) {
+        setParent(right(node), node);
+      }
+    }
+    keys[last] = null;
+  }
+
+  /**
+   * Appends a key to the keys of a node.
+   *
+   * @param node the node
+   * @param key  the key, which compares equal to the node's first key
+   */
+  private void addExtraKey(int node, T key) {
+    if (extraCount == extraKeys.length) {
+      extraKeys = Arrays.copyOf(extraKeys, extraCount * 2);
+      nextExtra = Arrays.copyOf(nextExtra, extraCount * 2);
+    }
+    int extra = extraCount++;
+    extraKeys[extra] = key;
+    nextExtra[extra] = NIL;
+    if (firstExtra(node) == NIL) {
+      setFirstExtra(node, extra);
+    } else {
+      nextExtra[lastExtra[node]] = extra;
+    }
+    lastExtra[node] = extra;
+  }
+
+  private int left(int node) {
+    return links[node * LINKS + LEFT];
+  }
+
+  private int right(int node) {
+    return links[node * LINKS + RIGHT];
+  }
+
+  private int parent(int node) {
+    return links[node * LINKS + PARENT];
+  }
+
+  private int firstExtra(int node) {
+    return links[node * LINKS + FIRST_EXTRA];
+  }
+
+  private void setLeft(int node, int child) {
+    links[node * LINKS + LEFT] = child;
+  }
+
+  private void setRight(int node, int child) {
+    links[node * LINKS + RIGHT] = child;
+  }
+
+  private void setParent(int node, int above) {
+    links[node * LINKS + PARENT] = above;
+  }
+
+  private void setFirstExtra(int node, int extra) {
+    links[node * LINKS + FIRST_EXTRA] = extra;
+  }
+
+  /**
+   * @param key a key
+   * @return the first node whose key is not less than key, NIL if there is none
+   */
+  @SuppressWarnings("unchecked")
+  private int ceilingNode(Comparable<T> key) {
+    int ceiling = NIL;
+    int node = root;
+    while (node != NIL) {
+      if (key.compareTo((T) keys[node]) <= 0) {
+        ceiling = node;
+        node = left(node);
+      } else {
+        node = right(node);
+      }
+    }
+    return ceiling;
+  }
+
+  /**
+   * @return the node with the smallest key, NIL if the tree is empty
+   */
+  private int leftmost() {
+    int node = root;
+    while (node != NIL && left(node) != NIL) {
+      node = left(node);
+    }
+    return node;
+  }
+
+  /**
+   * @param node a node
+   * @return the next node in key order, NIL if node is the last one
+   */
+  private int successor(int node) {
+    if (right(node) != NIL) {
+      node = right(node);
+      while (left(node) != NIL) {
+        node = left(node);
+      }
+      return node;
+    }
+    while (parent(node) != NIL && node == right(parent(node))) {
+      node = parent(node);
+    }
+    return parent(node);
+  }
+
+  /**
+   * Moves a node's right child into its place.
+   *
+   * @param node the node to rotate down
+   */
+  private void rotateLeft(int node) {
+    int child = right(node);
+    setRight(node, left(child));
+    if (left(child) != NIL) {
+      setParent(left(child), node);
+    }
+    replaceChild(node, child);
+    setLeft(child, node);
+    setParent(node, child);
+  }
+
+  /**
+   * Moves a node's left child into its place.
+   *
+   * @param node the node to rotate down
+   */
+  private void rotateRight(int node) {
+    int child = left(node);
+    setLeft(node, right(child));
+    if (right(child) != NIL) {
+      setParent(right(child), node);
+    }
+    replaceChild(node, child);
+    setRight(child, node);
+    setParent(node, child);
+  }
+
+  /**
+   * Links a node into the place of another node under that node's parent.
+   *
+   * @param node        the node whose place is taken
+   * @param replacement the node that takes it
+   */
+  private void replaceChild(int node, int replacement) {
+    int above = parent(node);
+    if (above == NIL) {
+      root = replacement;
+    } else if (left(above) == node) {
+      setLeft(above, replacement);
+    } else {
+      setRight(above, replacement);
+    }
+    setParent(replacement, above);
+  }
+
+  /**
+   * Restores the red-black properties after a red node has been added.
+   *
+   * @param node the new node
+   */
+  private void enforceRBTreePropertiesAfterInsert(int node) {
+    while (node != root && red[parent(node)]) {
+      int above = parent(node);
+      int grandParent = parent(above); // exists because the root is black
+      boolean aboveIsLeft = above == left(grandParent);
+      int aunt = aboveIsLeft ? right(grandParent) : left(grandParent);
+      if (aunt != NIL && red[aunt]) {
+        red[above] = false;
+        red[aunt] = false;
+        red[grandParent] = true;
+        node = grandParent;
+        continue;
+      }
+      if (aboveIsLeft && node == right(above)) {
+        rotateLeft(above);
+        above = node;
+      } else if (!aboveIsLeft && node == left(above)) {
+        rotateRight(above);
+        above = node;
+      }
+      red[above] = false;
+      red[grandParent] = true;
+      if (aboveIsLeft) {
+        rotateRight(grandParent);
+      } else {
+        rotateLeft(grandParent);
+      }
+      break;
+    }
+    red[root] = false;
+  }
+
+  /**
+   * Checks that this tree is a valid red-black tree: keys are in strictly increasing order,
+   * parent and child ids agree, the root is black, no red node has a red child, every path from
+   * the root to a missing child has the same number of black nodes, and every extra key equals
+   * the first key of its node.
+   *
+   * @throws IllegalStateException describing the first violation found
+   */
+  public void validate() {
+    if (root != NIL && (red[root] || parent(root) != NIL)) {
+      throw new IllegalStateException("root is red or has a parent");
+    }
+    int counted = validate(root)[1];
+    if (counted != numKeys) {
+      throw new IllegalStateException("numKeys is " + numKeys + " but the tree has " + counted);
+    }
+  }
+
+  /**
+   * Checks a subtree.
+   *
+   * @param node the root of the subtree
+   * @return the black height of the subtree and the number of keys in it
+   */
+  @SuppressWarnings("unchecked")
+  private int[] validate(int node) {
+    if (node == NIL) {
+      return new int[] {1, 0};
+    }
+    T key = (T) keys[node];
+    for (int child : new int[] {left(node), right(node)}) {
+      if (child != NIL && parent(child) != node) {
+        throw new IllegalStateException("parent id broken below " + key);
+      }
+      if (child != NIL && red[node] && red[child]) {
+        throw new IllegalStateException("red node with red child at " + key);
+      }
+    }
+    if ((left(node) != NIL && ((T) keys[left(node)]).compareTo(key) >= 0)
+        || (right(node) != NIL && ((T) keys[right(node)]).compareTo(key) <= 0)) {
+      throw new IllegalStateException("keys out of order at " + key);
+    }
+    int count = 0;
+    for (T other : new NodeKeys(node)) {
+      if (other.compareTo(key) != 0) {
+        throw new IllegalStateException("key " + other + " stored with " + key);
+      }
+      count++;
+    }
+    int[] leftResult = validate(left(node));
+    int[] rightResult = validate(right(node));
+    if (leftResult[0] != rightResult[0]) {
+      throw new IllegalStateException("black heights differ at " + key);
+    }
+    return new int[] {leftResult[0] + (red[node] ? 0 : 1), leftResult[1] + rightResult[1] + count};
+  }
+
+  /**
+   * Tests that the tree stores and iterates the same keys in the same order as an
+   * IterableMultiKeyRBT, with and without a start point.
+   */
+  @Test
+  public void testMatchesIterableMultiKeyRBT() {
+    ArrayMultiKeyRBT<Integer> tree = new ArrayMultiKeyRBT<>();
+    IterableMultiKeyRBT<Integer> expected = new IterableMultiKeyRBT<>();
+    Random random = new Random(22);
+    for (int i = 0; i < 3000; i++) {
+      Integer key = random.nextInt(1000);
+      Assertions.assertEquals(expected.insertSingleKey(key), tree.insertSingleKey(key));
+      if (i % 500 == 0) {
+        tree.validate();
+      }
+    }
+    tree.validate();
+    Assertions.assertEquals(expected.size(), tree.size());
+    Assertions.assertEquals(expected.numKeys(), tree.numKeys());
+    tree.compact();
+    tree.validate();
+    tree.insertSingleKey(500); // the arrays still grow after compacting
+    expected.insertSingleKey(500);
+    tree.validate();
+
+    for (Integer start : new Integer[] {null, -5, 0, 500, 999, 2000}) {
+      tree.setIterationStartPoint(start);
+      expected.setIterationStartPoint(start);
+      List<Integer> actual = new ArrayList<>();
+      tree.forEach(actual::add);
+      List<Integer> wanted = new ArrayList<>();
+      expected.forEach(wanted::add);
+      Assertions.assertEquals(wanted, actual);
+    }
+
+    // Remove most keys again, which frees nodes and moves the last node into their ids.
+    tree.setIterationStartPoint(null);
+    expected.setIterationStartPoint(null);
+    for (int i = 0; i < 2500; i++) {
+      Integer key = random.nextInt(1000);
+      Assertions.assertEquals(expected.removeKey(key), tree.removeKey(key));
+      if (i % 500 == 0) {
+        tree.validate();
+      }
+    }
+    tree.validate();
+    Assertions.assertEquals(expected.size(), tree.size());
+    Assertions.assertEquals(expected.numKeys(), tree.numKeys());
+    tree.compact();
+    tree.validate();
+    List<Integer> actual = new ArrayList<>();
+    tree.forEach(actual::add);
+    List<Integer> wanted = new ArrayList<>();
+    expected.forEach(wanted::add);
+    Assertions.assertEquals(wanted, actual);
+  }
+
+  /**
+   * Tests insert and contains with key lists, removal through the key list of a node, and that
+   * clear empties the tree.
+   */
+  @Test
+  public void testKeyListsAndClear() {
+    ArrayMultiKeyRBT<String> tree = new ArrayMultiKeyRBT<>();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> tree.insertSingleKey(null));
+    ArrayKeyList<String> list = new ArrayKeyList<>("b");
+    list.addKey("b");
+    Assertions.assertTrue(tree.insert(list));
+    Assertions.assertFalse(tree.insert(new ArrayKeyList<>("b")));
+    Assertions.assertTrue(tree.insertSingleKey("a"));
+    Assertions.assertFalse(tree.insertSingleKey("a"));
+    Assertions.assertTrue(tree.contains(new ArrayKeyList<>("a")));
+    Assertions.assertFalse(tree.contains(new ArrayKeyList<>("c")));
+    Assertions.assertEquals(2, tree.size());
+    Assertions.assertEquals(4, tree.numKeys());
+    tree.validate();
+
+    List<String> keys = new ArrayList<>();
+    tree.forEach(keys::add);
+    Assertions.assertEquals(List.of("a", "a", "b", "b"), keys);
+    // The key list of a node removes its keys from the tree.
+    KeyListInterface<String> rootKeys = tree.new NodeKeys(tree.root);
+    Assertions.assertEquals("b", rootKeys.firstKey());
+    Assertions.assertFalse(rootKeys.removeKey("a"));
+    Assertions.assertTrue(rootKeys.removeKey("b"));
+    Assertions.assertEquals(3, tree.numKeys());
+    Assertions.assertEquals(1, rootKeys.size());
+    tree.validate();
+
+    tree.clear();
+    Assertions.assertTrue(tree.isEmpty());
+    Assertions.assertEquals(0, tree.numKeys());
+    Assertions.assertFalse(tree.iterator().hasNext());
+  }
+
+  /**
+   * Tests that compact shrinks the pool of extra keys to the keys that are left after most of
+   * them were removed, and that keys inserted afterwards reuse the smaller pool.
+   */
+  @Test
+  public void testCompactShrinksPool() {
+    ArrayMultiKeyRBT<Integer> tree = new ArrayMultiKeyRBT<>();
+    for (int i = 0; i < 100_000; i++) {
+      tree.insertSingleKey(i % 100);
+    }
+    int poolLength = tree.extraKeys.length;
+    for (int i = 0; i < 100_000 - 5; i++) {
+      Assertions.assertTrue(tree.removeKey(i % 100));
+    }
+    Assertions.assertEquals(5, tree.numKeys());
+    Assertions.assertEquals(poolLength, tree.extraKeys.length);
+
+    tree.compact();
+    tree.validate();
+    Assertions.assertEquals(tree.numKeys() - tree.size(), tree.extraCount);
+    Assertions.assertEquals(INITIAL_CAPACITY, tree.extraKeys.length);
+    Assertions.assertEquals(INITIAL_CAPACITY, tree.keys.length);
+    for (int i = 0; i < 50; i++) {
+      tree.insertSingleKey(97);
+    }
+    tree.validate();
+    Assertions.assertEquals(55, tree.numKeys());
+    Assertions.assertEquals(64, tree.extraKeys.length);
+  }
+}
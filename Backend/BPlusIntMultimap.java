@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A SortedIntMultimapInterface kept in a BPlusMultiKeyTree, so a dataset created with
+ * BPlusIntMultimap::new as its calorie index factory answers substitute, range and median queries
+ * from B+-trees. Each value is stored with its key in an entry that compares by key only, and the
+ * tree places an entry after all entries with the same key, which keeps values with equal keys in
+ * insertion order.
+ *
+ * @param <V> the type of the values
+ */
+public class BPlusIntMultimap<V> implements SortedIntMultimapInterface<V> {
+
+  /**
+   * A value and its key. Entries compare by key, and are equal when they hold the same value
+   * object under the same key, so removeKey finds the entry of one value among equal keys.
+   */
+  private static class Entry<V> implements Comparable<Entry<V>> {
+    private final int key;
+    private final V value;
+
+    private Entry(int key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(Entry<V> other) {
+      return Integer.compare(key, other.key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Entry && ((Entry<?>) o).key == key && ((Entry<?>) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(value) + key;
+    }
+  }
+
+  private final BPlusMultiKeyTree<Entry<V>> tree = new BPlusMultiKeyTree<>();
+
+  /**
+   * @return the number of values in the collection
+   */
+  @Override
+  public int size() {
+    return tree.numKeys();
+  }
+
+  /**
+   * @return true if the collection has no values
+   */
+  @Override
+  public boolean isEmpty() {
+    return tree.isEmpty();
+  }
+
+  /**
+   * Removes all values.
+   */
+  @Override
+  public void clear() {
+    tree.clear();
+  }
+
+  /**
+   * Adds a value to a key. It is placed after all values the key already has.
+   *
+   * @param key   the key
+   * @param value the value, which may be null
+   */
+  @Override
+  public void insert(int key, V value) {
+    tree.insertSingleKey(new Entry<>(key, value));
+  }
+
+  /**
+   * Adds many entries at once. When the collection is empty, the tree is bulk loaded from full
+   * leaves; otherwise the values are inserted one by one.
+   *
+   * @param sortedValues the values, ordered by key; values with equal keys are kept in this order
+   * @param keyOf        gives the key of each value
+   * @throws IllegalArgumentException if the values are not ordered by key
+   */
+  @Override
+  public void insertSorted(List<V> sortedValues, ToIntFunction<V> keyOf) {
+    ArrayList<Entry<V>> entries = new ArrayList<>(sortedValues.size());
+    for (V value : sortedValues) {
+      entries.add(new Entry<>(keyOf.applyAsInt(value), value));
+    }
+    tree.insertSortedKeys(entries);
+  }
+
+  /**
+   * Removes a value from a key.
+   *
+   * @param key   the key
+   * @param value the value, compared by identity; the first occurrence is removed
+   * @return true if the value was removed, false if the key does not have this value
+   */
+  @Override
+  public boolean remove(int key, V value) {
+    return tree.removeKey(new Entry<>(key, value));
+  }
+
+  /**
+   * Counts the values whose key is within a range.
+   *
+   * @param low  the smallest key to count
+   * @param high the largest key to count
+   * @return the number of values with low <= key <= high
+   */
+  @Override
+  public int countInRange(int low, int high) {
+    return tree.countInRange(probe(low), probe(high));
+  }
+
+  /**
+   * Returns the key of the value at a position in key order.
+   *
+   * @param index the position, starting at 0
+   * @return the key at that position
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  @Override
+  public int keyAt(int index) {
+    return tree.select(index).key;
+  }
+
+  /**
+   * Returns an iterator over the values whose key is within a range, in key order. The iterator
+   * keeps its own position, so several can be used at the same time. It must not be used after
+   * the collection has been changed.
+   *
+   * @param low  the smallest key to include
+   * @param high the largest key to include
+   * @return an iterator over the values with low <= key <= high
+   */
+  @Override
+  public Iterator<V> range(int low, int high) {
+    Iterator<Entry<V>> entries = tree.iterator(probe(low));
+    return new Iterator<V>() {
+      private Entry<V> next = advance(); // the entry to return next, null at the end
+
+      private Entry<V> advance() {
+        Entry<V> entry = entries.hasNext() ? entries.next() : null;
+        return entry != null && entry.key <= high ? entry : null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public V next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        V value = next.value;
+        next = advance();
+        return value;
+      }
+    };
+  }
+
+  /**
+   * @return an iterator over all values in key order
+   */
+  @Override
+  public Iterator<V> iterator() {
+    return range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return a search key that compares to entries like an entry with the given key
+   */
+  private static <V> Comparable<Entry<V>> probe(int key) {
+    return entry -> Integer.compare(key, entry.key);
+  }
+
+  /**
+   * Tests that the collection answers like an IntRedBlackTree through inserts, bulk inserts and
+   * removals of values that share keys, including values that are equal but not the same object.
+   */
+  @Test
+  public void testMatchesIntRedBlackTree() {
+    Random random = new Random(27);
+    IntRedBlackTree<String> expected = new IntRedBlackTree<>();
+    BPlusIntMultimap<String> multimap = new BPlusIntMultimap<>();
+    ArrayList<String> values = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      values.add(new String("v" + i % 50));
+    }
+    values.sort((a, b) -> Integer.compare(a.length(), b.length()));
+    expected.insertSorted(values, String::length);
+    multimap.insertSorted(values, String::length);
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new BPlusIntMultimap<String>().insertSorted(List.of("bb", "a"), String::length));
+
+    ArrayList<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < values.size(); i++) {
+      keys.add(values.get(i).length());
+    }
+    for (int round = 0; round < 4; round++) {
+      for (int i = 0; i < 2000; i++) {
+        int index = random.nextInt(values.size());
+        String value = values.get(index);
+        Assertions.assertEquals(expected.remove(keys.get(index), value),
+            multimap.remove(keys.get(index), value));
+        int key = random.nextInt(40);
+        expected.insert(key, value);
+        multimap.insert(key, value);
+        keys.set(index, key);
+        Assertions.assertFalse(multimap.remove(key, new String(value)));
+      }
+      Assertions.assertEquals(expected.size(), multimap.size());
+      for (int low = -1; low < 42; low += 3) {
+        Assertions.assertEquals(expected.countInRange(low, low + 5),
+            multimap.countInRange(low, low + 5));
+        ArrayList<String> expectedRange = new ArrayList<>();
+        expected.range(low, low + 5).forEachRemaining(expectedRange::add);
+        ArrayList<String> actualRange = new ArrayList<>();
+        multimap.range(low, low + 5).forEachRemaining(actualRange::add);
+        Assertions.assertEquals(expectedRange.size(), actualRange.size());
+        for (int i = 0; i < expectedRange.size(); i++) {
+          Assertions.assertSame(expectedRange.get(i), actualRange.get(i));
+        }
+      }
+      for (int index = 0; index < expected.size(); index += 17) {
+        Assertions.assertEquals(expected.keyAt(index), multimap.keyAt(index));
+      }
+    }
+    Assertions.assertEquals(0, multimap.countInRange(10, 5));
+    Assertions.assertFalse(multimap.range(10, 5).hasNext());
+    Assertions.assertThrows(IndexOutOfBoundsException.class,
+        () -> multimap.keyAt(multimap.size()));
+    multimap.clear();
+    Assertions.assertTrue(multimap.isEmpty());
+    Assertions.assertThrows(NoSuchElementException.class, () -> multimap.iterator().next());
+  }
+}
@@ -0,0 +1,860 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A sorted collection with multiple keys per node, like IterableMultiKeyRBT, stored in a B+-tree.
+ * Every node holds up to 64 entries in an array, so a search visits about log64(n) nodes instead
+ * of log2(n), and reads each node's separators from one contiguous array. All keys are kept in
+ * the leaves, in sorted order with keys that compare equal next to each other in insertion order,
+ * and the leaves are linked to each other, so a scan moves from leaf to leaf without going back up
+ * the tree. A run of equal keys plays the part of a node of IterableMultiKeyRBT: size counts the
+ * runs, which may continue from one leaf into the next.
+ *
+ * Every node also counts the keys below it, so rank, select and countInRange take O(log n) steps,
+ * which lets the tree serve as a calorie index through BPlusIntMultimap.
+ *
+ * Nodes are split when they are full. A leaf that becomes empty is taken out of the tree, and once
+ * the leaves hold fewer than a quarter of the keys they have room for, the tree is rebuilt from
+ * full leaves. Scans and searches therefore stay proportional to the keys the tree holds rather
+ * than to the keys it ever held. A rebuild takes O(n) time and is followed by many removals before
+ * the next one, so removals take O(log n) amortized time.
+ *
+ * @param <T> The type of the keys. Must be Comparable.
+ */
+public class BPlusMultiKeyTree<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  // Maximum number of keys of a leaf and of children of an inner node
+  private static final int LEAF_CAPACITY = 64;
+  private static final int INNER_CAPACITY = 64;
+
+  /**
+   * A node of the tree, either a Leaf or an Inner node.
+   */
+  private abstract static class Node {
+    protected Inner parent; // null for the root
+    protected int count; // number of keys of a leaf, or of children of an inner node
+    protected int weight; // number of keys in the leaves under this node
+  }
+
+  /**
+   * A leaf, holding keys in sorted order.
+   */
+  private static class Leaf extends Node {
+    private final Object[] keys = new Object[LEAF_CAPACITY];
+    private Leaf previous; // the leaf with the next smaller keys
+    private Leaf next; // the leaf with the next larger keys
+  }
+
+  /**
+   * An inner node. Every key under children[i] is less than or equal to separators[i], and every
+   * key under children[i + 1] is greater than or equal to it.
+   */
+  private static class Inner extends Node {
+    private final Object[] separators = new Object[INNER_CAPACITY - 1];
+    private final Node[] children = new Node[INNER_CAPACITY];
+  }
+
+  private Node root = new Leaf();
+  // The leaf with the smallest keys, where iterations without a start point begin
+  private Leaf first = (Leaf) root;
+  // Number of keys, and number of runs of keys that compare equal
+  private int numKeys = 0;
+  private int runs = 0;
+  // Number of leaves, which decides when removals rebuild the tree
+  private int leaves = 1;
+  // The starting point for the iteration
+  private Comparable<T> startPoint;
+
+  /**
+   * Inserts a key after all keys that compare equal to it.
+   *
+   * @param key object to insert
+   * @return true if the tree had no key equal to it, false if it was added to a run
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  public boolean insertSingleKey(T key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key cannot be null.");
+    }
+    Leaf leaf = findLeaf(key, true);
+    int position = upperBound(leaf, key);
+    T previousKey = position > 0 ? keyAt(leaf, position - 1)
+        : leaf.previous != null ? keyAt(leaf.previous, leaf.previous.count - 1) : null;
+    boolean newRun = previousKey == null || previousKey.compareTo(key) != 0;
+
+    if (leaf.count == LEAF_CAPACITY) {
+      Leaf right = splitLeaf(leaf);
+      if (position > leaf.count) {
+        position -= leaf.count;
+        leaf = right;
+      }
+    }
+    System.arraycopy(leaf.keys, position, leaf.keys, position + 1, leaf.count - position);
+    leaf.keys[position] = key;
+    leaf.count++;
+    addWeight(leaf, 1);
+    numKeys++;
+    if (newRun) {
+      runs++;
+    }
+    return newRun;
+  }
+
+  /**
+   * Inserts all keys of a list, unless the tree already has keys equal to them.
+   *
+   * @param data the keys to insert
+   * @return true if the keys were inserted, false if the tree contains equal keys
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the tree.");
+    }
+    if (contains(data)) {
+      return false;
+    }
+    for (T key : data) {
+      insertSingleKey(key);
+    }
+    return true;
+  }
+
+  /**
+   * Inserts many keys that are already sorted. When the tree is empty, it is built bottom up from
+   * full leaves in O(n); otherwise each key is inserted with insertSingleKey.
+   *
+   * @param sortedKeys keys in non-decreasing order
+   * @throws IllegalArgumentException if a key is null or the keys are not sorted
+   */
+  @Override
+  public void insertSortedKeys(List<T> sortedKeys) {
+    if (!isEmpty()) {
+      IterableMultiKeySortedCollectionInterface.super.insertSortedKeys(sortedKeys);
+      return;
+    }
+    T previousKey = null;
+    for (T key : sortedKeys) {
+      if (key == null) {
+        throw new IllegalArgumentException("Key cannot be null.");
+      }
+      if (previousKey != null && previousKey.compareTo(key) > 0) {
+        throw new IllegalArgumentException("Keys must be sorted.");
+      }
+      previousKey = key;
+    }
+    if (sortedKeys.isEmpty()) {
+      return;
+    }
+
+    // Fill the leaves from left to right, and remember the smallest key of each.
+    ArrayList<Node> level = new ArrayList<>();
+    ArrayList<Object> smallest = new ArrayList<>();
+    Leaf leaf = null;
+    previousKey = null;
+    for (T key : sortedKeys) {
+      if (leaf == null || leaf.count == LEAF_CAPACITY) {
+        Leaf next = new Leaf();
+        if (leaf != null) {
+          leaf.next = next;
+          next.previous = leaf;
+        }
+        leaf = next;
+        level.add(leaf);
+        smallest.add(key);
+      }
+      leaf.keys[leaf.count++] = key;
+      leaf.weight++;
+      if (previousKey == null || previousKey.compareTo(key) != 0) {
+        runs++;
+      }
+      previousKey = key;
+    }
+    first = (Leaf) level.get(0);
+    numKeys = sortedKeys.size();
+    leaves = level.size();
+
+    // Build each level of inner nodes from the one below until a single node is left.
+    while (level.size() > 1) {
+      ArrayList<Node> parents = new ArrayList<>();
+      ArrayList<Object> parentSmallest = new ArrayList<>();
+      for (int start = 0; start < level.size(); start += INNER_CAPACITY) {
+        Inner inner = new Inner();
+        int end = Math.min(level.size(), start + INNER_CAPACITY);
+        for (int i = start; i < end; i++) {
+          Node child = level.get(i);
+          child.parent = inner;
+          if (i > start) {
+            inner.separators[inner.count - 1] = smallest.get(i);
+          }
+          inner.children[inner.count++] = child;
+          inner.weight += child.weight;
+        }
+        parents.add(inner);
+        parentSmallest.add(smallest.get(start));
+      }
+      level = parents;
+      smallest = parentSmallest;
+    }
+    root = level.get(0);
+  }
+
+  /**
+   * Removes the first key that is equal to key. A leaf that becomes empty is taken out of the
+   * tree, along with inner nodes that are left without children, and the tree is rebuilt once its
+   * leaves are less than a quarter full.
+   *
+   * @param key object to remove
+   * @return true if a key was removed, false if the tree does not contain key
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  public boolean removeKey(T key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key cannot be null.");
+    }
+    Leaf leaf = findLeaf(key, false);
+    int position = lowerBound(leaf, key);
+    // The keys that compare equal may continue over several leaves.
+    while (true) {
+      if (position == leaf.count) {
+        if (leaf.next == null) {
+          return false;
+        }
+        leaf = leaf.next;
+        position = 0;
+      }
+      T candidate = keyAt(leaf, position);
+      if (key.compareTo(candidate) != 0) {
+        return false;
+      }
+      if (candidate.equals(key)) {
+        break;
+      }
+      position++;
+    }
+
+    T previousKey = position > 0 ? keyAt(leaf, position - 1)
+        : leaf.previous != null ? keyAt(leaf.previous, leaf.previous.count - 1) : null;
+    T nextKey = position + 1 < leaf.count ? keyAt(leaf, position + 1)
+        : leaf.next != null ? keyAt(leaf.next, 0) : null;
+    if ((previousKey == null || previousKey.compareTo(key) != 0)
+        && (nextKey == null || nextKey.compareTo(key) != 0)) {
+      runs--;
+    }
+    leaf.count--;
+    System.arraycopy(leaf.keys, position + 1, leaf.keys, position, leaf.count - position);
+    leaf.keys[leaf.count] = null;
+    addWeight(leaf, -1);
+    numKeys--;
+    if (leaf.count == 0) {
+      removeLeaf(leaf);
+    }
+    if (leaves > 1 && numKeys < leaves * (LEAF_CAPACITY / 4)) {
+      rebuild();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the rank of a key: the number of keys in the tree that are less than it. This is also
+   * the index that select returns the first key equal to it for. Runs in O(log n).
+   *
+   * @param key the key to rank
+   * @return the number of keys less than key
+   * @throws NullPointerException if key is null
+   */
+  public int rank(Comparable<T> key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null.");
+    }
+    return countBefore(key, false);
+  }
+
+  /**
+   * Returns the key at an index of the sorted sequence of keys, so select(0) is the smallest key
+   * and select(numKeys() / 2) is a median. Runs in O(log n).
+   *
+   * @param index the index of the key, from 0 to numKeys() - 1
+   * @return the key at that index
+   * @throws IndexOutOfBoundsException if index is negative or not less than numKeys()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= numKeys) {
+      throw new IndexOutOfBoundsException("index " + index + " for " + numKeys + " keys");
+    }
+    Node node = root;
+    while (node instanceof Inner) {
+      Inner inner = (Inner) node;
+      int child = 0;
+      while (index >= inner.children[child].weight) {
+        index -= inner.children[child].weight;
+        child++;
+      }
+      node = inner.children[child];
+    }
+    return keyAt((Leaf) node, index);
+  }
+
+  /**
+   * Counts the keys between two bounds, both inclusive, in O(log n).
+   *
+   * @param low  the smallest key to count
+   * @param high the largest key to count
+   * @return the number of keys k with low <= k <= high, or 0 if low is after high
+   * @throws NullPointerException if low or high is null
+   */
+  public int countInRange(Comparable<T> low, Comparable<T> high) {
+    if (low == null || high == null) {
+      throw new NullPointerException("Bounds cannot be null.");
+    }
+    return Math.max(0, countBefore(high, true) - countBefore(low, false));
+  }
+
+  /**
+   * Checks whether the tree has keys that compare equal to data.
+   *
+   * @param data the key list to find
+   * @return true if there are such keys
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    if (data == null) {
+      throw new NullPointerException("This tree cannot store null references.");
+    }
+    Comparable<T> probe = key -> data.compareTo(new ArrayKeyList<>(key));
+    Leaf leaf = findLeaf(probe, false);
+    int position = lowerBound(leaf, probe);
+    if (position == leaf.count) {
+      if (leaf.next == null) {
+        return false;
+      }
+      leaf = leaf.next;
+      position = 0;
+    }
+    return position < leaf.count && probe.compareTo(keyAt(leaf, position)) == 0;
+  }
+
+  /**
+   * @return the number of runs of equal keys, which is the number of distinct keys
+   */
+  @Override
+  public int size() {
+    return runs;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return numKeys == 0;
+  }
+
+  @Override
+  public int numKeys() {
+    return numKeys;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(startPoint);
+  }
+
+  /**
+   * Returns an iterator over the keys that are equal to or greater than from. Unlike
+   * setIterationStartPoint, this does not change the state of the tree.
+   *
+   * @param from lower bound of the iteration, or null to start from the first key
+   * @return Iterator for in-order traversal from the lower bound.
+   */
+  public Iterator<T> iterator(Comparable<T> from) {
+    if (from == null) {
+      return new LeafIterator(first, 0);
+    }
+    Leaf leaf = findLeaf(from, false);
+    return new LeafIterator(leaf, lowerBound(leaf, from));
+  }
+
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  @Override
+  public void clear() {
+    root = new Leaf();
+    first = (Leaf) root;
+    numKeys = 0;
+    runs = 0;
+    leaves = 1;
+  }
+
+  /**
+   * Iterates over the keys by moving through the linked leaves.
+   */
+  private class LeafIterator implements Iterator<T> {
+    private Leaf leaf; // the leaf of the next key, null once all keys were returned
+    private int position; // position of the next key in leaf
+
+    LeafIterator(Leaf leaf, int position) {
+      this.leaf = leaf;
+      this.position = position;
+      skipToKey();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return leaf != null;
+    }
+
+    @Override
+    public T next() {
+      if (leaf == null) {
+        throw new NoSuchElementException();
+      }
+      T key = keyAt(leaf, position++);
+      skipToKey();
+      return key;
+    }
+
+    /**
+     * Moves to the next leaf once every key of the current one was returned.
+     */
+    private void skipToKey() {
+      while (leaf != null && position == leaf.count) {
+        leaf = leaf.next;
+        position = 0;
+      }
+    }
+  }
+
+  /**
+   * Finds the leaf where a search for key ends.
+   *
+   * @param key   the key to search for
+   * @param after true to find the leaf after which no key compares equal to key, false to find
+   *              the leaf before which every key is smaller than key
+   * @return the leaf
+   */
+  private Leaf findLeaf(Comparable<T> key, boolean after) {
+    Node node = root;
+    while (node instanceof Inner) {
+      Inner inner = (Inner) node;
+      // Count the separators that are smaller than key, or not greater than it when after is set.
+      int low = 0;
+      int high = inner.count - 1;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        int compare = key.compareTo(separatorAt(inner, middle));
+        if (compare > 0 || (after && compare == 0)) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      node = inner.children[low];
+    }
+    return (Leaf) node;
+  }
+
+  /**
+   * Counts the keys that are less than key, or not greater than it when inclusive is set, by
+   * adding up the weights of the children left of the search path.
+   *
+   * @param key       the key to count up to
+   * @param inclusive whether keys that compare equal to key are counted
+   * @return the number of keys before key
+   */
+  private int countBefore(Comparable<T> key, boolean inclusive) {
+    Node node = root;
+    int before = 0;
+    while (node instanceof Inner) {
+      Inner inner = (Inner) node;
+      // Same search as findLeaf
+      int low = 0;
+      int high = inner.count - 1;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        int compare = key.compareTo(separatorAt(inner, middle));
+        if (compare > 0 || (inclusive && compare == 0)) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      for (int child = 0; child < low; child++) {
+        before += inner.children[child].weight;
+      }
+      node = inner.children[low];
+    }
+    Leaf leaf = (Leaf) node;
+    return before + (inclusive ? upperBound(leaf, key) : lowerBound(leaf, key));
+  }
+
+  /**
+   * Adds to the weight of a node and of all nodes above it.
+   *
+   * @param node  the node whose keys changed
+   * @param delta the number of keys that were added, negative if keys were removed
+   */
+  private static void addWeight(Node node, int delta) {
+    for (; node != null; node = node.parent) {
+      node.weight += delta;
+    }
+  }
+
+  /**
+   * Builds the tree again from full leaves with the bulk load of insertSortedKeys, which also
+   * fills the inner nodes.
+   */
+  private void rebuild() {
+    ArrayList<T> keys = new ArrayList<>(numKeys);
+    new LeafIterator(first, 0).forEachRemaining(keys::add);
+    clear();
+    insertSortedKeys(keys);
+  }
+
+  /**
+   * @return the position of the first key of leaf that is not smaller than key, leaf.count if
+   * there is none
+   */
+  private int lowerBound(Leaf leaf, Comparable<T> key) {
+    int low = 0;
+    int high = leaf.count;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (key.compareTo(keyAt(leaf, middle)) > 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the position of the first key of leaf that is greater than key, leaf.count if there
+   * is none
+   */
+  private int upperBound(Leaf leaf, Comparable<T> key) {
+    int low = 0;
+    int high = leaf.count;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (key.compareTo(keyAt(leaf, middle)) >= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Moves the upper half of a full leaf into a new leaf to its right.
+   *
+   * @param leaf a full leaf
+   * @return the new leaf
+   */
+  private Leaf splitLeaf(Leaf leaf) {
+    Leaf right = new Leaf();
+    int half = LEAF_CAPACITY / 2;
+    right.count = leaf.count - half;
+    System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+    Arrays.fill(leaf.keys, half, leaf.count, null);
+    leaf.count = half;
+    right.weight = right.count;
+    leaf.weight = half;
+    leaves++;
+    right.next = leaf.next;
+    right.previous = leaf;
+    if (leaf.next != null) {
+      leaf.next.previous = right;
+    }
+    leaf.next = right;
+    insertChild(leaf, right.keys[0], right);
+    return right;
+  }
+
+  /**
+   * Adds a node to the parent of its left neighbour, splitting full inner nodes on the way up.
+   *
+   * @param left      the node that was split
+   * @param separator the smallest key under right
+   * @param right     the new node, which follows left
+   */
+  private void insertChild(Node left, Object separator, Node right) {
+    Inner parent = left.parent;
+    if (parent == null) {
+      parent = new Inner();
+      parent.children[0] = left;
+      parent.separators[0] = separator;
+      parent.children[1] = right;
+      parent.count = 2;
+      parent.weight = left.weight + right.weight;
+      left.parent = parent;
+      right.parent = parent;
+      root = parent;
+      return;
+    }
+    if (parent.count == INNER_CAPACITY) {
+      Inner sibling = splitInner(parent);
+      if (left.parent == sibling) {
+        // The keys of right are still counted in the weight of parent.
+        parent.weight -= right.weight;
+        sibling.weight += right.weight;
+        parent = sibling;
+      }
+    }
+    int index = indexOf(parent, left) + 1;
+    System.arraycopy(parent.children, index, parent.children, index + 1, parent.count - index);
+    System.arraycopy(parent.separators, index - 1, parent.separators, index,
+        parent.count - index);
+    parent.children[index] = right;
+    parent.separators[index - 1] = separator;
+    parent.count++;
+    right.parent = parent;
+  }
+
+  /**
+   * Moves the upper half of the children of a full inner node into a new node to its right.
+   *
+   * @param inner a full inner node
+   * @return the new node
+   */
+  private Inner splitInner(Inner inner) {
+    Inner right = new Inner();
+    int half = INNER_CAPACITY / 2;
+    right.count = inner.count - half;
+    System.arraycopy(inner.children, half, right.children, 0, right.count);
+    System.arraycopy(inner.separators, half, right.separators, 0, right.count - 1);
+    Object separator = inner.separators[half - 1];
+    for (int i = half; i < inner.count; i++) {
+      inner.children[i] = null;
+      inner.separators[i - 1] = null;
+    }
+    inner.count = half;
+    for (int i = 0; i < right.count; i++) {
+      right.children[i].parent = right;
+      right.weight += right.children[i].weight;
+    }
+    inner.weight -= right.weight;
+    insertChild(inner, separator, right);
+    return right;
+  }
+
+  /**
+   * Takes an empty leaf out of the list of leaves and out of the tree.
+   *
+   * @param leaf an empty leaf
+   */
+  private void removeLeaf(Leaf leaf) {
+    if (leaf == root) {
+      return; // the tree is empty, and the root stays as an empty leaf
+    }
+    leaves--;
+    if (leaf.previous != null) {
+      leaf.previous.next = leaf.next;
+    } else {
+      first = leaf.next;
+    }
+    if (leaf.next != null) {
+      leaf.next.previous = leaf.previous;
+    }
+
+    Node child = leaf;
+    Inner parent = leaf.parent;
+    // Remove the child and one of its separators, and go on with the parent if it is now empty.
+    while (true) {
+      int index = indexOf(parent, child);
+      int separator = index > 0 ? index - 1 : 0;
+      System.arraycopy(parent.children, index + 1, parent.children, index,
+          parent.count - index - 1);
+      if (parent.count > 1) {
+        System.arraycopy(parent.separators, separator + 1, parent.separators, separator,
+            parent.count - separator - 2);
+        parent.separators[parent.count - 2] = null;
+      }
+      parent.count--;
+      parent.children[parent.count] = null;
+      if (parent.count > 0 || parent == root) {
+        break;
+      }
+      child = parent;
+      parent = parent.parent;
+    }
+    // An inner root with a single child is replaced by that child.
+    while (root instanceof Inner && root.count == 1) {
+      root = ((Inner) root).children[0];
+      root.parent = null;
+    }
+  }
+
+  /**
+   * @return the position of child among the children of parent
+   */
+  private static int indexOf(Inner parent, Node child) {
+    int index = 0;
+    while (parent.children[index] != child) {
+      index++;
+    }
+    return index;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T keyAt(Leaf leaf, int position) {
+    return (T) leaf.keys[position];
+  }
+
+  @SuppressWarnings("unchecked")
+  private T separatorAt(Inner inner, int position) {
+    return (T) inner.separators[position];
+  }
+
+  /**
+   * Checks that the tree holds the same keys as an IterableMultiKeyRBT, in the same order, and
+   * answers like it.
+   */
+  private static void assertSameAs(IterableMultiKeyRBT<Integer> expected,
+      BPlusMultiKeyTree<Integer> tree, int maxKey) {
+    Assertions.assertEquals(expected.size(), tree.size());
+    Assertions.assertEquals(expected.numKeys(), tree.numKeys());
+    ArrayList<Integer> expectedKeys = new ArrayList<>();
+    expected.forEach(expectedKeys::add);
+    ArrayList<Integer> actualKeys = new ArrayList<>();
+    tree.forEach(actualKeys::add);
+    Assertions.assertEquals(expectedKeys, actualKeys);
+    for (int from = -5; from < maxKey + 10; from += Math.max(7, maxKey / 40)) {
+      Iterator<Integer> expectedFrom = expected.iterator(from);
+      Iterator<Integer> actualFrom = tree.iterator(from);
+      while (expectedFrom.hasNext()) {
+        Assertions.assertEquals(expectedFrom.next(), actualFrom.next());
+      }
+      Assertions.assertFalse(actualFrom.hasNext());
+      Assertions.assertEquals(expected.contains(new ArrayKeyList<>(from)),
+          tree.contains(new ArrayKeyList<>(from)));
+      Assertions.assertEquals(expected.rank(from), tree.rank(from));
+      Assertions.assertEquals(expected.countInRange(from, from + maxKey / 10),
+          tree.countInRange(from, from + maxKey / 10));
+    }
+    for (int index = 0; index < expectedKeys.size(); index += 13) {
+      Assertions.assertEquals(expectedKeys.get(index), tree.select(index));
+    }
+    Assertions.assertEquals(tree.numKeys(), tree.root.weight);
+  }
+
+  /**
+   * Tests that the tree answers like IterableMultiKeyRBT while enough keys are inserted and
+   * removed to split and remove nodes on several levels. Runs of equal keys are longer than a
+   * leaf, so they continue over several leaves.
+   */
+  @Test
+  public void testMatchesIterableMultiKeyRBT() {
+    Random random = new Random(25);
+    IterableMultiKeyRBT<Integer> expected = new IterableMultiKeyRBT<>();
+    BPlusMultiKeyTree<Integer> tree = new BPlusMultiKeyTree<>();
+    for (int round = 0; round < 30; round++) {
+      // Grow during the first rounds and shrink to nothing during the last ones.
+      int inserts = round < 15 ? 3000 : 0;
+      for (int i = 0; i < inserts; i++) {
+        int key = random.nextInt(round < 5 ? 100 : 2000);
+        Assertions.assertEquals(expected.insertSingleKey(key), tree.insertSingleKey(key));
+      }
+      for (int i = 0; i < 1000 + round * 150; i++) {
+        int key = random.nextInt(2000);
+        Assertions.assertEquals(expected.removeKey(key), tree.removeKey(key));
+      }
+      assertSameAs(expected, tree, 2000);
+    }
+    for (int key = 0; key < 2000; key++) {
+      while (expected.removeKey(key)) {
+        Assertions.assertTrue(tree.removeKey(key));
+      }
+    }
+    Assertions.assertTrue(tree.isEmpty());
+    Assertions.assertEquals(0, tree.size());
+    Assertions.assertFalse(tree.iterator().hasNext());
+    Assertions.assertTrue(tree.insertSingleKey(7));
+    Assertions.assertEquals(7, tree.iterator().next());
+  }
+
+  /**
+   * Tests that removing most keys rebuilds the tree from full leaves, so the number of leaves
+   * follows the number of keys, and that the rebuilt tree keeps its keys and order statistics.
+   */
+  @Test
+  public void testRebuildAfterRemovals() {
+    Random random = new Random(26);
+    IterableMultiKeyRBT<Integer> expected = new IterableMultiKeyRBT<>();
+    BPlusMultiKeyTree<Integer> tree = new BPlusMultiKeyTree<>();
+    for (int i = 0; i < 50_000; i++) {
+      int key = random.nextInt(20_000);
+      expected.insertSingleKey(key);
+      tree.insertSingleKey(key);
+    }
+    // Splits leave the leaves between half and completely full.
+    Assertions.assertTrue(tree.leaves <= 50_000 / (LEAF_CAPACITY / 2) + 1);
+    // Removing every key but one in each 100 empties few leaves, but leaves the rest sparse.
+    for (int key = 0; key < 20_000; key++) {
+      if (key % 100 != 0) {
+        while (expected.removeKey(key)) {
+          Assertions.assertTrue(tree.removeKey(key));
+        }
+      }
+      Assertions.assertTrue(tree.numKeys() >= tree.leaves * (LEAF_CAPACITY / 4));
+    }
+    assertSameAs(expected, tree, 20_000);
+    Assertions.assertTrue(tree.leaves <= tree.numKeys() / (LEAF_CAPACITY / 4) + 1);
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.select(-1));
+    Assertions.assertThrows(IndexOutOfBoundsException.class,
+        () -> tree.select(tree.numKeys()));
+    Assertions.assertEquals(0, tree.countInRange(300, 200));
+  }
+
+  /**
+   * Tests bulk loading, key lists, start points and clear.
+   */
+  @Test
+  public void testBulkInsertAndStartPoint() {
+    BPlusMultiKeyTree<Integer> tree = new BPlusMultiKeyTree<>();
+    IterableMultiKeyRBT<Integer> expected = new IterableMultiKeyRBT<>();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> tree.insertSingleKey(null));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> tree.insertSortedKeys(List.of(2, 1)));
+    ArrayList<Integer> sorted = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      sorted.add(i / 3);
+    }
+    tree.insertSortedKeys(sorted);
+    expected.insertSortedKeys(sorted);
+    assertSameAs(expected, tree, 34_000);
+    // Inserting into a loaded tree splits the full leaves of the bulk load.
+    tree.insertSortedKeys(List.of(5, 5, 50_000));
+    expected.insertSortedKeys(List.of(5, 5, 50_000));
+    assertSameAs(expected, tree, 34_000);
+
+    Assertions.assertFalse(tree.insert(new ArrayKeyList<>(7)));
+    Assertions.assertTrue(tree.insert(new ArrayKeyList<>(-1)));
+    tree.setIterationStartPoint(33_333);
+    Iterator<Integer> keys = tree.iterator();
+    Assertions.assertEquals(33_333, keys.next());
+    Assertions.assertEquals(50_000, keys.next());
+    Assertions.assertFalse(keys.hasNext());
+    Assertions.assertThrows(NoSuchElementException.class, keys::next);
+    tree.setIterationStartPoint(null);
+    Assertions.assertEquals(-1, tree.iterator().next());
+
+    tree.clear();
+    Assertions.assertEquals(0, tree.size());
+    Assertions.assertEquals(0, tree.numKeys());
+    Assertions.assertFalse(tree.contains(new ArrayKeyList<>(7)));
+  }
+}
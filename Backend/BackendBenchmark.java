@@ -0,0 +1,1109 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Simple timing harness for the backend. Each benchmark scales the bundled ingredients.csv up to
+ * larger synthetic datasets (by appending a copy number to every ingredient name) and reports the
+ * average cost of the measured operation at each size.
+ *
+ * Run with: java -Xmx4g BackendBenchmark [path to ingredients.csv] [max rows] [benchmark]
+ */
+public class BackendBenchmark {
+
+  // Number of timed operations per measurement.
+  private static final int OPERATIONS = 200_000;
+  // Number of untimed operations run first so the JIT has compiled the measured code.
+  private static final int WARMUP_OPERATIONS = 50_000;
+
+  /**
+   * Writes a copy of the source CSV that contains the requested number of data rows. Rows are
+   * taken from the source in order, and every pass over the source after the first appends
+   * " #copy" to the ingredient name so that all names stay unique.
+   *
+   * @param source the original CSV file
+   * @param rows   the number of data rows to write
+   * @return the path of the generated temporary file
+   * @throws IOException if the files cannot be read or written
+   */
+  public static Path writeScaledCsv(Path source, int rows) throws IOException {
+    ArrayList<String> lines = new ArrayList<>();
+    String header;
+    try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+      header = reader.readLine();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          lines.add(line);
+        }
+      }
+    }
+
+    Path scaled = Files.createTempFile("ingredients-" + rows + "-", ".csv");
+    scaled.toFile().deleteOnExit();
+    try (BufferedWriter writer = Files.newBufferedWriter(scaled, StandardCharsets.UTF_8)) {
+      writer.write(header);
+      writer.newLine();
+      for (int i = 0; i < rows; i++) {
+        String line = lines.get(i % lines.size());
+        int copy = i / lines.size();
+        writer.write(copy == 0 ? line : renameRow(line, " #" + copy));
+        writer.newLine();
+      }
+    }
+    return scaled;
+  }
+
+  /**
+   * Appends a suffix to the name (second) field of a CSV row, skipping over a quoted category.
+   *
+   * @param line   the CSV row
+   * @param suffix text to append to the name
+   * @return the row with the renamed ingredient
+   */
+  private static String renameRow(String line, String suffix) {
+    boolean quoted = false;
+    int field = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ',' && !quoted && ++field == 2) {
+        return line.substring(0, i) + suffix + line.substring(i);
+      }
+    }
+    return line;
+  }
+
+  /**
+   * Collects the names of the first rows of a CSV so that benchmarks can query existing
+   * ingredients.
+   *
+   * @param csv   the CSV file to read
+   * @param count the maximum number of names to collect
+   * @return the ingredient names
+   * @throws IOException if the file cannot be read
+   */
+  private static ArrayList<String> readNames(Path csv, int count) throws IOException {
+    ArrayList<String> names = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+      reader.readLine(); // Skip the header line.
+      String line;
+      while (names.size() < count && (line = reader.readLine()) != null) {
+        boolean quoted = false;
+        int start = -1;
+        for (int i = 0; i < line.length(); i++) {
+          char c = line.charAt(i);
+          if (c == '"') {
+            quoted = !quoted;
+          } else if (c == ',' && !quoted) {
+            if (start < 0) {
+              start = i + 1;
+            } else {
+              names.add(line.substring(start, i));
+              break;
+            }
+          }
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Parses every row of a CSV into an Ingredient. The category is kept exactly as it appears in
+   * the file, matching BackendImplementation.loadData.
+   *
+   * @param csv the CSV file to read
+   * @return the ingredients in file order
+   * @throws IOException if the file cannot be read
+   */
+  private static ArrayList<Ingredient> readIngredients(Path csv) throws IOException {
+    ArrayList<Ingredient> ingredients = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+      reader.readLine(); // Skip the header line.
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int[] commas = new int[4];
+        int found = 0;
+        boolean quoted = false;
+        for (int i = 0; i < line.length() && found < commas.length; i++) {
+          char c = line.charAt(i);
+          if (c == '"') {
+            quoted = !quoted;
+          } else if (c == ',' && !quoted) {
+            commas[found++] = i;
+          }
+        }
+        if (found < commas.length) {
+          continue;
+        }
+        String calories = line.substring(commas[2] + 1, commas[3]);
+        ingredients.add(new Ingredient(line.substring(0, commas[0]),
+            line.substring(commas[0] + 1, commas[1]),
+            Integer.parseInt(calories.substring(0, calories.length() - 4))));
+      }
+    }
+    return ingredients;
+  }
+
+  /**
+   * Finds up to three substitutes by scanning the whole tree in order and filtering every
+   * ingredient, which is how getNameSubstitutes worked before the tree could seek.
+   *
+   * @param tree     tree holding every ingredient
+   * @param original the ingredient to replace
+   * @return the substitutes found
+   */
+  private static ArrayList<Ingredient> scanSubstitutes(IterableMultiKeyRBT<Ingredient> tree,
+      Ingredient original) {
+    ArrayList<Ingredient> substitutes = new ArrayList<>();
+    int threshold = original.getCalories() + 30;
+    Iterator<Ingredient> iterator = tree.iterator(null);
+    while (iterator.hasNext() && substitutes.size() < 3) {
+      Ingredient holder = iterator.next();
+      if (!holder.getName().equals(original.getName())
+          && holder.getCategory().equals(original.getCategory())
+          && holder.getCalories() >= original.getCalories()
+          && holder.getCalories() <= threshold) {
+        substitutes.add(holder);
+      }
+    }
+    return substitutes;
+  }
+
+  /**
+   * Finds up to three substitutes by seeking in a tree ordered by category, then calories, then
+   * name, and stopping at the end of the matching range.
+   *
+   * @param tree     tree holding every ingredient
+   * @param original the ingredient to replace
+   * @return the substitutes found
+   */
+  private static ArrayList<Ingredient> seekSubstitutes(IterableMultiKeyRBT<Ingredient> tree,
+      Ingredient original) {
+    ArrayList<Ingredient> substitutes = new ArrayList<>();
+    int threshold = original.getCalories() + 30;
+    Iterator<Ingredient> iterator =
+        tree.iterator(new Ingredient(original.getCategory(), "", original.getCalories()));
+    while (iterator.hasNext() && substitutes.size() < 3) {
+      Ingredient holder = iterator.next();
+      if (holder.getCalories() > threshold
+          || !holder.getCategory().equals(original.getCategory())) {
+        break;
+      }
+      if (!holder.getName().equals(original.getName())) {
+        substitutes.add(holder);
+      }
+    }
+    return substitutes;
+  }
+
+  /**
+   * Compares three ways of answering substitute queries: a full filtered scan of the ingredient
+   * tree, a seek into the ingredient tree ordered by category and calories, and the per-category
+   * calorie index used by BackendImplementation.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the largest dataset to measure
+   * @throws IOException if a dataset cannot be generated
+   */
+  public static void benchmarkSubstitutes(Path source, int maxRows) throws IOException {
+    System.out.println("getNameSubstitutes latency: full scan / ordered seek / category index");
+    int baseRows = readNames(source, Integer.MAX_VALUE).size();
+    for (int rows = baseRows; rows <= maxRows; rows *= 10) {
+      Path csv = writeScaledCsv(source, rows);
+      ArrayList<Ingredient> ingredients = readIngredients(csv);
+      IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+      BackendImplementation backend = new BackendImplementation();
+      for (Ingredient ingredient : ingredients) {
+        tree.insertSingleKey(ingredient);
+        backend.insertIngredient(ingredient);
+      }
+
+      Random random = new Random(400);
+      Ingredient[] queries = new Ingredient[1024];
+      for (int i = 0; i < queries.length; i++) {
+        queries[i] = ingredients.get(random.nextInt(ingredients.size()));
+      }
+
+      // The full scan is linear in the dataset size, so it gets fewer operations.
+      int scanOperations = Math.max(100, OPERATIONS / (rows / 100));
+      double scan = timeSubstitutes(queries, scanOperations,
+          original -> scanSubstitutes(tree, original));
+      double seek = timeSubstitutes(queries, OPERATIONS,
+          original -> seekSubstitutes(tree, original));
+      double index = timeSubstitutes(queries, OPERATIONS,
+          original -> backend.getNameSubstitutes(original.getName()));
+
+      System.out.printf("  %,10d rows: %12.1f / %8.1f / %8.1f ns/query%n", rows, scan, seek,
+          index);
+      backend.clearData();
+      Files.deleteIfExists(csv);
+    }
+  }
+
+  /**
+   * Times a substitute query over a fixed set of original ingredients.
+   *
+   * @param queries    the ingredients to find substitutes for
+   * @param operations the number of timed queries
+   * @param query      the query to time
+   * @return the average time of one query in nanoseconds
+   */
+  private static double timeSubstitutes(Ingredient[] queries, int operations,
+      Function<Ingredient, ArrayList<Ingredient>> query) {
+    long checksum = 0;
+    for (int i = 0; i < Math.min(operations, WARMUP_OPERATIONS); i++) {
+      checksum += query.apply(queries[i & (queries.length - 1)]).size();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; i++) {
+      checksum += query.apply(queries[i & (queries.length - 1)]).size();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (checksum < 0) {
+      System.out.println(checksum); // keeps the results alive
+    }
+    return (double) elapsed / operations;
+  }
+
+  /**
+   * Measures the average latency of getCalorieCount at dataset sizes growing by a factor of ten
+   * from the bundled file up to maxRows.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the largest dataset to measure
+   * @throws IOException if a dataset cannot be generated
+   */
+  public static void benchmarkNameLookup(Path source, int maxRows) throws IOException {
+    System.out.println("getCalorieCount latency by dataset size");
+    int baseRows = readNames(source, Integer.MAX_VALUE).size();
+    for (int rows = baseRows; rows <= maxRows; rows *= 10) {
+      Path csv = writeScaledCsv(source, rows);
+      BackendImplementation backend = new BackendImplementation();
+      backend.loadData(csv.toString());
+
+      // Query a random mix of names spread over the whole dataset.
+      ArrayList<String> names = readNames(csv, rows);
+      Random random = new Random(400);
+      String[] queries = new String[4096];
+      for (int i = 0; i < queries.length; i++) {
+        queries[i] = names.get(random.nextInt(names.size()));
+      }
+
+      long checksum = 0;
+      for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+        checksum += backend.getCalorieCount(queries[i & (queries.length - 1)]);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        checksum += backend.getCalorieCount(queries[i & (queries.length - 1)]);
+      }
+      long elapsed = System.nanoTime() - start;
+
+      System.out.printf("  %,10d rows: %8.1f ns/lookup (checksum %d)%n", rows,
+          (double) elapsed / OPERATIONS, checksum);
+      backend.clearData();
+      Files.deleteIfExists(csv);
+    }
+  }
+
+  /**
+   * Compares the throughput of the Scanner based and memory mapped loaders. Each load is timed
+   * end to end (parsing plus building the trees) after one untimed warm-up load; the parse-only
+   * column runs the mapped parser with a handler that discards every row.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the largest dataset to measure
+   * @throws IOException if a dataset cannot be generated
+   */
+  public static void benchmarkLoaders(Path source, int maxRows) throws IOException {
+    System.out.println("loadData throughput: scanner / mapped / mapped parse only");
+    int baseRows = readNames(source, Integer.MAX_VALUE).size();
+    for (int rows = baseRows; rows <= maxRows; rows *= 10) {
+      Path csv = writeScaledCsv(source, rows);
+      double megabytes = Files.size(csv) / (1024.0 * 1024.0);
+
+      double scanner = megabytes / timeLoad(csv, BackendImplementation.LoadMode.SCANNER);
+      double mapped = megabytes / timeLoad(csv, BackendImplementation.LoadMode.MAPPED);
+
+      long[] checksum = new long[1];
+      IngredientCsvParser.RowHandler discard =
+          (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+              checksum[0] += calories + nameEnd - categoryStart;
+      IngredientCsvParser.parseFile(csv.toString(), discard);
+      long start = System.nanoTime();
+      IngredientCsvParser.parseFile(csv.toString(), discard);
+      double parseOnly = megabytes / ((System.nanoTime() - start) / 1e9);
+
+      System.out.printf("  %,10d rows (%7.1f MB): %7.1f / %7.1f / %7.1f MB/s%n", rows, megabytes,
+          scanner, mapped, parseOnly);
+      Files.deleteIfExists(csv);
+    }
+  }
+
+  /**
+   * Measures how parallel load throughput scales with the number of threads, on a dataset of
+   * maxRows rows, next to the sequential memory mapped loader.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the size of the dataset
+   * @throws IOException if the dataset cannot be generated
+   */
+  public static void benchmarkParallelLoad(Path source, int maxRows) throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    double megabytes = Files.size(csv) / (1024.0 * 1024.0);
+    System.out.printf("parallel loadData throughput, %,d rows (%.1f MB)%n", maxRows, megabytes);
+    System.out.printf("  sequential mapped: %7.1f MB/s%n",
+        megabytes / timeLoad(csv, BackendImplementation.LoadMode.MAPPED));
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1
+        : Math.min(threads * 2, cores)) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      BackendImplementation backend = new BackendImplementation();
+      backend.loadDataParallel(csv.toString(), pool);
+      backend.clearData();
+      System.gc();
+      long start = System.nanoTime();
+      backend.loadDataParallel(csv.toString(), pool);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      backend.clearData();
+      pool.shutdown();
+      System.out.printf("  %2d threads:        %7.1f MB/s%n", threads, megabytes / seconds);
+    }
+    Files.deleteIfExists(csv);
+  }
+
+  /**
+   * Compares building an ingredient tree one insertSingleKey at a time with building it from the
+   * same sorted ingredients with insertSortedKeys, which uses the O(n) bulk build.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the largest dataset to measure
+   * @throws IOException if a dataset cannot be generated
+   */
+  public static void benchmarkBulkBuild(Path source, int maxRows) throws IOException {
+    System.out.println("ingredient tree construction: insertSingleKey / insertSortedKeys");
+    int baseRows = readNames(source, Integer.MAX_VALUE).size();
+    for (int rows = baseRows; rows <= maxRows; rows *= 10) {
+      Path csv = writeScaledCsv(source, rows);
+      ArrayList<Ingredient> ingredients = readIngredients(csv);
+      Files.deleteIfExists(csv);
+      ingredients.sort(null);
+
+      double single = 0;
+      double bulk = 0;
+      for (int round = 0; round < 2; round++) { // the first round is a warm-up
+        IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+        long start = System.nanoTime();
+        for (Ingredient ingredient : ingredients) {
+          tree.insertSingleKey(ingredient);
+        }
+        single = (System.nanoTime() - start) / 1e6;
+
+        tree = new IterableMultiKeyRBT<>();
+        start = System.nanoTime();
+        tree.insertSortedKeys(ingredients);
+        bulk = (System.nanoTime() - start) / 1e6;
+        tree.validate();
+      }
+      System.out.printf("  %,10d rows: %9.1f / %9.1f ms%n", rows, single, bulk);
+    }
+  }
+
+  /**
+   * Compares startup time from the CSV file (sequential and parallel) with startup time from a
+   * binary snapshot of the same data.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the largest dataset to measure
+   * @throws IOException if a dataset cannot be generated
+   */
+  public static void benchmarkSnapshot(Path source, int maxRows) throws IOException {
+    System.out.println("startup time: CSV mapped / CSV parallel / snapshot (file sizes)");
+    int baseRows = readNames(source, Integer.MAX_VALUE).size();
+    for (int rows = baseRows; rows <= maxRows; rows *= 10) {
+      Path csv = writeScaledCsv(source, rows);
+      Path snapshot = Files.createTempFile("ingredients-" + rows + "-", ".snap");
+      BackendImplementation backend = new BackendImplementation();
+      backend.loadData(csv.toString());
+      backend.saveSnapshot(snapshot.toString());
+      backend.clearData();
+
+      double mapped = timeLoad(csv, BackendImplementation.LoadMode.MAPPED);
+      double parallel = timeLoad(csv, BackendImplementation.LoadMode.PARALLEL);
+      double restore = 0;
+      for (int round = 0; round < 2; round++) { // the first round is a warm-up
+        System.gc();
+        long start = System.nanoTime();
+        backend.loadSnapshot(snapshot.toString());
+        restore = (System.nanoTime() - start) / 1e9;
+        backend.clearData();
+      }
+      System.out.printf("  %,10d rows: %7.3f / %7.3f / %7.3f s (%.1f MB / %.1f MB)%n", rows,
+          mapped, parallel, restore, Files.size(csv) / (1024.0 * 1024.0),
+          Files.size(snapshot) / (1024.0 * 1024.0));
+      Files.deleteIfExists(csv);
+      Files.deleteIfExists(snapshot);
+    }
+  }
+
+  /**
+   * Compares LinkedList backed KeyList nodes with ArrayKeyList nodes on the data of the category
+   * tree: one String per ingredient, but only a few dozen distinct categories, so nearly every key
+   * is a duplicate. Reports retained heap and full iteration time for each.
+   *
+   * @param source  the bundled ingredients.csv
+   * @param maxRows the size of the dataset
+   * @throws IOException if the dataset cannot be generated
+   */
+  public static void benchmarkKeyLists(Path source, int maxRows) throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    ArrayList<String> categories = new ArrayList<>();
+    for (Ingredient ingredient : readIngredients(csv)) {
+      categories.add(ingredient.getCategory().intern()); // loaders share one String per category
+    }
+    Files.deleteIfExists(csv);
+    System.out.printf("key lists with %,d keys: retained MB / ns per key iterated%n", maxRows);
+
+    String[] labels = {"KeyList (LinkedList)", "ArrayKeyList"};
+    IterableMultiKeyRBT<String> tree;
+    for (int kind = 0; kind < labels.length; kind++) {
+      tree = null; // so the tree of the previous kind is collected before measuring
+      long before = usedMemory();
+      tree = kind == 0
+          ? IterableMultiKeyRBT.withKeyLists(KeyList::new)
+          : IterableMultiKeyRBT.withKeyLists(ArrayKeyList::new);
+      for (String category : categories) {
+        tree.insertSingleKey(category);
+      }
+      double megabytes = retainedBytes(before) / (1024.0 * 1024.0);
+
+      long checksum = 0;
+      long elapsed = 0;
+      for (int round = 0; round < 3; round++) { // the first round is a warm-up
+        long start = System.nanoTime();
+        for (String category : tree) {
+          checksum += category.length();
+        }
+        elapsed = System.nanoTime() - start;
+      }
+      System.out.printf("  %-22s %8.1f MB / %6.2f ns (checksum %d)%n", labels[kind], megabytes,
+          (double) elapsed / tree.numKeys(), checksum);
+    }
+  }
+
+  /**
+   * Compares full in-order scans of the ingredient tree with the Stack based iterator and with
+   * the iterator that follows parent references.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients in the tree
+   * @throws IOException if the files cannot be read or written
+   */
+  public static void benchmarkIterators(Path source, int maxRows) throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+    for (Ingredient ingredient : readIngredients(csv)) {
+      tree.insertSingleKey(ingredient);
+    }
+    Files.deleteIfExists(csv);
+    System.out.printf("full scans of %,d ingredients: ns per key%n", tree.numKeys());
+
+    String[] labels = {"Stack iterator", "parent pointer iterator"};
+    for (int kind = 0; kind < labels.length; kind++) {
+      long checksum = 0;
+      long elapsed = 0;
+      for (int round = 0; round < 5; round++) { // the first rounds are a warm-up
+        long start = System.nanoTime();
+        Iterator<Ingredient> iterator = kind == 0 ? tree.stackIterator() : tree.iterator(null);
+        while (iterator.hasNext()) {
+          checksum += iterator.next().getCalories();
+        }
+        elapsed = System.nanoTime() - start;
+      }
+      System.out.printf("  %-24s %6.2f ns (checksum %d)%n", labels[kind],
+          (double) elapsed / tree.numKeys(), checksum);
+    }
+  }
+
+  /**
+   * Compares a calorie index built from IterableMultiKeyRBT and IngredientCalories with one built
+   * from IntRedBlackTree, at the given number of entries with random calories. Reports the cost of
+   * an insert, of a range count, of a substitute-sized range scan, and the heap used per entry.
+   *
+   * @param entries the number of entries in each index
+   */
+  public static void benchmarkIntTree(int entries) {
+    // One shared ingredient per calorie value keeps the payload out of the measured heap.
+    Random random = new Random(2100);
+    Ingredient[] ingredients = new Ingredient[1000];
+    for (int i = 0; i < ingredients.length; i++) {
+      ingredients[i] = new Ingredient("Fruits", "Benchmark " + i, i);
+    }
+    int[] calories = new int[entries];
+    for (int i = 0; i < entries; i++) {
+      calories[i] = random.nextInt(1000);
+    }
+    int[] lows = new int[4096];
+    for (int i = 0; i < lows.length; i++) {
+      lows[i] = random.nextInt(1000);
+    }
+    System.out.printf("calorie index with %,d entries%n", entries);
+    System.out.println("  tree           insert ns  count ns  scan ns  bytes/entry");
+
+    long before = usedMemory();
+    long start = System.nanoTime();
+    IterableMultiKeyRBT<IngredientCalories> generic = new IterableMultiKeyRBT<>();
+    for (int i = 0; i < entries; i++) {
+      generic.insertSingleKey(new IngredientCalories(ingredients[calories[i]]));
+    }
+    double insert = (double) (System.nanoTime() - start) / entries;
+    double bytes = (double) retainedBytes(before) / entries;
+    long checksum = 0;
+    double count = 0;
+    double scan = 0;
+    for (int round = 0; round < 2; round++) { // the first round is a warm-up
+      start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        int low = lows[i & (lows.length - 1)];
+        checksum += generic.countInRange(new IngredientCalories(low),
+            new IngredientCalories(low + 30));
+      }
+      count = (double) (System.nanoTime() - start) / OPERATIONS;
+      start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        int low = lows[i & (lows.length - 1)];
+        Iterator<IngredientCalories> range = generic.range(new IngredientCalories(low), true,
+            new IngredientCalories(low + 30), true);
+        for (int found = 0; found < 3 && range.hasNext(); found++) {
+          checksum += range.next().getCalories();
+        }
+      }
+      scan = (double) (System.nanoTime() - start) / OPERATIONS;
+    }
+    System.out.printf("  %-14s %9.1f  %8.1f  %7.1f  %11.1f (checksum %d)%n", "generic", insert,
+        count, scan, bytes, checksum);
+    generic = null;
+
+    before = usedMemory();
+    start = System.nanoTime();
+    IntRedBlackTree<Ingredient> primitive = new IntRedBlackTree<>();
+    for (int i = 0; i < entries; i++) {
+      primitive.insert(calories[i], ingredients[calories[i]]);
+    }
+    insert = (double) (System.nanoTime() - start) / entries;
+    bytes = (double) retainedBytes(before) / entries;
+    checksum = 0;
+    for (int round = 0; round < 2; round++) {
+      start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        int low = lows[i & (lows.length - 1)];
+        checksum += primitive.countInRange(low, low + 30);
+      }
+      count = (double) (System.nanoTime() - start) / OPERATIONS;
+      start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        int low = lows[i & (lows.length - 1)];
+        Iterator<Ingredient> range = primitive.range(low, low + 30);
+        for (int found = 0; found < 3 && range.hasNext(); found++) {
+          checksum += range.next().getCalories();
+        }
+      }
+      scan = (double) (System.nanoTime() - start) / OPERATIONS;
+    }
+    System.out.printf("  %-14s %9.1f  %8.1f  %7.1f  %11.1f (checksum %d)%n", "int keys", insert,
+        count, scan, bytes, checksum);
+  }
+
+  /**
+   * Compares the object based IterableMultiKeyRBT with the array based ArrayMultiKeyRBT, as built
+   * and after compact, as ingredient trees: the time and garbage collection time of inserting
+   * every ingredient, the heap used per key, and the time of a full in-order scan.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients in each tree
+   * @throws IOException if the files cannot be read or written
+   */
+  public static void benchmarkTreeEngines(Path source, int maxRows) throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    ArrayList<Ingredient> ingredients = readIngredients(csv);
+    Files.deleteIfExists(csv);
+    System.out.printf("ingredient trees with %,d keys%n", ingredients.size());
+    System.out.println("  tree      insert ns  gc ms  bytes/key  scan ns/key");
+
+    String[] labels = {"objects", "arrays", "compacted"};
+    for (int kind = 0; kind < labels.length; kind++) {
+      long before = usedMemory();
+      long gcBefore = gcMillis();
+      long start = System.nanoTime();
+      IterableMultiKeySortedCollectionInterface<Ingredient> tree =
+          kind == 0 ? new IterableMultiKeyRBT<>() : new ArrayMultiKeyRBT<>();
+      for (Ingredient ingredient : ingredients) {
+        tree.insertSingleKey(ingredient);
+      }
+      if (kind == 2) {
+        ((ArrayMultiKeyRBT<Ingredient>) tree).compact();
+      }
+      double insert = (double) (System.nanoTime() - start) / ingredients.size();
+      long gc = gcMillis() - gcBefore;
+      double bytes = (double) retainedBytes(before) / ingredients.size();
+
+      long checksum = 0;
+      long elapsed = 0;
+      for (int round = 0; round < 5; round++) { // the first rounds are a warm-up
+        start = System.nanoTime();
+        for (Ingredient ingredient : tree) {
+          checksum += ingredient.getCalories();
+        }
+        elapsed = System.nanoTime() - start;
+      }
+      System.out.printf("  %-8s %10.1f  %5d  %9.1f  %11.2f (checksum %d)%n", labels[kind],
+          insert, gc, bytes, (double) elapsed / tree.numKeys(), checksum);
+    }
+  }
+
+  /**
+   * Compares BackendImplementation with OffHeapBackend on the same file: the load time and the
+   * garbage collection time during the load, the heap and direct memory each backend keeps, the
+   * time of a full garbage collection with the data loaded, and the time of getCalorieCount and
+   * getNameSubstitutes.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients loaded into each backend
+   * @throws IOException if the files cannot be read or written
+   */
+  public static void benchmarkOffHeap(Path source, int maxRows) throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    ArrayList<String> names = readNames(csv, maxRows);
+    Random random = new Random(2300);
+    String[] queries = new String[4096];
+    for (int i = 0; i < queries.length; i++) {
+      queries[i] = names.get(random.nextInt(names.size()));
+    }
+    names = null;
+    System.out.printf("backends with %,d ingredients%n", maxRows);
+    System.out.println("  backend   load s  load gc ms  heap MB  direct MB  full gc ms  lookup ns"
+        + "  substitutes ns");
+
+    for (int kind = 0; kind < 2; kind++) {
+      long before = usedMemory();
+      long gcBefore = gcMillis();
+      long start = System.nanoTime();
+      BackendInterface backend = kind == 0 ? new BackendImplementation() : new OffHeapBackend();
+      backend.loadData(csv.toString());
+      double load = (System.nanoTime() - start) / 1e9;
+      long gc = gcMillis() - gcBefore;
+      double heap = retainedBytes(before) / 1e6;
+      double direct = kind == 0 ? 0 : ((OffHeapBackend) backend).offHeapBytes() / 1e6;
+      start = System.nanoTime();
+      System.gc();
+      double fullGc = (System.nanoTime() - start) / 1e6;
+
+      long checksum = 0;
+      for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+        checksum += backend.getCalorieCount(queries[i & (queries.length - 1)]);
+        checksum += backend.getNameSubstitutes(queries[i & (queries.length - 1)]).size();
+      }
+      start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        checksum += backend.getCalorieCount(queries[i & (queries.length - 1)]);
+      }
+      double lookup = (double) (System.nanoTime() - start) / OPERATIONS;
+      start = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) {
+        checksum += backend.getNameSubstitutes(queries[i & (queries.length - 1)]).size();
+      }
+      double substitutes = (double) (System.nanoTime() - start) / OPERATIONS;
+      System.out.printf("  %-8s %7.2f  %10d  %7.1f  %9.1f  %10.1f  %9.1f  %14.1f (checksum %d)%n",
+          kind == 0 ? "objects" : "off heap", load, gc, heap, direct, fullGc, lookup, substitutes,
+          checksum);
+      backend.clearData();
+    }
+    Files.deleteIfExists(csv);
+  }
+
+  /**
+   * Compares the ingredient tree of an IngredientDataset, an IterableMultiKeyRBT, with the
+   * FrozenMultiKeyArray that replaces it when the dataset is frozen.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients in each collection
+   * @throws IOException if the files cannot be read or written
+   */
+  public static void benchmarkFreeze(Path source, int maxRows) throws IOException {
+    ArrayList<Ingredient> ingredients = readScaledIngredients(source, maxRows);
+    ArrayList<Ingredient> sorted = new ArrayList<>(ingredients);
+    sorted.sort(null);
+    System.out.printf("ingredient collections with %,d keys, built from sorted keys%n",
+        ingredients.size());
+    printCollectionHeader();
+    measureCollection("tree", ingredients, () -> {
+      IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+      tree.insertSortedKeys(sorted);
+      return tree;
+    });
+    measureCollection("frozen", ingredients, () -> {
+      IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+      tree.insertSortedKeys(sorted);
+      return FrozenMultiKeyArray.copyOf(tree);
+    });
+  }
+
+  /**
+   * Compares an IterableMultiKeyRBT with a BPlusMultiKeyTree as the ingredient tree, once built
+   * by inserting the ingredients one by one in the order of the CSV file and once built from
+   * sorted ingredients.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients in each collection
+   * @throws IOException if the files cannot be read or written
+   */
+  public static void benchmarkBPlusTree(Path source, int maxRows) throws IOException {
+    ArrayList<Ingredient> ingredients = readScaledIngredients(source, maxRows);
+    ArrayList<Ingredient> sorted = new ArrayList<>(ingredients);
+    sorted.sort(null);
+    System.out.printf("ingredient collections with %,d keys%n", ingredients.size());
+    printCollectionHeader();
+    measureCollection("tree", ingredients, () -> {
+      IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+      ingredients.forEach(tree::insertSingleKey);
+      return tree;
+    });
+    measureCollection("b+tree", ingredients, () -> {
+      BPlusMultiKeyTree<Ingredient> tree = new BPlusMultiKeyTree<>();
+      ingredients.forEach(tree::insertSingleKey);
+      return tree;
+    });
+    measureCollection("tree sorted", ingredients, () -> {
+      IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+      tree.insertSortedKeys(sorted);
+      return tree;
+    });
+    measureCollection("b+ sorted", ingredients, () -> {
+      BPlusMultiKeyTree<Ingredient> tree = new BPlusMultiKeyTree<>();
+      tree.insertSortedKeys(sorted);
+      return tree;
+    });
+  }
+
+  /**
+   * Reads the ingredients of a scaled copy of the CSV file.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients to read
+   * @return the ingredients in the order of the file
+   * @throws IOException if the files cannot be read or written
+   */
+  private static ArrayList<Ingredient> readScaledIngredients(Path source, int maxRows)
+      throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    ArrayList<Ingredient> ingredients = readIngredients(csv);
+    Files.deleteIfExists(csv);
+    return ingredients;
+  }
+
+  private static void printCollectionHeader() {
+    System.out.println(
+        "  collection   build ms  bytes/key  scan ns/key  seek ns  insert+remove ns");
+  }
+
+  /**
+   * Builds an ingredient collection and prints the time that took, the heap it uses per
+   * ingredient, the time of a full in-order scan and of a seek to a random ingredient through
+   * the iteration start point, and the cost of inserting and removing ingredients afterwards.
+   *
+   * @param label       the name of the collection in the output
+   * @param ingredients the ingredients the collection holds
+   * @param build       builds the collection
+   */
+  private static void measureCollection(String label, ArrayList<Ingredient> ingredients,
+      Supplier<IterableMultiKeySortedCollectionInterface<Ingredient>> build) {
+    Random random = new Random(2500);
+    Ingredient[] queries = new Ingredient[4096];
+    for (int i = 0; i < queries.length; i++) {
+      queries[i] = ingredients.get(random.nextInt(ingredients.size()));
+    }
+    long before = usedMemory();
+    long start = System.nanoTime();
+    IterableMultiKeySortedCollectionInterface<Ingredient> collection = build.get();
+    double buildMillis = (System.nanoTime() - start) / 1e6;
+    double bytes = (double) retainedBytes(before) / collection.numKeys();
+
+    long checksum = 0;
+    long elapsed = 0;
+    for (int round = 0; round < 5; round++) { // the first rounds are a warm-up
+      start = System.nanoTime();
+      for (Ingredient ingredient : collection) {
+        checksum += ingredient.getCalories();
+      }
+      elapsed = System.nanoTime() - start;
+    }
+    double scan = (double) elapsed / collection.numKeys();
+
+    for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+      collection.setIterationStartPoint(queries[i & (queries.length - 1)]);
+      checksum += collection.iterator().next().getCalories();
+    }
+    start = System.nanoTime();
+    for (int i = 0; i < OPERATIONS; i++) {
+      collection.setIterationStartPoint(queries[i & (queries.length - 1)]);
+      checksum += collection.iterator().next().getCalories();
+    }
+    double seek = (double) (System.nanoTime() - start) / OPERATIONS;
+    collection.setIterationStartPoint(null);
+
+    start = System.nanoTime();
+    for (int i = 0; i < OPERATIONS; i++) {
+      Ingredient ingredient = new Ingredient("Benchmark", "benchmark " + i, i % 900);
+      collection.insertSingleKey(ingredient);
+      if (i % 2 == 0) {
+        collection.removeKey(ingredient);
+      }
+    }
+    double change = (double) (System.nanoTime() - start) / OPERATIONS;
+    System.out.printf("  %-11s %9.0f  %9.1f  %11.2f  %7.1f  %16.1f (checksum %d)%n",
+        label, buildMillis, bytes, scan, seek, change, checksum);
+  }
+
+  /**
+   * Measures the throughput of the concurrent backends with 1, 2, 4, ... threads up to the number
+   * of cores, for several shares of writes. Every thread runs the same number of operations;
+   * reads take turns between getCalorieCount, getNameSubstitutes, getIngredientCount and
+   * getCategoryCount, and writes insert new ingredients. Each configuration runs on
+   * ConcurrentBackend with optimistic reads, on ConcurrentBackend with plain read locks, and on
+   * SkipListBackend. The two ConcurrentBackend columns differ only in the count queries, which
+   * are the ones it answers optimistically; the other queries take the read lock in both.
+   *
+   * @param source  the original CSV file
+   * @param maxRows the number of ingredients loaded before each run
+   * @throws IOException if the files cannot be read or written
+   */
+  public static void benchmarkConcurrency(Path source, int maxRows) throws IOException {
+    Path csv = writeScaledCsv(source, maxRows);
+    BackendImplementation loaded = new BackendImplementation();
+    loaded.loadData(csv.toString());
+    // Only query ingredients whose name is stored as read, so no query misses.
+    ArrayList<Ingredient> ingredients = readIngredients(csv);
+    ingredients.removeIf(ingredient ->
+        loaded.getCalorieCount(ingredient.getName()) != ingredient.getCalories());
+    Random random = new Random(700);
+    Ingredient[] queries = new Ingredient[4096];
+    for (int i = 0; i < queries.length; i++) {
+      queries[i] = ingredients.get(random.nextInt(ingredients.size()));
+    }
+    int cores = Runtime.getRuntime().availableProcessors();
+    int operations = OPERATIONS / 4;
+    System.out.printf("concurrent backend throughput with %,d ingredients: million ops/s%n",
+        loaded.getIngredientCount());
+    System.out.println("  (optimistic reads apply to the count queries, about half of all reads)");
+    System.out.println("  threads  writes  optimistic  read lock  skip list");
+    loaded.clearData();
+    long checksum = 0;
+
+    for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1
+        : Math.min(threads * 2, cores)) {
+      for (int writePercent : new int[] {0, 1, 10, 50}) {
+        double[] throughput = new double[3];
+        for (int kind = 0; kind < 3; kind++) {
+          BackendInterface concurrent = kind == 2 ? new SkipListBackend()
+              : new ConcurrentBackend(new BackendImplementation(), kind == 0);
+          concurrent.loadData(csv.toString());
+          runConcurrently(concurrent, queries, threads, WARMUP_OPERATIONS, writePercent);
+          long start = System.nanoTime();
+          checksum += runConcurrently(concurrent, queries, threads, operations, writePercent);
+          long elapsed = System.nanoTime() - start;
+          throughput[kind] = (double) threads * operations / elapsed * 1e3;
+        }
+        System.out.printf("  %7d  %5d%%  %10.2f  %9.2f  %9.2f%n", threads, writePercent,
+            throughput[0], throughput[1], throughput[2]);
+      }
+    }
+    System.out.printf("  (checksum %d)%n", checksum);
+    Files.deleteIfExists(csv);
+  }
+
+  /**
+   * Runs a mix of queries and inserts on several threads and waits for all of them.
+   *
+   * @param backend      the backend to use
+   * @param queries      the ingredients whose names are queried
+   * @param threads      the number of threads
+   * @param operations   the number of operations per thread
+   * @param writePercent the share of operations that insert an ingredient
+   * @return a checksum of the query results
+   */
+  private static long runConcurrently(BackendInterface backend, Ingredient[] queries,
+      int threads, int operations, int writePercent) {
+    long[] checksums = new long[threads];
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int worker = t;
+      workers[t] = new Thread(() -> {
+        Random random = new Random(worker);
+        long checksum = 0;
+        for (int i = 0; i < operations; i++) {
+          Ingredient query = queries[random.nextInt(queries.length)];
+          if (random.nextInt(100) < writePercent) {
+            backend.insertIngredient(new Ingredient(query.getCategory(),
+                query.getName() + " #w" + worker + "-" + i, random.nextInt(900)));
+          } else if ((i & 3) == 0) {
+            checksum += backend.getCalorieCount(query.getName());
+          } else if ((i & 3) == 1) {
+            checksum += backend.getNameSubstitutes(query.getName()).size();
+          } else if ((i & 3) == 2) {
+            checksum += backend.getIngredientCount();
+          } else {
+            checksum += backend.getCategoryCount();
+          }
+        }
+        checksums[worker] = checksum;
+      });
+      workers[t].start();
+    }
+    long checksum = 0;
+    for (int t = 0; t < threads; t++) {
+      try {
+        workers[t].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      checksum += checksums[t];
+    }
+    return checksum;
+  }
+
+  /**
+   * @return the total time all garbage collectors have spent collecting, in milliseconds
+   */
+  private static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionTime());
+    }
+    return total;
+  }
+
+  /**
+   * @return the heap in use after asking the garbage collector to run until the heap in use stops
+   * shrinking
+   */
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      long now = runtime.totalMemory() - runtime.freeMemory();
+      if (now >= used) {
+        return now;
+      }
+      used = now;
+    }
+    return used;
+  }
+
+  /**
+   * Measures the heap that was retained since an earlier call of usedMemory. Collections are not
+   * exact, so the difference may come out slightly below zero for small structures; it is then
+   * reported as 0.
+   *
+   * @param before the heap in use returned by usedMemory before the structure was built
+   * @return the heap retained since then, never negative
+   */
+  private static long retainedBytes(long before) {
+    return Math.max(0, usedMemory() - before);
+  }
+
+  /**
+   * Loads a file into a fresh backend once to warm up and once more while timing.
+   *
+   * @param csv  the file to load
+   * @param mode the loader to use
+   * @return the time of the second load in seconds
+   * @throws IOException if the file cannot be read
+   */
+  private static double timeLoad(Path csv, BackendImplementation.LoadMode mode)
+      throws IOException {
+    BackendImplementation backend = new BackendImplementation();
+    backend.loadData(csv.toString(), mode);
+    backend.clearData();
+    System.gc();
+    long start = System.nanoTime();
+    backend.loadData(csv.toString(), mode);
+    long elapsed = System.nanoTime() - start;
+    backend.clearData();
+    return elapsed / 1e9;
+  }
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args optional path to ingredients.csv, maximum row count and name of the single
+   *             benchmark to run
+   */
+  public static void main(String[] args) throws IOException {
+    Path source = Path.of(args.length > 0 ? args[0] : "ingredients.csv");
+    int maxRows = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+    String only = args.length > 2 ? args[2] : "all";
+    if (!Files.exists(source)) {
+      throw new FileNotFoundException(source.toString());
+    }
+    if (only.equals("all") || only.equals("lookup")) {
+      benchmarkNameLookup(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("substitutes")) {
+      benchmarkSubstitutes(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("load")) {
+      benchmarkLoaders(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("parallel")) {
+      benchmarkParallelLoad(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("bulk")) {
+      benchmarkBulkBuild(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("snapshot")) {
+      benchmarkSnapshot(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("keylists")) {
+      benchmarkKeyLists(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("iterators")) {
+      benchmarkIterators(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("concurrency")) {
+      benchmarkConcurrency(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("inttree")) {
+      benchmarkIntTree(maxRows);
+    }
+    if (only.equals("all") || only.equals("engines")) {
+      benchmarkTreeEngines(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("offheap")) {
+      benchmarkOffHeap(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("freeze")) {
+      benchmarkFreeze(source, maxRows);
+    }
+    if (only.equals("all") || only.equals("bplus")) {
+      benchmarkBPlusTree(source, maxRows);
+    }
+  }
+}
@@ -1,34 +1,294 @@
-import java.util.Iterator;
 import java.util.Scanner;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
- * Provides backend functionalities for managing ingredients. Uses two sorted collections for
- * operations based on ingredient names and caloric values.
+ * Provides backend functionalities for managing ingredients. The ingredients and their indexes
+ * are kept in an IngredientDataset, which reloadData replaces as a whole.
  */
 public class BackendImplementation implements BackendInterface {
 
-  // Data structures to store ingredients and categories.
-  private static IterableMultiKeyRBT<Ingredient> ingredientTree;
-  private static IterableMultiKeyRBT<String> categoryTree;
+  /**
+   * The ways loadData can read a CSV file.
+   */
+  public enum LoadMode {
+    // Reads lines with a Scanner and cuts fields out with substring.
+    SCANNER,
+    // Memory maps the file and parses fields in place with IngredientCsvParser.
+    MAPPED,
+    // Parses chunks of the file on the common fork-join pool and merges them in bulk.
+    PARALLEL
+  }
+
+  // The data every query reads. Reloads build a new dataset and replace this reference in one
+  // write, so a query that reads it once sees either the old or the new data, never a mix. Each
+  // backend has its own dataset, so several backends can hold different data in one process.
+  private volatile IngredientDataset dataset;
+  // Whether freeze was called, so that datasets published later are frozen too
+  private volatile boolean frozen = false;
+  // Held while a dataset is published, so that each publish releases a different dataset
+  private final Object publishLock = new Object();
+  // Create the ingredient tree and the calorie indexes of every dataset of this backend
+  private final Supplier<IterableMultiKeySortedCollectionInterface<Ingredient>>
+      ingredientTreeFactory;
+  private final Supplier<SortedIntMultimapInterface<Ingredient>> calorieIndexFactory;
 
   public BackendImplementation() {
-    this.categoryTree = new IterableMultiKeyRBT<>();
-    this.ingredientTree = new IterableMultiKeyRBT<>();
+    this(IterableMultiKeyRBT::new);
   }
 
+  /**
+   * Creates a backend whose datasets keep their ingredients in collections made by the given
+   * factory, for example BPlusMultiKeyTree::new.
+   *
+   * @param ingredientTreeFactory creates an empty collection for the ingredients of a dataset
+   */
+  public BackendImplementation(
+      Supplier<IterableMultiKeySortedCollectionInterface<Ingredient>> ingredientTreeFactory) {
+    this(ingredientTreeFactory, IntRedBlackTree::new);
+  }
 
   /**
-   * Reads ingredient data from a specified CSV file. This method was
-   * developed collaboratively between backend developers in our group.
+   * Creates a backend whose datasets keep their ingredients and calorie indexes in collections
+   * made by the given factories, for example BPlusMultiKeyTree::new and BPlusIntMultimap::new.
+   *
+   * @param ingredientTreeFactory creates an empty collection for the ingredients of a dataset
+   * @param calorieIndexFactory   creates an empty calorie index for a category of a dataset
+   */
+  public BackendImplementation(
+      Supplier<IterableMultiKeySortedCollectionInterface<Ingredient>> ingredientTreeFactory,
+      Supplier<SortedIntMultimapInterface<Ingredient>> calorieIndexFactory) {
+    if (ingredientTreeFactory == null) {
+      throw new NullPointerException("ingredientTreeFactory cannot be null");
+    }
+    if (calorieIndexFactory == null) {
+      throw new NullPointerException("calorieIndexFactory cannot be null");
+    }
+    this.ingredientTreeFactory = ingredientTreeFactory;
+    this.calorieIndexFactory = calorieIndexFactory;
+    this.dataset = new IngredientDataset(ingredientTreeFactory, calorieIndexFactory);
+  }
+
+  /**
+   * Reads ingredient data from a specified CSV file by memory mapping it.
    *
    * @param filePath The path to the CSV file containing ingredient data.
    * @return true if data is loaded successfully, false otherwise.
    */
   @Override
   public boolean loadData(String filePath) throws FileNotFoundException {
+    return loadData(filePath, LoadMode.MAPPED);
+  }
+
+  /**
+   * Reads ingredient data from a specified CSV file using the given loader. Once the backend is
+   * frozen, every change to a frozen dataset goes through its buffers, so the rows are instead
+   * loaded into an ordinary dataset that starts with the current ingredients, whose frozen copy
+   * then replaces the current data.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param mode     The loader used to read the file.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  public boolean loadData(String filePath, LoadMode mode) throws FileNotFoundException {
+    if (!frozen) {
+      return loadInto(dataset, filePath, mode);
+    }
+    synchronized (publishLock) {
+      IngredientDataset current = dataset;
+      IngredientDataset loaded = new IngredientDataset(ingredientTreeFactory, calorieIndexFactory);
+      ArrayList<Ingredient> ingredients = current.ingredientsInOrder();
+      current.release();
+      for (Ingredient ingredient : ingredients) {
+        loaded.insertIngredient(ingredient);
+      }
+      try {
+        return loadInto(loaded, filePath, mode);
+      } finally {
+        publish(loaded.frozenCopy());
+      }
+    }
+  }
+
+  /**
+   * Reads ingredient data from a specified CSV file into a new dataset and then replaces the
+   * current data with it. Queries keep reading the current data while the file is loaded and
+   * never see a partly loaded dataset; queries that started before the replacement finish on the
+   * old data. Ingredients inserted into the current data during the reload are not carried over.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param mode     The loader used to read the file.
+   * @return true if data is loaded successfully, false otherwise, in which case the current data
+   *         is kept.
+   * @throws FileNotFoundException if the file does not exist.
+   */
+  public boolean reloadData(String filePath, LoadMode mode) throws FileNotFoundException {
+    return reloadData(filePath, mode, Runnable::run);
+  }
+
+  /**
+   * Works like reloadData, but lets the caller decide how the loaded dataset replaces the current
+   * one. The file is loaded on the calling thread, and then the replacement, which also releases
+   * the ingredients of the current dataset, is passed to the publisher. A publisher that runs it
+   * under a lock keeps the replacement from overlapping with changes to the current data.
+   *
+   * @param filePath  The path to the CSV file containing ingredient data.
+   * @param mode      The loader used to read the file.
+   * @param publisher Runs the replacement of the data exactly once.
+   * @return true if data is loaded successfully, false otherwise, in which case the current data
+   *         is kept and the publisher is not called.
+   * @throws FileNotFoundException if the file does not exist.
+   */
+  public boolean reloadData(String filePath, LoadMode mode, Consumer<Runnable> publisher)
+      throws FileNotFoundException {
+    IngredientDataset loaded = new IngredientDataset(ingredientTreeFactory, calorieIndexFactory);
+    if (!loadInto(loaded, filePath, mode)) {
+      return false;
+    }
+    IngredientDataset next = frozen ? loaded.frozenCopy() : loaded;
+    publisher.accept(() -> publish(next));
+    return true;
+  }
+
+  /**
+   * Runs reloadData on another thread, so the caller can keep answering queries from the current
+   * data in the meantime.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param mode     The loader used to read the file.
+   * @param executor The executor that loads the file.
+   * @return a future that completes with the result of reloadData, or exceptionally with a
+   *         FileNotFoundException if the file does not exist.
+   */
+  public CompletableFuture<Boolean> reloadDataAsync(String filePath, LoadMode mode,
+      Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return reloadData(filePath, mode);
+      } catch (FileNotFoundException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Reads ingredient data from a specified CSV file into a dataset using the given loader.
+   *
+   * @param target   The dataset the ingredients are inserted into.
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param mode     The loader used to read the file.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  private static boolean loadInto(IngredientDataset target, String filePath, LoadMode mode)
+      throws FileNotFoundException {
+    if (mode == LoadMode.SCANNER) {
+      return loadDataWithScanner(target, filePath);
+    } else if (mode == LoadMode.PARALLEL) {
+      return loadDataParallel(target, filePath, ForkJoinPool.commonPool());
+    }
+    IngredientCsvParser.CategoryCache categories = new IngredientCsvParser.CategoryCache();
+    try {
+      IngredientCsvParser.parseFile(filePath,
+          (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+              target.insertIngredient(new Ingredient(
+                  categories.get(buffer, categoryStart, categoryEnd),
+                  IngredientCsvParser.decode(buffer, nameStart, nameEnd), calories)));
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads ingredient data from a specified CSV file by parsing chunks of it in parallel and merging
+   * the results with insertIngredients. The data ends up the same as with a sequential load.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param pool     The pool that parses and merges the data.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  public boolean loadDataParallel(String filePath, ForkJoinPool pool)
+      throws FileNotFoundException {
+    return loadDataParallel(dataset, filePath, pool);
+  }
+
+  /**
+   * Parses chunks of a CSV file in parallel and merges the results into a dataset.
+   *
+   * @param target   The dataset the ingredients are inserted into.
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param pool     The pool that parses and merges the data.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  private static boolean loadDataParallel(IngredientDataset target, String filePath,
+      ForkJoinPool pool) throws FileNotFoundException {
+    try {
+      target.insertIngredients(ParallelCsvLoader.parse(filePath, pool), pool);
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes all ingredients to a binary snapshot file that loadSnapshot can restore much faster
+   * than loadData can parse the CSV file. The ingredients are written in insertion order, so a
+   * restored backend orders equal calories and duplicate names as this one does.
+   *
+   * @param filePath The path of the snapshot file to write.
+   * @throws IOException if the snapshot cannot be written.
+   */
+  public void saveSnapshot(String filePath) throws IOException {
+    IngredientDataset current = dataset;
+    ArrayList<Ingredient> ingredients = current.ingredientsInOrder();
+    IngredientSnapshot.write(ingredients, ingredients.size(), Path.of(filePath));
+  }
+
+  /**
+   * Reads ingredient data from a snapshot file written by saveSnapshot. The snapshot is validated
+   * completely before any ingredient is inserted.
+   *
+   * @param filePath The path to the snapshot file.
+   * @return true if data is loaded successfully, false otherwise.
+   * @throws FileNotFoundException if the snapshot file does not exist.
+   */
+  public boolean loadSnapshot(String filePath) throws FileNotFoundException {
+    ArrayList<Ingredient> ingredients;
+    try {
+      ingredients = IngredientSnapshot.read(Path.of(filePath));
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      return false;
+    }
+    insertIngredients(List.of(ingredients), ForkJoinPool.commonPool());
+    return true;
+  }
+
+  /**
+   * Reads ingredient data from a specified CSV file line by line with a Scanner. This method was
+   * developed collaboratively between backend developers in our group.
+   *
+   * @param target   The dataset the ingredients are inserted into.
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  private static boolean loadDataWithScanner(IngredientDataset target, String filePath)
+      throws FileNotFoundException {
     // Set up file input stream and scanner.
     FileInputStream csvFileInput;
     Scanner fileReader;
@@ -101,7 +361,7 @@ public class BackendImplementation implements BackendInterface {
       cals = Integer.parseInt(calsStr.substring(0, calsStr.length() - 4));
 
       // Insert ingredients into data structures (e.g., trees).
-      insertIngredient(new Ingredient(category, name, cals));
+      target.insertIngredient(new Ingredient(category, name, cals));
     }
 
     // Data loading is complete, return true to indicate success.
@@ -109,81 +369,75 @@ public class BackendImplementation implements BackendInterface {
   }
 
   /**
-   * Inserts an ingredient into the appropriate Red-Black Tree.(Since there are two trees)
+   * Inserts an ingredient into every index of the current dataset, see
+   * IngredientDataset.insertIngredient. The current dataset becomes the ingredient's owner, so
+   * later changes through its setters are reindexed.
    *
    * @param ingredient The ingredient object to be inserted.
-   * @return true if the ingredient was successfully inserted, false otherwise.
+   * @return true if the ingredient was successfully inserted, false if a dataset already holds
+   *         this ingredient object.
    */
   @Override
   public boolean insertIngredient(Ingredient ingredient) throws NullPointerException{
-    if (ingredient == null) {throw new NullPointerException();}
+    return dataset.insertIngredient(ingredient);
+  }
 
-    ingredientTree.insertSingleKey(ingredient); //insert ingredient object into iterable tree
-    categoryTree.insertSingleKey(ingredient.getCategory()); //insert category count into tree
+  /**
+   * Removes the ingredient with the given name, which is the one getCalorieCount and
+   * getNameSubstitutes use. If another ingredient has the same name, it takes the removed
+   * ingredient's place in the name index. Each index is updated in O(log n).
+   *
+   * @param ingredientName The name of the ingredient to remove.
+   * @return true if an ingredient was removed, false if no ingredient has this name.
+   */
+  @Override
+  public boolean removeIngredient(String ingredientName) {
+    return dataset.removeIngredient(ingredientName);
+  }
 
-    return true;
+  /**
+   * Replaces the ingredient with the given name by another ingredient, for example to correct its
+   * calories. When the name stays the same, the replacement also takes the original's place in the
+   * name index. Each index is updated in O(log n).
+   *
+   * @param ingredientName The name of the ingredient to replace.
+   * @param replacement    The ingredient to store instead.
+   * @return true if the ingredient was replaced, false if no ingredient has this name or a
+   *         dataset already holds the replacement.
+   * @throws NullPointerException if replacement is null
+   */
+  @Override
+  public boolean updateIngredient(String ingredientName, Ingredient replacement) {
+    return dataset.updateIngredient(ingredientName, replacement);
+  }
+
+  /**
+   * Inserts many ingredients at once. The result is the same as calling insertIngredient on every
+   * ingredient of every batch in order, but the ingredients are sorted in parallel and each
+   * distinct key is inserted once.
+   *
+   * @param batches lists of ingredients, in insertion order
+   * @param pool    the pool that runs the sorting and merging tasks
+   * @throws NullPointerException     if any ingredient is null
+   * @throws IllegalArgumentException if a dataset already holds any of the ingredients
+   */
+  public void insertIngredients(List<? extends List<Ingredient>> batches, ForkJoinPool pool) {
+    dataset.insertIngredients(batches, pool);
   }
 
   /**
    * Retrieves a list of up to three ingredients that can replace a given ingredient by name. The
    * replacements should have the same or slightly higher caloric value. If no substitutions
-   * can be found, method will return null. Else, this method will return an ArrayList with as
-   * any subgredients we can find in our whole data set. Up to frontend to decide
-   * how to use them
+   * can be found, method will return an empty list.
    *
    * @param ingredientName The name of the ingredient to be replaced.
    * @return A list of potential replacement ingredients.
    */
   @Override
   public ArrayList<Ingredient> getNameSubstitutes(String ingredientName) {
-
-    // Search for the specified ingredient.
-    Iterator<Ingredient> iterator = ingredientTree.iterator();
-    Ingredient holder;
-    Ingredient originalIngredient = null;
-
-    while (iterator.hasNext()) {
-      holder = iterator.next();
-      if (holder.getName().equals(ingredientName)) {
-        originalIngredient = holder;
-        break;
-      }
-    }
-
-    if (originalIngredient == null) {
-      System.out.println("Ingredient not found");
-      return new ArrayList<>(); // Return empty list instead of null
-    }
-
-    // Now we iterate through the whole tree with the ingredient to find three substitutes
-    ArrayList<Ingredient> substitutes = new ArrayList<>();
-    ingredientTree.setIterationStartPoint(originalIngredient);
-    Iterator<Ingredient> subIterator = ingredientTree.iterator();
-    int threshold = originalIngredient.getCalories() + 30;
-    int counter = 0;
-
-    while (subIterator.hasNext()) {
-      holder = subIterator.next();
-
-      // Making sure it is not a duplicate ingredient
-      if (!holder.getName().equals(originalIngredient.getName())) {
-        // Making sure categories align
-        if (holder.getCategory().equals(originalIngredient.getCategory())) {
-          // Making sure calories are within threshold
-          if (holder.getCalories() >= originalIngredient.getCalories()
-              && holder.getCalories() <= threshold) {
-            substitutes.add(holder);
-            counter++;
-          }
-        }
-      }
-      if (counter == 3) { break; }
-    }
-
-    return substitutes; // Always return the ArrayList, whether it's empty or has items
+    return dataset.getNameSubstitutes(ingredientName);
   }
 
-
   /**
    * This method returns the calorie count for an ingredient specified
    * by name. The calories returned is the caloric count per 100g as
@@ -194,24 +448,30 @@ public class BackendImplementation implements BackendInterface {
    */
   @Override
   public int getCalorieCount(String ingredientName) {
+    return dataset.getCalorieCount(ingredientName);
+  }
 
-    // Search for the ingredient's calorie count.
-    Iterator<Ingredient> iterator = ingredientTree.iterator();
-    Ingredient holder;
-    Ingredient originalIngredient = null;
+  /**
+   * Counts the ingredients whose calories are within a range, using the subtree weights of each
+   * category's calorie index instead of scanning the ingredients.
+   *
+   * @param low  the smallest calorie count to include
+   * @param high the largest calorie count to include
+   * @return the number of ingredients with low <= calories <= high
+   */
+  public int countIngredientsInCalorieRange(int low, int high) {
+    return dataset.countIngredientsInCalorieRange(low, high);
+  }
 
-    while (iterator.hasNext()) {
-      holder = iterator.next();
-      if (holder.getName().equals(ingredientName)) {
-        originalIngredient = holder;
-        break;
-      }
-    }
-    if (originalIngredient != null) {
-      return originalIngredient.getCalories();
-    }
-    //return - 1 if ingredient cannot be found
-    return -1;
+  /**
+   * Finds the median calorie count of a category. For an even number of ingredients the lower of
+   * the two middle values is returned.
+   *
+   * @param category the category
+   * @return the median calories of the category, -1 if the category has no ingredients
+   */
+  public int getMedianCalories(String category) {
+    return dataset.getMedianCalories(category);
   }
 
   /**
@@ -221,8 +481,7 @@ public class BackendImplementation implements BackendInterface {
    */
   @Override
   public int getIngredientCount() {
-    // Retrieve the count of all ingredients.
-    return categoryTree.numKeys();
+    return dataset.getIngredientCount();
   }
 
   /**
@@ -232,28 +491,67 @@ public class BackendImplementation implements BackendInterface {
    */
   @Override
   public int getCategoryCount() {
-    // Retrieve the count of unique categories.
-    return categoryTree.size();
+    return dataset.getCategoryCount();
+  }
+
+  /**
+   * Estimates the heap memory used by the current data, see IngredientDataset.estimatedBytes.
+   *
+   * @return the estimated size of the data in bytes
+   */
+  public long estimatedBytes() {
+    return dataset.estimatedBytes();
   }
 
   /**
-   * Clears all data in both implemented trees
+   * Replaces the current dataset by an empty one. Queries that already started finish on the old
+   * dataset.
    */
   @Override
   public void clearData() {
-    // Clear both data structures.
-    categoryTree.clear();
-    ingredientTree.clear();
+    IngredientDataset next = new IngredientDataset(ingredientTreeFactory, calorieIndexFactory);
+    publish(frozen ? next.frozenCopy() : next);
+  }
+
+  /**
+   * Prepares the data for a read-mostly workload by publishing a frozen copy of the current
+   * dataset, see IngredientDataset.frozenCopy. Datasets that replace the current one through
+   * reloadData or clearData are frozen as well. Changes are still accepted but cost more than
+   * before, so this is best called once the data is loaded.
+   */
+  public void freeze() {
+    synchronized (publishLock) {
+      frozen = true;
+      if (!dataset.isFrozen()) {
+        publish(dataset.frozenCopy());
+      }
+    }
+  }
+
+  /**
+   * Makes a dataset the one that queries read and releases the ingredients of the previous one.
+   * The swap and the release happen under one lock, so two publishes never release the same
+   * dataset.
+   *
+   * @param next the dataset to publish, which must not be changed by the caller afterwards
+   */
+  private void publish(IngredientDataset next) {
+    synchronized (publishLock) {
+      IngredientDataset previous = dataset;
+      dataset = next;
+      previous.release();
+    }
   }
 
   /**
    * The main function that runs the app
    *
-   * @param args
+   * @param args --skiplist to use the SkipListBackend instead of this backend
    */
   public static void main(String[] args) {
     // Initialize backend and frontend and start the frontend.
-    BackendImplementation backend = new BackendImplementation();
+    BackendInterface backend = args.length > 0 && args[0].equals("--skiplist")
+        ? new SkipListBackend() : new BackendImplementation();
     FrontendDev frontend = new FrontendDev(backend, new Scanner(System.in));
     frontend.startMain();
   }
@@ -30,6 +30,31 @@ public class BackendPlaceholder implements BackendInterface {
     return true;
   }
 
+  /**
+   * Removes the ingredient with the given name, which is the one getCalorieCount and
+   * getNameSubstitutes use.
+   *
+   * @param ingredientName The name of the ingredient to remove.
+   * @return true if an ingredient was removed, false if no ingredient has this name.
+   */
+  @Override
+  public boolean removeIngredient(String ingredientName) {
+    return true;
+  }
+
+  /**
+   * Replaces the ingredient with the given name by another ingredient, for example to correct its
+   * calories.
+   *
+   * @param ingredientName The name of the ingredient to replace.
+   * @param replacement    The ingredient to store instead.
+   * @return true if the ingredient was replaced, false if no ingredient has this name.
+   */
+  @Override
+  public boolean updateIngredient(String ingredientName, Ingredient replacement) {
+    return true;
+  }
+
   /**
    * Retrieves a list of up to three ingredients that can replace a given ingredient by name. The
    * replacements should have the same or slightly higher caloric value.
@@ -26,6 +26,8 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     // node type's data field.
     @SuppressWarnings("unchecked")
     public Node<T>[] down = (Node<T>[]) new Node[2];
+    // Total weight of this node and all of its descendants, see weightOf
+    public int subtreeWeight;
 
     public Node(T data) {
       this.data = data;
@@ -70,6 +72,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     if (newNode == null)
       throw new NullPointerException("new node cannot be null");
 
+    newNode.subtreeWeight = weightOf(newNode.data);
     if (this.root == null) {
       // add first node to an empty tree
       root = newNode;
@@ -89,6 +92,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
             current.down[0] = newNode;
             newNode.up = current;
             this.size++;
+            addWeight(current, newNode.subtreeWeight);
             return true;
           } else {
             // no empty space, keep moving down the tree
@@ -101,6 +105,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
             current.down[1] = newNode;
             newNode.up = current;
             this.size++;
+            addWeight(current, newNode.subtreeWeight);
             return true;
           } else {
             // no empty space, keep moving down the tree
@@ -181,6 +186,52 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
 
     // Update parent of 'child' to be the grandparent.
     child.up = grandParent;
+
+    // 'parent' is now below 'child', so its weight has to be recomputed first.
+    updateWeight(parent);
+    updateWeight(child);
+  }
+
+  /**
+   * Returns the weight that a value adds to the subtreeWeight of its node and all of its
+   * ancestors. Every value weighs 1 by default, so subtreeWeight is the number of nodes in the
+   * subtree. Subclasses whose values hold several keys can weigh them by their number of keys.
+   *
+   * @param data the value of a node
+   * @return the weight of the value
+   */
+  protected int weightOf(T data) {
+    return 1;
+  }
+
+  /**
+   * @return the subtreeWeight of a node, or 0 for a null node
+   */
+  protected static int subtreeWeight(Node<?> node) {
+    return node == null ? 0 : node.subtreeWeight;
+  }
+
+  /**
+   * Recomputes the subtreeWeight of a node from its value and the weights of its children.
+   *
+   * @param node the node to update
+   */
+  protected void updateWeight(Node<T> node) {
+    node.subtreeWeight =
+        weightOf(node.data) + subtreeWeight(node.down[0]) + subtreeWeight(node.down[1]);
+  }
+
+  /**
+   * Adds to the subtreeWeight of a node and of all of its ancestors, after the weight of the
+   * node's value or subtree changed by the given amount.
+   *
+   * @param node  the lowest node whose weight changed
+   * @param delta the change in weight
+   */
+  protected void addWeight(Node<T> node, int delta) {
+    for (; node != null; node = node.up) {
+      node.subtreeWeight += delta;
+    }
   }
 
   /**
@@ -259,6 +310,52 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     return null;
   }
 
+  /**
+   * Helper method that returns the first node, in order, whose value is after a lower bound.
+   *
+   * @param data      the lower bound, or null to return the leftmost node
+   * @param inclusive whether a node whose value is equal to the bound is returned
+   * @return the first node after the bound, or null if there is none
+   */
+  protected Node<T> ceilingNode(Comparable<T> data, boolean inclusive) {
+    Node<T> ceiling = null;
+    Node<T> current = this.root;
+    while (current != null) {
+      int compare = data == null ? -1 : data.compareTo(current.data);
+      if (compare < 0 || (compare == 0 && inclusive)) {
+        // current is a candidate, but a smaller one may be in its left subtree
+        ceiling = current;
+        current = current.down[0];
+      } else {
+        current = current.down[1];
+      }
+    }
+    return ceiling;
+  }
+
+  /**
+   * Helper method that returns the in-order successor of a node by following the up and down
+   * references, without any extra memory.
+   *
+   * @param node the node to start from
+   * @return the next node in order, or null if node is the last one
+   */
+  protected static <T> Node<T> successor(Node<T> node) {
+    if (node.down[1] != null) {
+      // the successor is the leftmost node of the right subtree
+      node = node.down[1];
+      while (node.down[0] != null) {
+        node = node.down[0];
+      }
+      return node;
+    }
+    // otherwise climb until we come up from a left subtree
+    while (node.isRightChild()) {
+      node = node.up;
+    }
+    return node.up;
+  }
+
   /**
    * This method performs an inorder traversal of the tree. The string representations of each data
    * value within this tree are assembled into a comma separated string within brackets (similar to
@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every distinct category a dense int id, starting at 0 in the order categories are first
+ * seen, and keeps a single String instance per category. Ingredients store the id next to the
+ * category so that equal categories can be recognized with an int comparison, and indexes can be
+ * kept in arrays indexed by id.
+ *
+ * Ids are never reused or removed, because ingredients created earlier may still hold them. The
+ * dictionary is shared by all backends and is safe to use from several threads, which lets the
+ * parallel loader create ingredients on every worker.
+ */
+public class CategoryDictionary {
+
+  // Id of every category seen so far
+  private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  // Category of every id; entries are written before the id is published in the map
+  private static volatile String[] names = new String[64];
+  // Number of ids assigned
+  private static volatile int size = 0;
+
+  /**
+   * Returns the id of a category, assigning the next free id if the category is new.
+   *
+   * @param category the category
+   * @return the id of the category
+   * @throws NullPointerException if category is null
+   */
+  public static int idOf(String category) {
+    Integer id = ids.get(category);
+    if (id != null) {
+      return id;
+    }
+    synchronized (CategoryDictionary.class) {
+      id = ids.get(category);
+      if (id == null) {
+        id = size;
+        String[] current = names;
+        if (id == current.length) {
+          current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = category;
+        names = current;
+        size = id + 1;
+        ids.put(category, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Returns the category with the given id. The same String instance is returned every time.
+   *
+   * @param id an id returned by idOf
+   * @return the category
+   * @throws IndexOutOfBoundsException if no category has this id
+   */
+  public static String nameOf(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException("no category with id " + id);
+    }
+    return names[id];
+  }
+
+  /**
+   * @return the number of categories that have an id, which is one more than the largest id
+   */
+  public static int size() {
+    return size;
+  }
+}
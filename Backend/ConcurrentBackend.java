@@ -0,0 +1,187 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A backend that many threads can use at once. It wraps a BackendImplementation and guards it with
+ * a StampedLock: writes take the lock exclusively and queries take the read lock. The count
+ * queries only read a single field, so they first run without locking under an optimistic stamp,
+ * and only take the read lock if a write happened in the meantime. Queries that walk the trees or
+ * the name index always hold the read lock, because without it they could see a structure
+ * halfway through a change.
+ *
+ * Changes made through the setters of a stored Ingredient are not guarded by this lock, so in a
+ * concurrent backend ingredients should be changed with updateIngredient instead.
+ */
+public class ConcurrentBackend implements BackendInterface {
+
+  private final BackendImplementation backend;
+  private final StampedLock lock = new StampedLock();
+  // Whether the count queries try an optimistic read before taking the read lock
+  private final boolean optimisticReads;
+
+  /**
+   * Creates an empty concurrent backend with optimistic reads.
+   */
+  public ConcurrentBackend() {
+    this(new BackendImplementation(), true);
+  }
+
+  /**
+   * Creates a concurrent backend around an existing backend, which must not be used directly
+   * afterwards.
+   *
+   * @param backend         the backend that holds the data
+   * @param optimisticReads false to always take the read lock, also for the count queries, which
+   *                        is slower but useful as a baseline
+   */
+  public ConcurrentBackend(BackendImplementation backend, boolean optimisticReads) {
+    this.backend = backend;
+    this.optimisticReads = optimisticReads;
+  }
+
+  /**
+   * Runs a query that only reads a single field, first optimistically and then under the read lock
+   * if a write interfered. Queries that follow references, such as tree walks or map lookups, must
+   * use read instead.
+   *
+   * @param query the query to run
+   * @return the result of a run that no write interfered with
+   */
+  private int readField(IntSupplier query) {
+    if (optimisticReads) {
+      long stamp = lock.tryOptimisticRead();
+      int result = query.getAsInt();
+      if (lock.validate(stamp)) {
+        return result;
+      }
+    }
+    long stamp = lock.readLock();
+    try {
+      return query.getAsInt();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Runs a query while holding the read lock.
+   *
+   * @param query the query to run
+   * @param <R>   the type of the result
+   * @return the result of the query
+   */
+  private <R> R read(Supplier<R> query) {
+    long stamp = lock.readLock();
+    try {
+      return query.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Runs a change while holding the write lock.
+   *
+   * @param change the change to run
+   * @param <R>    the type of the result
+   * @return the result of the change
+   */
+  private <R> R write(Supplier<R> change) {
+    long stamp = lock.writeLock();
+    try {
+      return change.get();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Loads a CSV file while holding the write lock, so queries wait until the whole file is
+   * loaded. Use reloadData to keep answering queries during a load.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  @Override
+  public boolean loadData(String filePath) throws FileNotFoundException {
+    long stamp = lock.writeLock();
+    try {
+      return backend.loadData(filePath);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Replaces the data with the contents of a CSV file, see BackendImplementation.reloadData. The
+   * file is loaded without holding the lock, so queries and changes go on in the meantime, and
+   * only the replacement of the data runs under the write lock.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @param mode     The loader used to read the file.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  public boolean reloadData(String filePath, BackendImplementation.LoadMode mode)
+      throws FileNotFoundException {
+    return backend.reloadData(filePath, mode, publish -> write(() -> {
+      publish.run();
+      return null;
+    }));
+  }
+
+  @Override
+  public boolean insertIngredient(Ingredient ingredient) {
+    return write(() -> backend.insertIngredient(ingredient));
+  }
+
+  @Override
+  public boolean removeIngredient(String ingredientName) {
+    return write(() -> backend.removeIngredient(ingredientName));
+  }
+
+  @Override
+  public boolean updateIngredient(String ingredientName, Ingredient replacement) {
+    return write(() -> backend.updateIngredient(ingredientName, replacement));
+  }
+
+  @Override
+  public ArrayList<Ingredient> getNameSubstitutes(String ingredientName) {
+    return read(() -> backend.getNameSubstitutes(ingredientName));
+  }
+
+  @Override
+  public int getCalorieCount(String ingredientName) {
+    return read(() -> backend.getCalorieCount(ingredientName));
+  }
+
+  @Override
+  public int getIngredientCount() {
+    return readField(backend::getIngredientCount);
+  }
+
+  @Override
+  public int getCategoryCount() {
+    return readField(backend::getCategoryCount);
+  }
+
+  /**
+   * Freezes the data while holding the write lock, see BackendImplementation.freeze.
+   */
+  public void freeze() {
+    write(() -> {
+      backend.freeze();
+      return null;
+    });
+  }
+
+  @Override
+  public void clearData() {
+    write(() -> {
+      backend.clearData();
+      return null;
+    });
+  }
+}
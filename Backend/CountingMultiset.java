@@ -0,0 +1,186 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted multiset that stores each distinct key once together with the number of times it was
+ * added. Adding a key that is already present only increments its count, so memory grows with the
+ * number of distinct keys rather than with the number of additions. Both the total number of keys
+ * and the number of distinct keys are kept in fields and read in O(1).
+ *
+ * @param <T> The type of the keys in the multiset. Must be Comparable.
+ */
+public class CountingMultiset<T extends Comparable<T>> implements Iterable<T> {
+
+  /**
+   * A distinct key and the number of times it is in the multiset. Entries are ordered by key.
+   */
+  protected static class Entry<T extends Comparable<T>> implements Comparable<Entry<T>> {
+    public final T key;
+    public int count;
+
+    public Entry(T key, int count) {
+      this.key = key;
+      this.count = count;
+    }
+
+    @Override
+    public int compareTo(Entry<T> other) {
+      return key.compareTo(other.key);
+    }
+
+    @Override
+    public String toString() {
+      return key + "x" + count;
+    }
+  }
+
+  // One entry per distinct key. The tree is private, so its counts can only change through the
+  // methods below, which keep totalCount up to date.
+  private final RedBlackTree<Entry<T>> tree = new RedBlackTree<>();
+  // Sum of the counts of all keys
+  private long totalCount;
+
+  /**
+   * Adds one occurrence of a key.
+   *
+   * @param key the key to add
+   * @return the new count of the key
+   * @throws NullPointerException if key is null
+   */
+  public int increment(T key) {
+    return increment(key, 1);
+  }
+
+  /**
+   * Adds several occurrences of a key at once.
+   *
+   * @param key   the key to add
+   * @param times the number of occurrences to add
+   * @return the new count of the key
+   * @throws NullPointerException     if key is null
+   * @throws IllegalArgumentException if times is negative
+   */
+  public int increment(T key, int times) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null.");
+    }
+    if (times < 0) {
+      throw new IllegalArgumentException("times cannot be negative");
+    }
+    if (times == 0) {
+      return count(key);
+    }
+    BinarySearchTree.Node<Entry<T>> node = tree.findNode(entry -> key.compareTo(entry.key));
+    Entry<T> entry;
+    if (node == null) {
+      entry = new Entry<>(key, 0);
+      tree.insert(entry);
+    } else {
+      entry = node.data;
+    }
+    entry.count += times;
+    totalCount += times;
+    return entry.count;
+  }
+
+  /**
+   * Removes one occurrence of a key. A key whose count drops to zero is removed from the tree.
+   *
+   * @param key the key to remove
+   * @return the new count of the key
+   * @throws NullPointerException   if key is null
+   * @throws NoSuchElementException if the key is not in the multiset
+   */
+  public int decrement(T key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null.");
+    }
+    BinarySearchTree.Node<Entry<T>> node = tree.findNode(entry -> key.compareTo(entry.key));
+    if (node == null) {
+      throw new NoSuchElementException("Key is not in the multiset: " + key);
+    }
+    int count = --node.data.count;
+    totalCount--;
+    if (count == 0) {
+      tree.removeNode(node);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of times a key is in the multiset.
+   *
+   * @param key the key to look up
+   * @return the count of the key, 0 if it is not present
+   */
+  public int count(T key) {
+    BinarySearchTree.Node<Entry<T>> node = tree.findNode(entry -> key.compareTo(entry.key));
+    return node == null ? 0 : node.data.count;
+  }
+
+  /**
+   * @return the sum of the counts of all keys
+   */
+  public long totalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return the number of distinct keys, which is the number of nodes in the tree
+   */
+  public int distinctCount() {
+    return tree.size();
+  }
+
+  /**
+   * @return true if the multiset has no keys
+   */
+  public boolean isEmpty() {
+    return tree.isEmpty();
+  }
+
+  /**
+   * Removes all keys from the multiset.
+   */
+  public void clear() {
+    tree.clear();
+    totalCount = 0;
+  }
+
+  /**
+   * Checks the red-black properties of the tree that holds the keys, see RedBlackTree.validate.
+   *
+   * @throws IllegalStateException if a property is violated
+   */
+  public void validate() {
+    tree.validate();
+  }
+
+  /**
+   * Returns an iterator over the distinct keys in increasing order.
+   *
+   * @return Iterator over the distinct keys.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      // The node holding the next key to return, or null at the end
+      private BinarySearchTree.Node<Entry<T>> nextNode = tree.ceilingNode(null, true);
+
+      @Override
+      public boolean hasNext() {
+        return nextNode != null;
+      }
+
+      @Override
+      public T next() {
+        if (nextNode == null) {
+          throw new NoSuchElementException();
+        }
+        T key = nextNode.data.key;
+        nextNode = BinarySearchTree.successor(nextNode);
+        return key;
+      }
+    };
+  }
+}
@@ -0,0 +1,427 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A sorted collection of int keys and values, like IntRedBlackTree, for data that is read far more
+ * often than it changes. The keys are kept in one int array in sorted order and the values at the
+ * same positions of a second array, with values of equal keys in insertion order. A search is a
+ * binary search over ints, a range scan reads both arrays sequentially, and range counts and
+ * select are two binary searches instead of a walk down the tree.
+ *
+ * The collection can still be changed, the same way as a FrozenMultiKeyArray: inserted values are
+ * buffered in a small IntRedBlackTree, the delta, and removed values are only marked as removed.
+ * Once the delta and the removed values together exceed a small fraction of the collection, a
+ * change merges them into new arrays in O(n), so the cost of a change stays O(log n) on average.
+ *
+ * @param <V> the type of the values
+ */
+public class FrozenIntMultimap<V> implements SortedIntMultimapInterface<V> {
+
+  // The delta and the removed values are merged once they exceed the larger of MIN_CHANGES and
+  // the length of the arrays divided by CHANGE_RATIO.
+  private static final int MIN_CHANGES = 256;
+  private static final int CHANGE_RATIO = 32;
+
+  // The merged keys in sorted order, and the value of each key at the same position
+  private int[] keys = new int[0];
+  private Object[] values = new Object[0];
+  // Positions in keys whose value has been removed, sorted, and how many are used
+  private int[] removed = new int[0];
+  private int removedCount = 0;
+  // Values inserted since the last merge
+  private final IntRedBlackTree<V> delta = new IntRedBlackTree<>();
+
+  /**
+   * Creates an empty collection.
+   */
+  public FrozenIntMultimap() {
+  }
+
+  @Override
+  public int size() {
+    return keys.length - removedCount + delta.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public void clear() {
+    build(new int[0], new Object[0]);
+    delta.clear();
+  }
+
+  /**
+   * Adds a value to a key in the delta. It is placed after all values the key already has.
+   *
+   * @param key   the key
+   * @param value the value, which may be null
+   */
+  @Override
+  public void insert(int key, V value) {
+    delta.insert(key, value);
+    mergeIfLarge();
+  }
+
+  /**
+   * Adds many entries at once. When the collection is empty the values become the arrays
+   * directly in O(n) time; otherwise they are inserted one by one.
+   *
+   * @param sortedValues the values, ordered by key; values with equal keys are kept in this order
+   * @param keyOf        gives the key of each value
+   * @throws IllegalArgumentException if the values are not ordered by key
+   */
+  @Override
+  public void insertSorted(List<V> sortedValues, ToIntFunction<V> keyOf) {
+    int[] sortedKeys = new int[sortedValues.size()];
+    for (int i = 0; i < sortedKeys.length; i++) {
+      sortedKeys[i] = keyOf.applyAsInt(sortedValues.get(i));
+      if (i > 0 && sortedKeys[i - 1] > sortedKeys[i]) {
+        throw new IllegalArgumentException("values must be ordered by key");
+      }
+    }
+    if (isEmpty()) {
+      build(sortedKeys, sortedValues.toArray());
+      delta.clear();
+      return;
+    }
+    for (int i = 0; i < sortedKeys.length; i++) {
+      insert(sortedKeys[i], sortedValues.get(i));
+    }
+  }
+
+  /**
+   * Removes a value from a key, searching the arrays before the delta because their values were
+   * inserted first.
+   *
+   * @param key   the key
+   * @param value the value, compared by identity; the first occurrence is removed
+   * @return true if the value was removed, false if the key does not have this value
+   */
+  @Override
+  public boolean remove(int key, V value) {
+    for (int index = lowerBound(key); index < keys.length && keys[index] == key; index++) {
+      if (values[index] == value) {
+        int position = Arrays.binarySearch(removed, 0, removedCount, index);
+        if (position < 0) {
+          markRemoved(-position - 1, index);
+          return true;
+        }
+      }
+    }
+    return delta.remove(key, value);
+  }
+
+  @Override
+  public int countInRange(int low, int high) {
+    if (low > high) {
+      return 0;
+    }
+    int from = lowerBound(low);
+    int to = upperBound(high);
+    return to - from - (removedBefore(to) - removedBefore(from)) + delta.countInRange(low, high);
+  }
+
+  /**
+   * Returns the key of the value at a position in key order. Without changes since the last
+   * merge this reads the array; otherwise the key is found by a binary search over range counts.
+   *
+   * @param index the position, starting at 0
+   * @return the key at that position
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  @Override
+  public int keyAt(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("index " + index + " for size " + size());
+    }
+    if (removedCount == 0 && delta.isEmpty()) {
+      return keys[index];
+    }
+    // The smallest key with more than index values at or below it.
+    long low = Integer.MIN_VALUE;
+    long high = Integer.MAX_VALUE;
+    while (low < high) {
+      long middle = (low + high) >> 1;
+      if (countInRange(Integer.MIN_VALUE, (int) middle) > index) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return (int) low;
+  }
+
+  @Override
+  public Iterator<V> range(int low, int high) {
+    return new MergingIterator(low, high);
+  }
+
+  @Override
+  public Iterator<V> iterator() {
+    return range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Iterates over a range of the arrays and of the delta at once, taking the smaller key next and
+   * the value from the arrays when both keys are equal. While there is no delta and nothing is
+   * removed this is a plain scan over the arrays.
+   */
+  private class MergingIterator implements Iterator<V> {
+    private int index; // position in keys of the next value of the arrays
+    private final int end; // position in keys after the last value of the range
+    private int nextRemoved; // position in removed of the first removed index not below index
+    private int deltaIndex; // position in key order of the next value of the delta
+    private final int deltaEnd; // position in key order after the last value of the delta
+    private int key; // key of the value returned last
+
+    private MergingIterator(int low, int high) {
+      if (low > high) {
+        end = 0;
+        deltaEnd = 0;
+        return;
+      }
+      index = lowerBound(low);
+      end = upperBound(high);
+      nextRemoved = removedBefore(index);
+      deltaIndex = delta.rank(low);
+      deltaEnd = deltaIndex + delta.countInRange(low, high);
+      skipRemoved();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < end || deltaIndex < deltaEnd;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (deltaIndex == deltaEnd || (index < end && keys[index] <= delta.keyAt(deltaIndex))) {
+        key = keys[index];
+        V value = (V) values[index++];
+        skipRemoved();
+        return value;
+      }
+      key = delta.keyAt(deltaIndex);
+      return delta.valueAt(deltaIndex++);
+    }
+
+    private void skipRemoved() {
+      while (index < end && nextRemoved < removedCount && removed[nextRemoved] == index) {
+        index++;
+        nextRemoved++;
+      }
+    }
+  }
+
+  /**
+   * Records a value of the arrays as removed and merges if enough has changed.
+   *
+   * @param position where the value's index belongs in removed
+   * @param index    the value's position in keys
+   */
+  private void markRemoved(int position, int index) {
+    if (removedCount == removed.length) {
+      removed = Arrays.copyOf(removed, Math.max(16, removedCount * 2));
+    }
+    System.arraycopy(removed, position, removed, position + 1, removedCount - position);
+    removed[position] = index;
+    removedCount++;
+    mergeIfLarge();
+  }
+
+  /**
+   * Merges the delta and the removed values into the arrays once they have grown large enough.
+   */
+  private void mergeIfLarge() {
+    if (removedCount + delta.size() > Math.max(MIN_CHANGES, keys.length / CHANGE_RATIO)) {
+      merge();
+    }
+  }
+
+  /**
+   * Replaces the arrays by ones holding exactly the values of the collection, and empties the
+   * delta and the removed values.
+   */
+  private void merge() {
+    int[] mergedKeys = new int[size()];
+    Object[] mergedValues = new Object[mergedKeys.length];
+    MergingIterator all = new MergingIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    for (int i = 0; i < mergedKeys.length; i++) {
+      mergedValues[i] = all.next();
+      mergedKeys[i] = all.key;
+    }
+    build(mergedKeys, mergedValues);
+    delta.clear();
+  }
+
+  /**
+   * Makes sorted keys and their values the contents of the arrays.
+   *
+   * @param sortedKeys   the keys in sorted order
+   * @param sortedValues the value of each key
+   */
+  private void build(int[] sortedKeys, Object[] sortedValues) {
+    keys = sortedKeys;
+    values = sortedValues;
+    removed = new int[0];
+    removedCount = 0;
+  }
+
+  /**
+   * @param key a key
+   * @return the first position in keys whose key is not smaller than key
+   */
+  private int lowerBound(int key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param key a key
+   * @return the first position in keys whose key is larger than key
+   */
+  private int upperBound(int key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] <= key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param index a position in keys
+   * @return the number of removed values at smaller positions
+   */
+  private int removedBefore(int index) {
+    int position = Arrays.binarySearch(removed, 0, removedCount, index);
+    return position < 0 ? -position - 1 : position;
+  }
+
+  /**
+   * Checks that the collection holds the same values as a tree, in the same order, and answers
+   * range counts and select like it.
+   */
+  private static void assertSameAs(IntRedBlackTree<String> expected,
+      FrozenIntMultimap<String> collection) {
+    Assertions.assertEquals(expected.size(), collection.size());
+    ArrayList<String> expectedValues = new ArrayList<>();
+    expected.forEach(expectedValues::add);
+    ArrayList<String> actualValues = new ArrayList<>();
+    collection.forEach(actualValues::add);
+    Assertions.assertEquals(expectedValues, actualValues);
+    for (int low = -5; low < 110; low += 9) {
+      int high = low + 12;
+      ArrayList<String> expectedRange = new ArrayList<>();
+      expected.range(low, high).forEachRemaining(expectedRange::add);
+      ArrayList<String> actualRange = new ArrayList<>();
+      collection.range(low, high).forEachRemaining(actualRange::add);
+      Assertions.assertEquals(expectedRange, actualRange);
+      Assertions.assertEquals(expected.countInRange(low, high), collection.countInRange(low, high));
+    }
+    for (int index = 0; index < expected.size(); index += 37) {
+      Assertions.assertEquals(expected.keyAt(index), collection.keyAt(index));
+    }
+  }
+
+  /**
+   * Tests that a frozen collection answers like an IntRedBlackTree while values are inserted and
+   * removed, before and after the changes are merged.
+   */
+  @Test
+  public void testMatchesIntRedBlackTree() {
+    Random random = new Random(24);
+    ToIntFunction<String> keyOf = value -> Integer.parseInt(value.substring(0, value.indexOf(':')));
+    IntRedBlackTree<String> expected = new IntRedBlackTree<>();
+    ArrayList<String> stored = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      String value = random.nextInt(100) + ":" + i;
+      expected.insert(keyOf.applyAsInt(value), value);
+      stored.add(value);
+    }
+    ArrayList<String> sorted = new ArrayList<>();
+    expected.forEach(sorted::add);
+    FrozenIntMultimap<String> collection = new FrozenIntMultimap<>();
+    collection.insertSorted(sorted, keyOf);
+    assertSameAs(expected, collection);
+
+    for (int round = 0; round < 40; round++) {
+      for (int i = 0; i < 40; i++) {
+        // Remove more than is inserted, so that whole keys disappear and come back.
+        if (random.nextInt(3) == 0) {
+          String value = random.nextInt(round < 20 ? 100 : 110) + ":" + round + "-" + i;
+          expected.insert(keyOf.applyAsInt(value), value);
+          collection.insert(keyOf.applyAsInt(value), value);
+          stored.add(value);
+        } else {
+          String value = stored.remove(random.nextInt(stored.size()));
+          Assertions.assertTrue(collection.remove(keyOf.applyAsInt(value), value));
+          Assertions.assertTrue(expected.remove(keyOf.applyAsInt(value), value));
+          Assertions.assertFalse(collection.remove(keyOf.applyAsInt(value), value));
+        }
+      }
+      assertSameAs(expected, collection);
+    }
+  }
+
+  /**
+   * Tests bulk inserts into empty and non-empty collections, empty ranges, bounds and clear.
+   */
+  @Test
+  public void testBulkInsertAndEmptyRanges() {
+    FrozenIntMultimap<String> collection = new FrozenIntMultimap<>();
+    Assertions.assertTrue(collection.isEmpty());
+    Assertions.assertFalse(collection.iterator().hasNext());
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> collection.keyAt(0));
+    collection.insertSorted(List.of("b", "a", "c"), value -> value.charAt(0) % 2);
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> collection.insertSorted(List.of("c", "b"), value -> value.charAt(0)));
+    collection.insertSorted(List.of("d", "e"), value -> value.charAt(0) % 2);
+    Assertions.assertEquals(5, collection.size());
+
+    // "b" and "d" have key 0, the others key 1, and later values follow earlier ones of a key.
+    ArrayList<String> all = new ArrayList<>();
+    collection.forEach(all::add);
+    Assertions.assertEquals(List.of("b", "d", "a", "c", "e"), all);
+    Assertions.assertEquals(1, collection.keyAt(2));
+    Assertions.assertEquals(0, collection.countInRange(1, 0));
+    Assertions.assertFalse(collection.range(1, 0).hasNext());
+    Iterator<String> odd = collection.range(1, Integer.MAX_VALUE);
+    Assertions.assertEquals("a", odd.next());
+    Assertions.assertEquals("c", odd.next());
+    Assertions.assertEquals("e", odd.next());
+    Assertions.assertThrows(NoSuchElementException.class, odd::next);
+
+    collection.clear();
+    Assertions.assertEquals(0, collection.size());
+    Assertions.assertFalse(collection.iterator().hasNext());
+  }
+}
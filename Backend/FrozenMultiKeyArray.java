@@ -0,0 +1,493 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A sorted collection with multiple keys per node, like IterableMultiKeyRBT, for data that is
+ * read far more often than it changes. All keys are kept in one array in sorted order, with keys
+ * that compare equal next to each other in insertion order, so a search is a binary search and a
+ * scan reads the array sequentially instead of following a pointer per node. A run of equal keys
+ * plays the part of a node: size counts the runs, and each run costs two ints instead of a node
+ * and a KeyList.
+ *
+ * The collection can still be changed. Inserted keys are buffered in a small IterableMultiKeyRBT,
+ * the delta, and removed keys are only marked as removed. Iterations combine the array with the
+ * delta and skip the removed keys. Once the delta and the removed keys together exceed a small
+ * fraction of the collection, a change merges them into a new array in O(n), so the cost of a
+ * change stays O(log n) on average.
+ *
+ * @param <T> The type of the keys. Must be Comparable.
+ */
+public class FrozenMultiKeyArray<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  // The delta and the removed keys are merged once they exceed the larger of MIN_CHANGES and the
+  // length of the array divided by CHANGE_RATIO.
+  private static final int MIN_CHANGES = 256;
+  private static final int CHANGE_RATIO = 32;
+
+  // The merged keys in sorted order, equal keys in insertion order
+  private Object[] keys = new Object[0];
+  // Position in keys of the first key of each run of equal keys, followed by keys.length
+  private int[] starts = {0};
+  // Number of keys of each run that have not been removed, and number of runs that have any
+  private int[] live = new int[0];
+  private int liveRuns = 0;
+  // Positions in keys whose key has been removed, sorted, and how many are used
+  private int[] removed = new int[0];
+  private int removedCount = 0;
+  // Keys inserted since the last merge
+  private final IterableMultiKeyRBT<T> delta = new IterableMultiKeyRBT<>();
+  // Number of nodes of the delta whose key has no live run in the array
+  private int deltaOnlyRuns = 0;
+  // The starting point for the iteration
+  private Comparable<T> startPoint;
+
+  /**
+   * Creates an empty collection. This is the only constructor, so JUnit can create the class to
+   * run the tests below; use copyOf to start from the keys of another collection.
+   */
+  public FrozenMultiKeyArray() {
+  }
+
+  /**
+   * Creates a collection with the keys of another one, which is not changed.
+   *
+   * @param source the keys to copy, iterated from its start point
+   * @param <T>    the type of the keys
+   * @return the new collection
+   */
+  public static <T extends Comparable<T>> FrozenMultiKeyArray<T> copyOf(
+      IterableMultiKeySortedCollectionInterface<T> source) {
+    ArrayList<T> sorted = new ArrayList<>(source.numKeys());
+    source.forEach(sorted::add);
+    FrozenMultiKeyArray<T> collection = new FrozenMultiKeyArray<>();
+    collection.build(sorted.toArray());
+    return collection;
+  }
+
+  /**
+   * Inserts a key into the delta.
+   *
+   * @param key object to insert
+   * @return true if the collection had no key equal to it, false if it was added to a run
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  public boolean insertSingleKey(T key) {
+    boolean newNode = delta.insertSingleKey(key);
+    boolean newRun = newNode && !hasLiveRun(key);
+    if (newRun) {
+      deltaOnlyRuns++;
+    }
+    mergeIfLarge();
+    return newRun;
+  }
+
+  /**
+   * Inserts all keys of a list, unless the collection already has keys equal to them.
+   *
+   * @param data the keys to insert
+   * @return true if the keys were inserted, false if the collection contains equal keys
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the collection.");
+    }
+    if (contains(data)) {
+      return false;
+    }
+    for (T key : data) {
+      insertSingleKey(key);
+    }
+    return true;
+  }
+
+  /**
+   * Inserts many keys that are already sorted and merges them into the array right away.
+   *
+   * @param sortedKeys keys in non-decreasing order
+   * @throws IllegalArgumentException if a key is null or the keys are not sorted
+   */
+  @Override
+  public void insertSortedKeys(List<T> sortedKeys) {
+    delta.insertSortedKeys(sortedKeys);
+    merge();
+  }
+
+  /**
+   * Removes the first key that is equal to key, searching the array before the delta because its
+   * keys were inserted first.
+   *
+   * @param key object to remove
+   * @return true if a key was removed, false if the collection does not contain key
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  public boolean removeKey(T key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key cannot be null.");
+    }
+    int run = runOf(key);
+    if (run >= 0) {
+      for (int index = starts[run]; index < starts[run + 1]; index++) {
+        if (keys[index].equals(key)) {
+          int position = Arrays.binarySearch(removed, 0, removedCount, index);
+          if (position < 0) {
+            markRemoved(-position - 1, index, run);
+            return true;
+          }
+        }
+      }
+    }
+    if (!delta.removeKey(key)) {
+      return false;
+    }
+    if ((run < 0 || live[run] == 0) && delta.countInRange(key, key) == 0) {
+      deltaOnlyRuns--;
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the collection has keys that compare equal to data.
+   *
+   * @param data the key list to find
+   * @return true if there are such keys
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    if (data == null) {
+      throw new NullPointerException("This collection cannot store null references.");
+    }
+    int low = 0;
+    int high = live.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      // Key lists compare by their first key, so a list of the run's first key stands for it.
+      int compare = data.compareTo(new ArrayKeyList<>(firstKeyOf(middle)));
+      if (compare == 0) {
+        return live[middle] > 0 || delta.contains(data);
+      }
+      if (compare < 0) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return delta.contains(data);
+  }
+
+  /**
+   * @return the number of runs of equal keys, which is the number of distinct keys
+   */
+  @Override
+  public int size() {
+    return liveRuns + deltaOnlyRuns;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return numKeys() == 0;
+  }
+
+  @Override
+  public int numKeys() {
+    return keys.length - removedCount + delta.numKeys();
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(startPoint);
+  }
+
+  /**
+   * Returns an iterator over the keys that are equal to or greater than from. Unlike
+   * setIterationStartPoint, this does not change the state of the collection.
+   *
+   * @param from lower bound of the iteration, or null to start from the first key
+   * @return Iterator for in-order traversal from the lower bound.
+   */
+  public Iterator<T> iterator(Comparable<T> from) {
+    return new MergingIterator(from);
+  }
+
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  @Override
+  public void clear() {
+    build(new Object[0]);
+    delta.clear();
+    deltaOnlyRuns = 0;
+  }
+
+  /**
+   * Iterates over the array and the delta at once, taking the smaller key next and the key from
+   * the array when both are equal. While there is no delta and nothing is removed this is a plain
+   * scan over the array.
+   */
+  private class MergingIterator implements Iterator<T> {
+    private int index; // position in keys of the next key of the array
+    private int nextRemoved; // position in removed of the first removed key at or after index
+    private final Iterator<T> deltaKeys;
+    private T deltaNext; // next key of the delta, null if there is none
+
+    MergingIterator(Comparable<T> from) {
+      int run = from == null ? 0 : firstRunNotBelow(from);
+      index = starts[run];
+      int position = Arrays.binarySearch(removed, 0, removedCount, index);
+      nextRemoved = position < 0 ? -position - 1 : position;
+      skipRemoved();
+      deltaKeys = delta.iterator(from);
+      deltaNext = deltaKeys.hasNext() ? deltaKeys.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < keys.length || deltaNext != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (deltaNext != null
+          && (index == keys.length || deltaNext.compareTo((T) keys[index]) < 0)) {
+        T key = deltaNext;
+        deltaNext = deltaKeys.hasNext() ? deltaKeys.next() : null;
+        return key;
+      }
+      if (index == keys.length) {
+        throw new NoSuchElementException();
+      }
+      T key = (T) keys[index++];
+      skipRemoved();
+      return key;
+    }
+
+    /**
+     * Moves index past removed keys.
+     */
+    private void skipRemoved() {
+      while (nextRemoved < removedCount && removed[nextRemoved] == index) {
+        index++;
+        nextRemoved++;
+      }
+    }
+  }
+
+  /**
+   * Records a key of the array as removed and merges if enough has changed. Removed keys stay in
+   * the array until the merge, so runs can still be compared with their first key.
+   *
+   * @param position where the key's index belongs in removed
+   * @param index    the key's position in keys
+   * @param run      the run of the key
+   */
+  private void markRemoved(int position, int index, int run) {
+    if (removedCount == removed.length) {
+      removed = Arrays.copyOf(removed, Math.max(16, removedCount * 2));
+    }
+    System.arraycopy(removed, position, removed, position + 1, removedCount - position);
+    removed[position] = index;
+    removedCount++;
+    if (--live[run] == 0) {
+      liveRuns--;
+      if (delta.countInRange(firstKeyOf(run), firstKeyOf(run)) > 0) {
+        deltaOnlyRuns++;
+      }
+    }
+    mergeIfLarge();
+  }
+
+  /**
+   * Merges the delta and the removed keys into the array once they have grown large enough.
+   */
+  private void mergeIfLarge() {
+    if (removedCount + delta.numKeys() > Math.max(MIN_CHANGES, keys.length / CHANGE_RATIO)) {
+      merge();
+    }
+  }
+
+  /**
+   * Replaces the array by one holding exactly the keys of the collection, and empties the delta
+   * and the removed keys.
+   */
+  private void merge() {
+    Object[] merged = new Object[numKeys()];
+    Iterator<T> all = new MergingIterator(null);
+    for (int i = 0; i < merged.length; i++) {
+      merged[i] = all.next();
+    }
+    build(merged);
+    delta.clear();
+    deltaOnlyRuns = 0;
+  }
+
+  /**
+   * Makes sorted keys the contents of the array, finding their runs.
+   *
+   * @param sorted the keys in sorted order
+   */
+  @SuppressWarnings("unchecked")
+  private void build(Object[] sorted) {
+    int[] runStarts = new int[sorted.length + 1];
+    int runs = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || ((T) sorted[i - 1]).compareTo((T) sorted[i]) != 0) {
+        runStarts[runs++] = i;
+      }
+    }
+    runStarts[runs] = sorted.length;
+    keys = sorted;
+    starts = Arrays.copyOf(runStarts, runs + 1);
+    live = new int[runs];
+    for (int run = 0; run < runs; run++) {
+      live[run] = starts[run + 1] - starts[run];
+    }
+    liveRuns = runs;
+    removed = new int[0];
+    removedCount = 0;
+  }
+
+  /**
+   * @param run a run
+   * @return the first key of the run, which may have been removed
+   */
+  @SuppressWarnings("unchecked")
+  private T firstKeyOf(int run) {
+    return (T) keys[starts[run]];
+  }
+
+  /**
+   * @param key a key
+   * @return the first run whose keys are not smaller than key, live.length if there is none
+   */
+  private int firstRunNotBelow(Comparable<T> key) {
+    int low = 0;
+    int high = live.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (key.compareTo(firstKeyOf(middle)) > 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param key a key
+   * @return the run whose keys compare equal to key, -1 if there is none
+   */
+  private int runOf(T key) {
+    int run = firstRunNotBelow(key);
+    return run < live.length && key.compareTo(firstKeyOf(run)) == 0 ? run : -1;
+  }
+
+  /**
+   * @return true if the array has a run of keys equal to key that has not been removed entirely
+   */
+  private boolean hasLiveRun(T key) {
+    int run = runOf(key);
+    return run >= 0 && live[run] > 0;
+  }
+
+  /**
+   * Checks that the collection holds the same keys as a tree, in the same order, and answers
+   * like it.
+   */
+  private static void assertSameAs(IterableMultiKeyRBT<Integer> expected,
+      FrozenMultiKeyArray<Integer> collection) {
+    Assertions.assertEquals(expected.size(), collection.size());
+    Assertions.assertEquals(expected.numKeys(), collection.numKeys());
+    ArrayList<Integer> expectedKeys = new ArrayList<>();
+    expected.forEach(expectedKeys::add);
+    ArrayList<Integer> actualKeys = new ArrayList<>();
+    collection.forEach(actualKeys::add);
+    Assertions.assertEquals(expectedKeys, actualKeys);
+    for (int from = -5; from < 110; from += 9) {
+      Iterator<Integer> expectedFrom = expected.iterator(from);
+      Iterator<Integer> actualFrom = collection.iterator(from);
+      while (expectedFrom.hasNext()) {
+        Assertions.assertEquals(expectedFrom.next(), actualFrom.next());
+      }
+      Assertions.assertFalse(actualFrom.hasNext());
+      Assertions.assertEquals(expected.contains(new ArrayKeyList<>(from)),
+          collection.contains(new ArrayKeyList<>(from)));
+    }
+  }
+
+  /**
+   * Tests that a frozen copy of a tree answers like the tree while keys are inserted and removed,
+   * before and after the changes are merged.
+   */
+  @Test
+  public void testMatchesIterableMultiKeyRBT() {
+    Random random = new Random(24);
+    IterableMultiKeyRBT<Integer> expected = new IterableMultiKeyRBT<>();
+    for (int i = 0; i < 3000; i++) {
+      expected.insertSingleKey(random.nextInt(100));
+    }
+    FrozenMultiKeyArray<Integer> collection = FrozenMultiKeyArray.copyOf(expected);
+    assertSameAs(expected, collection);
+
+    for (int round = 0; round < 40; round++) {
+      for (int i = 0; i < 40; i++) {
+        // Remove more than is inserted, so that whole runs disappear and come back.
+        int key = random.nextInt(round < 20 ? 100 : 110);
+        if (random.nextInt(3) == 0) {
+          Assertions.assertEquals(expected.insertSingleKey(key), collection.insertSingleKey(key));
+        } else {
+          Assertions.assertEquals(expected.removeKey(key), collection.removeKey(key));
+        }
+      }
+      assertSameAs(expected, collection);
+    }
+  }
+
+  /**
+   * Tests bulk inserts, key lists, start points, empty iterations and clear.
+   */
+  @Test
+  public void testBulkInsertAndStartPoint() {
+    FrozenMultiKeyArray<String> collection = new FrozenMultiKeyArray<>();
+    Assertions.assertTrue(collection.isEmpty());
+    Assertions.assertFalse(collection.iterator().hasNext());
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> collection.insertSingleKey(null));
+    Assertions.assertTrue(collection.insertSingleKey("b"));
+    collection.insertSortedKeys(List.of("a", "c", "c"));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> collection.insertSortedKeys(List.of("c", "a")));
+    Assertions.assertFalse(collection.insert(new ArrayKeyList<>("a")));
+    Assertions.assertTrue(collection.insert(new ArrayKeyList<>("d")));
+    Assertions.assertEquals(4, collection.size());
+    Assertions.assertEquals(5, collection.numKeys());
+
+    collection.setIterationStartPoint("bb");
+    Iterator<String> keys = collection.iterator();
+    Assertions.assertEquals("c", keys.next());
+    Assertions.assertEquals("c", keys.next());
+    Assertions.assertEquals("d", keys.next());
+    Assertions.assertFalse(keys.hasNext());
+    Assertions.assertThrows(NoSuchElementException.class, keys::next);
+    collection.setIterationStartPoint(null);
+    Assertions.assertEquals("a", collection.iterator().next());
+
+    collection.clear();
+    Assertions.assertEquals(0, collection.size());
+    Assertions.assertEquals(0, collection.numKeys());
+  }
+}
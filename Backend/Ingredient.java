@@ -1,4 +1,5 @@
-
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
 
@@ -7,16 +8,100 @@
  */
 public class Ingredient implements Comparable<Ingredient> {
 
-  public String ingredientName;  //ingredient name
-  public int ingredientCalories; //ingredient calories per 100g
-  public String ingredientCategory; //ingredient category
+  private String ingredientName;  //ingredient name
+  private int ingredientCalories; //ingredient calories per 100g
+  private String ingredientCategory; //ingredient category
+  private int categoryId; //id of the category in CategoryDictionary
+  private volatile Owner owner; //the backend whose indexes hold this ingredient, null if none
+  private long insertionNumber; //position in the insertion order of the owner's indexes
+
+  /**
+   * A backend that stores ingredients in indexes keyed by their fields. While an ingredient is
+   * owned, its setters make their change through the owner, so the owner can take the ingredient
+   * out of its indexes and put it back at its new position.
+   */
+  public interface Owner {
+
+    /**
+     * Applies a change to one of the ingredient's fields and moves the ingredient to the
+     * positions that match its new values in every index.
+     *
+     * @param ingredient the owned ingredient that changes
+     * @param change     sets the new value of the field
+     */
+    public void reindex(Ingredient ingredient, Runnable change);
+  }
+
+  // Sets the owner field atomically, see claimOwner
+  private static final AtomicReferenceFieldUpdater<Ingredient, Owner> OWNER =
+      AtomicReferenceFieldUpdater.newUpdater(Ingredient.class, Owner.class, "owner");
+
+  /**
+   * Orders ingredients by category, then by calories, then by name. Within a category this keeps
+   * ingredients sorted by calories, which lets substitute queries seek and stop early.
+   */
+  public static final Comparator<Ingredient> BY_CATEGORY_CALORIES_NAME = (a, b) -> {
+    int compare = compareCategories(a, b);
+    if (compare != 0) {
+      return compare;
+    }
+    compare = Integer.compare(a.ingredientCalories, b.ingredientCalories);
+    if (compare != 0) {
+      return compare;
+    }
+    return a.ingredientName.compareTo(b.ingredientName);
+  };
+
+  /**
+   * Orders ingredients by calories, then by name, then by category.
+   */
+  public static final Comparator<Ingredient> BY_CALORIES_NAME = (a, b) -> {
+    int compare = Integer.compare(a.ingredientCalories, b.ingredientCalories);
+    if (compare != 0) {
+      return compare;
+    }
+    compare = a.ingredientName.compareTo(b.ingredientName);
+    if (compare != 0) {
+      return compare;
+    }
+    return compareCategories(a, b);
+  };
+
+  /**
+   * Orders ingredients by name, then by category, then by calories.
+   */
+  public static final Comparator<Ingredient> BY_NAME = (a, b) -> {
+    int compare = a.ingredientName.compareTo(b.ingredientName);
+    if (compare != 0) {
+      return compare;
+    }
+    compare = compareCategories(a, b);
+    if (compare != 0) {
+      return compare;
+    }
+    return Integer.compare(a.ingredientCalories, b.ingredientCalories);
+  };
+
+  /**
+   * Compares the categories of two ingredients alphabetically. Ingredients of the same category
+   * share a category id, so the common case of equal categories needs no String comparison.
+   */
+  private static int compareCategories(Ingredient a, Ingredient b) {
+    if (a.categoryId == b.categoryId) {
+      return 0;
+    }
+    return a.ingredientCategory.compareTo(b.ingredientCategory);
+  }
+
+  // The ordering used by compareTo, shared by every ingredient
+  private static Comparator<Ingredient> ordering = BY_CATEGORY_CALORIES_NAME;
 
   //create two classes, one that has a key of name and another, or we can use a method
   //that specifies the key to search with instead of two constructors
   public Ingredient(String category, String name, int calories) {
     this.ingredientName = name;
     this.ingredientCalories = calories;
-    this.ingredientCategory = category;
+    setCategory(category);
   }
 
   /**
@@ -34,6 +119,13 @@ public class Ingredient implements Comparable<Ingredient> {
 
   public String getCategory() {return this.ingredientCategory;}
 
+  /**
+   * Retrieves the id of the ingredient's category in CategoryDictionary.
+   *
+   * @return Category id.
+   */
+  public int getCategoryId() {return this.categoryId;}
+
   /**
    * Retrieves the caloric value of the ingredient.
    *
@@ -42,38 +134,140 @@ public class Ingredient implements Comparable<Ingredient> {
   public int getCalories() {return this.ingredientCalories;}
 
   /**
-   * Sets the name for the ingredient.
+   * Sets the name for the ingredient. If a backend holds the ingredient, the backend moves it to
+   * its new position in every index.
    *
    * @param name New ingredient name.
+   * @throws NullPointerException if name is null
    */
-  public void setName(String name) {this.ingredientName = name;}
+  public void setName(String name) {
+    if (name == null) {
+      throw new NullPointerException("name cannot be null");
+    }
+    update(() -> this.ingredientName = name);
+  }
 
   /**
-   * Sets the category for the ingredient.
+   * Sets the category for the ingredient. The category is looked up in CategoryDictionary, so all
+   * ingredients of a category share one String and one id. If a backend holds the ingredient, the
+   * backend moves it to its new position in every index.
    *
    * @param category New ingredient category.
+   * @throws NullPointerException if category is null
    */
-  public void setCategory(String category) {this.ingredientCategory = category;}
+  public void setCategory(String category) {
+    int id = CategoryDictionary.idOf(category);
+    update(() -> {
+      this.categoryId = id;
+      this.ingredientCategory = CategoryDictionary.nameOf(id);
+    });
+  }
 
   /**
-   * Sets the caloric value for the ingredient.
+   * Sets the caloric value for the ingredient. If a backend holds the ingredient, the backend
+   * moves it to its new position in every index.
    *
    * @param calories New caloric value.
    */
-  public void setCalories(int calories) {this.ingredientCalories = calories;}
+  public void setCalories(int calories) {
+    update(() -> this.ingredientCalories = calories);
+  }
 
   /**
-   * This method was required by implementation of Comparable interface
+   * Applies a change to a field, through the owner when there is one. The ingredient is locked
+   * meanwhile, so a backend that locks it while adding it never indexes a value that is about to
+   * change.
    *
-   * @param ing
-   * @return
+   * @param change sets the new value of the field
    */
-  @Override
-  public int compareTo(Ingredient ing) {
-    return -1;
+  private synchronized void update(Runnable change) {
+    if (owner == null) {
+      change.run();
+    } else {
+      owner.reindex(this, change);
+    }
+  }
+
+  /**
+   * Retrieves the backend whose indexes hold this ingredient.
+   *
+   * @return The owner, or null if no backend holds the ingredient.
+   */
+  public Owner getOwner() {return this.owner;}
+
+  /**
+   * Sets the backend whose indexes hold this ingredient. Only backends call this, when they add
+   * or remove the ingredient.
+   *
+   * @param owner The new owner, or null when the ingredient is removed.
+   */
+  void setOwner(Owner owner) {this.owner = owner;}
+
+  /**
+   * Sets the owner if no backend holds this ingredient yet, in one atomic step. Only backends
+   * call this, when they add the ingredient, so that of two threads adding the same ingredient at
+   * once only one succeeds.
+   *
+   * @param owner The new owner.
+   * @return true if the owner was set, false if a backend already holds the ingredient.
+   */
+  boolean claimOwner(Owner owner) {return OWNER.compareAndSet(this, null, owner);}
+
+  /**
+   * Retrieves the number the owner gave this ingredient when it last entered the owner's indexes.
+   * Owners number ingredients in increasing order, so sorting by this number gives the order in
+   * which they were inserted.
+   *
+   * @return The insertion number, 0 if no backend has indexed the ingredient.
+   */
+  long getInsertionNumber() {return this.insertionNumber;}
+
+  /**
+   * Sets the insertion number. Only backends call this, when they index the ingredient.
+   *
+   * @param insertionNumber The new insertion number.
+   */
+  void setInsertionNumber(long insertionNumber) {this.insertionNumber = insertionNumber;}
+
+  /**
+   * Sets the ordering used by compareTo. Trees order their nodes with compareTo, so the ordering
+   * must only be changed while no tree holds ingredients.
+   *
+   * @param newOrdering the ordering to use, such as BY_CATEGORY_CALORIES_NAME
+   * @throws NullPointerException if newOrdering is null
+   */
+  public static void setOrdering(Comparator<Ingredient> newOrdering) {
+    if (newOrdering == null) {
+      throw new NullPointerException("ordering cannot be null");
+    }
+    ordering = newOrdering;
   }
 
+  /**
+   * Retrieves the ordering currently used by compareTo.
+   *
+   * @return The current ordering.
+   */
+  public static Comparator<Ingredient> getOrdering() {return ordering;}
 
+  /**
+   * Compares this ingredient to another using the configured ordering (category, then calories,
+   * then name by default). Ingredients that compare equal share a node in the tree.
+   *
+   * @param ing the ingredient to compare to
+   * @return negative if this ingredient sorts first, 0 if both keys are equal, positive otherwise
+   */
+  @Override
+  public int compareTo(Ingredient ing) {
+    return ordering.compare(this, ing);
+  }
 
+  /**
+   * @return a readable description of this ingredient
+   */
+  @Override
+  public String toString() {
+    return ingredientName + " (" + ingredientCategory + ", " + ingredientCalories + " calories)";
+  }
 
 }
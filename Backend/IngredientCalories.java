@@ -0,0 +1,79 @@
+/**
+ * Wraps an ingredient so that it is ordered only by its calories. Ingredients with the same calorie
+ * count compare equal and therefore share a node (and its KeyList) in an IterableMultiKeyRBT, which
+ * makes a tree of these a calorie-ordered index.
+ */
+public class IngredientCalories implements Comparable<IngredientCalories> {
+
+  private final Ingredient ingredient; // the indexed ingredient, null for search keys
+  private final int calories; // calories of the ingredient when it was indexed
+
+  /**
+   * Creates an index entry for an ingredient.
+   *
+   * @param ingredient the ingredient to index
+   */
+  public IngredientCalories(Ingredient ingredient) {
+    this.ingredient = ingredient;
+    this.calories = ingredient.getCalories();
+  }
+
+  /**
+   * Creates a search key that can be used as an iteration start point.
+   *
+   * @param calories the calorie count to search for
+   */
+  public IngredientCalories(int calories) {
+    this.ingredient = null;
+    this.calories = calories;
+  }
+
+  /**
+   * Retrieves the indexed ingredient.
+   *
+   * @return Ingredient, or null if this is a search key.
+   */
+  public Ingredient getIngredient() {return this.ingredient;}
+
+  /**
+   * Retrieves the calories this entry is ordered by.
+   *
+   * @return Calories.
+   */
+  public int getCalories() {return this.calories;}
+
+  /**
+   * Compares two entries by calories only.
+   *
+   * @param other the entry to compare to
+   * @return negative, zero or positive as this entry has fewer, equal or more calories
+   */
+  @Override
+  public int compareTo(IngredientCalories other) {
+    return Integer.compare(this.calories, other.calories);
+  }
+
+  /**
+   * Two entries are equal when they index the same ingredient object with the same calories, so
+   * a new entry for an indexed ingredient can be used to remove the entry from a tree.
+   *
+   * @param o the object to compare to
+   * @return true if o is an entry for the same ingredient and calories
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof IngredientCalories)) {
+      return false;
+    }
+    IngredientCalories other = (IngredientCalories) o;
+    return this.ingredient == other.ingredient && this.calories == other.calories;
+  }
+
+  /**
+   * @return a hash code consistent with equals
+   */
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(ingredient) + calories;
+  }
+}
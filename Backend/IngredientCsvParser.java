@@ -0,0 +1,241 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Parses ingredient CSV data directly from bytes. Lines are scanned in place in a (usually memory
+ * mapped) ByteBuffer: field boundaries are found by looking for commas outside of double quotes,
+ * calories and kilojoules are parsed from their digits without creating Strings, and only the
+ * category and name fields are ever decoded.
+ *
+ * Each line holds the columns FoodCategory,FoodItem,per100grams,Cals_per100grams,KJ_per100grams.
+ * As in the Scanner based loader, a quoted category keeps its quotes and quotes never span lines.
+ */
+public class IngredientCsvParser {
+
+  // Largest region of a file that is mapped at once.
+  private static final int MAX_WINDOW = 1 << 30;
+
+  /**
+   * Receives the fields of each parsed row. Field positions are absolute indexes into the buffer
+   * passed to the handler and are only valid during the call.
+   */
+  public interface RowHandler {
+
+    /**
+     * Handles one row of the CSV.
+     *
+     * @param buffer        the buffer holding the row
+     * @param categoryStart index of the first byte of the category
+     * @param categoryEnd   index after the last byte of the category
+     * @param nameStart     index of the first byte of the name
+     * @param nameEnd       index after the last byte of the name
+     * @param calories      calories per 100g
+     * @param kilojoules    kilojoules per 100g, or -1 if the column is missing
+     */
+    public void row(ByteBuffer buffer, int categoryStart, int categoryEnd, int nameStart,
+        int nameEnd, int calories, int kilojoules);
+  }
+
+  /**
+   * Memory maps a CSV file and passes every data row (everything after the header line) to the
+   * handler in file order. Files larger than the mapping window are mapped one window at a time,
+   * with each window ending on a line boundary.
+   *
+   * @param filePath path to the CSV file
+   * @param handler  receives each row
+   * @return the number of rows parsed
+   * @throws FileNotFoundException if the file does not exist
+   * @throws IOException           if the file cannot be read
+   */
+  public static long parseFile(String filePath, RowHandler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      long rows = 0;
+      boolean header = true;
+      while (position < size) {
+        int length = (int) Math.min(MAX_WINDOW, size - position);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int end = length;
+        if (position + length < size) {
+          // Only parse complete lines; the rest is mapped again with the next window.
+          end = lastLineEnd(window, 0, length);
+          if (end == 0) {
+            throw new IOException("line at offset " + position + " is longer than the window");
+          }
+        }
+        int start = 0;
+        if (header) {
+          start = nextLineStart(window, 0, end);
+          header = false;
+        }
+        rows += parse(window, start, end, handler);
+        position += end;
+      }
+      return rows;
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException(filePath);
+    }
+  }
+
+  /**
+   * Parses all lines in a region of a buffer. The region must start at the beginning of a line;
+   * the final line may or may not end with a newline. Blank lines are skipped.
+   *
+   * @param buffer  the bytes to parse
+   * @param start   index of the first byte of the region
+   * @param end     index after the last byte of the region
+   * @param handler receives each row
+   * @return the number of rows parsed
+   * @throws IllegalArgumentException if a line has fewer than four fields or no calorie count
+   */
+  public static int parse(ByteBuffer buffer, int start, int end, RowHandler handler) {
+    int rows = 0;
+    int[] fieldEnds = new int[4];
+    int lineStart = start;
+    while (lineStart < end) {
+      // Find the end of this line and the ends of its first four fields.
+      int fields = 0;
+      boolean quoted = false;
+      int index = lineStart;
+      byte b = 0;
+      while (index < end && (b = buffer.get(index)) != '\n') {
+        if (b == '"') {
+          quoted = !quoted;
+        } else if (b == ',' && !quoted && fields < fieldEnds.length) {
+          fieldEnds[fields++] = index;
+        }
+        index++;
+      }
+      int lineEnd = index;
+      int nextLine = index < end ? index + 1 : end;
+      if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+
+      if (lineEnd > lineStart) {
+        if (fields < fieldEnds.length) {
+          throw new IllegalArgumentException("malformed ingredient row at byte " + lineStart);
+        }
+        int calories = parseLeadingInt(buffer, fieldEnds[2] + 1, fieldEnds[3]);
+        if (calories < 0) {
+          throw new IllegalArgumentException("missing calories in row at byte " + lineStart);
+        }
+        int kilojoules = parseLeadingInt(buffer, fieldEnds[3] + 1, lineEnd);
+        handler.row(buffer, lineStart, fieldEnds[0], fieldEnds[0] + 1, fieldEnds[1], calories,
+            kilojoules);
+        rows++;
+      }
+      lineStart = nextLine;
+    }
+    return rows;
+  }
+
+  /**
+   * Parses the digits at the start of a field, such as the 370 in "370 cal".
+   *
+   * @param buffer the bytes holding the field
+   * @param start  index of the first byte of the field
+   * @param end    index after the last byte of the field
+   * @return the parsed value, or -1 if the field does not start with a digit
+   */
+  private static int parseLeadingInt(ByteBuffer buffer, int start, int end) {
+    int value = 0;
+    int index = start;
+    while (index < end) {
+      int digit = buffer.get(index) - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      value = value * 10 + digit;
+      index++;
+    }
+    return index == start ? -1 : value;
+  }
+
+  /**
+   * Decodes a UTF-8 field into a String.
+   *
+   * @param buffer the bytes holding the field
+   * @param start  index of the first byte of the field
+   * @param end    index after the last byte of the field
+   * @return the decoded field
+   */
+  public static String decode(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    buffer.get(start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the index just after the first newline in the region, or end if there is none
+   */
+  static int nextLineStart(ByteBuffer buffer, int start, int end) {
+    for (int index = start; index < end; index++) {
+      if (buffer.get(index) == '\n') {
+        return index + 1;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * @return the index just after the last newline in the region, or start if there is none
+   */
+  static int lastLineEnd(ByteBuffer buffer, int start, int end) {
+    for (int index = end - 1; index >= start; index--) {
+      if (buffer.get(index) == '\n') {
+        return index + 1;
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Decodes category fields, returning the same String for every row of a category. Datasets
+   * have only a few dozen categories, so this avoids decoding (and keeping) one copy per row.
+   */
+  public static class CategoryCache {
+
+    private final String[] strings = new String[256];
+    private final byte[][] bytes = new byte[256][];
+
+    /**
+     * Returns the String for a category field, decoding it only the first time it is seen.
+     *
+     * @param buffer the bytes holding the field
+     * @param start  index of the first byte of the field
+     * @param end    index after the last byte of the field
+     * @return the category
+     */
+    public String get(ByteBuffer buffer, int start, int end) {
+      int hash = 0;
+      for (int index = start; index < end; index++) {
+        hash = 31 * hash + buffer.get(index);
+      }
+      int slot = (hash ^ (hash >>> 16)) & (strings.length - 1);
+      byte[] cached = bytes[slot];
+      if (cached != null && cached.length == end - start) {
+        boolean same = true;
+        for (int i = 0; i < cached.length && same; i++) {
+          same = cached[i] == buffer.get(start + i);
+        }
+        if (same) {
+          return strings[slot];
+        }
+      }
+      byte[] field = new byte[end - start];
+      buffer.get(start, field);
+      bytes[slot] = field;
+      strings[slot] = new String(field, StandardCharsets.UTF_8);
+      return strings[slot];
+    }
+  }
+}
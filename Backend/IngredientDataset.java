@@ -0,0 +1,603 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * One version of the ingredient data together with all of its indexes: the ingredient tree, the
+ * category counts, the name index and the per-category calorie indexes. BackendImplementation
+ * answers every query from a single dataset, and reloads build a new dataset next to the current
+ * one and replace it in one step, so queries never see a dataset that is only partly loaded.
+ *
+ * A dataset does not synchronize. It may be read by any number of threads at once, but it must
+ * not be changed while it is being read.
+ *
+ * The ingredient tree is an IterableMultiKeyRBT and the calorie indexes are IntRedBlackTrees,
+ * unless the dataset is created with other implementations, such as a BPlusMultiKeyTree and
+ * BPlusIntMultimaps. Once a dataset is loaded, frozenCopy builds a copy whose ingredient tree and
+ * calorie indexes are sorted arrays. A frozen dataset still accepts changes, which the arrays
+ * buffer and merge from time to time.
+ */
+public class IngredientDataset implements Ingredient.Owner {
+
+  // Approximate object sizes in bytes on a 64-bit JVM with compressed references, used by
+  // estimatedBytes.
+  private static final int NODE_BYTES = 56; // tree node together with its array of children
+  private static final int KEY_LIST_BYTES = 24; // ArrayKeyList holding a single key
+  private static final int EXTRA_KEY_BYTES = 4; // every further key of an ArrayKeyList
+  private static final int INGREDIENT_BYTES = 40;
+  private static final int INT_NODE_BYTES = 48; // IntRedBlackTree node holding a single value
+  private static final int STRING_BYTES = 40; // String and its array, without the characters
+  private static final int MAP_ENTRY_BYTES = 40; // HashMap entry and its share of the table
+  private static final int LIST_BYTES = 40; // ArrayList and its array, without the elements
+  private static final int COUNT_BYTES = 24; // CountingMultiset entry
+  private static final int FROZEN_KEY_BYTES = 4; // key in the array of a FrozenMultiKeyArray
+  private static final int FROZEN_RUN_BYTES = 8; // run of equal keys in a FrozenMultiKeyArray
+  private static final int FROZEN_VALUE_BYTES = 8; // key and value in a FrozenIntMultimap
+  private static final int B_PLUS_KEY_BYTES = 6; // key in a BPlusMultiKeyTree with its leaf share
+  private static final int B_PLUS_ENTRY_BYTES = 30; // entry of a BPlusIntMultimap and its key
+
+  // Data structures to store ingredients and categories.
+  private IterableMultiKeySortedCollectionInterface<Ingredient> ingredientTree;
+  private final CountingMultiset<String> categoryTree = new CountingMultiset<>();
+  // Index from ingredient name to the first ingredient inserted with that name.
+  private final HashMap<String, Ingredient> nameIndex = new HashMap<>();
+  // Ingredients whose name was already in the name index, in insertion order. Only names that
+  // occur more than once have an entry, and the first of them replaces a removed name.
+  private final HashMap<String, ArrayList<Ingredient>> duplicateNames = new HashMap<>();
+  // Ingredients of each category ordered by calories, indexed by CategoryDictionary id.
+  private final ArrayList<SortedIntMultimapInterface<Ingredient>> categoryIndex =
+      new ArrayList<>();
+  // Creates the calorie index of a category the first time it gets an ingredient
+  private final Supplier<SortedIntMultimapInterface<Ingredient>> calorieIndexFactory;
+  // Whether this dataset was built by frozenCopy
+  private boolean frozen = false;
+  // Insertion number of the ingredient that entered the indexes last, see ingredientsInOrder.
+  private long insertions = 0;
+
+  /**
+   * Creates an empty dataset whose ingredient tree is an IterableMultiKeyRBT.
+   */
+  public IngredientDataset() {
+    this(IterableMultiKeyRBT::new);
+  }
+
+  /**
+   * Creates an empty dataset with an ingredient tree of the given kind and IntRedBlackTree
+   * calorie indexes.
+   *
+   * @param ingredientTreeFactory creates the empty collection that holds the ingredients
+   */
+  public IngredientDataset(
+      Supplier<IterableMultiKeySortedCollectionInterface<Ingredient>> ingredientTreeFactory) {
+    this(ingredientTreeFactory, IntRedBlackTree::new);
+  }
+
+  /**
+   * Creates an empty dataset with an ingredient tree and calorie indexes of the given kinds.
+   *
+   * @param ingredientTreeFactory creates the empty collection that holds the ingredients
+   * @param calorieIndexFactory   creates an empty calorie index for a category
+   */
+  public IngredientDataset(
+      Supplier<IterableMultiKeySortedCollectionInterface<Ingredient>> ingredientTreeFactory,
+      Supplier<SortedIntMultimapInterface<Ingredient>> calorieIndexFactory) {
+    if (ingredientTreeFactory == null) {
+      throw new NullPointerException("ingredientTreeFactory cannot be null");
+    }
+    if (calorieIndexFactory == null) {
+      throw new NullPointerException("calorieIndexFactory cannot be null");
+    }
+    this.ingredientTree = ingredientTreeFactory.get();
+    this.calorieIndexFactory = calorieIndexFactory;
+  }
+
+  /**
+   * Inserts an ingredient into the ingredient tree, the category counts, its category's calorie
+   * index and the name index. The dataset becomes the ingredient's owner, so later changes through
+   * its setters are reindexed.
+   *
+   * @param ingredient The ingredient object to be inserted.
+   * @return true if the ingredient was successfully inserted, false if a dataset already holds
+   *         this ingredient object.
+   */
+  public boolean insertIngredient(Ingredient ingredient) throws NullPointerException{
+    if (ingredient == null) {throw new NullPointerException();}
+    if (ingredient.getOwner() != null) {
+      return false;
+    }
+
+    insertIntoTrees(ingredient);
+    indexName(ingredient); //first ingredient with a name wins
+    ingredient.setOwner(this);
+
+    return true;
+  }
+
+  /**
+   * Adds an ingredient to the ingredient tree, the category counts and its category's calorie
+   * index.
+   *
+   * @param ingredient the ingredient to add
+   */
+  private void insertIntoTrees(Ingredient ingredient) {
+    ingredient.setInsertionNumber(++insertions);
+    ingredientTree.insertSingleKey(ingredient); //insert ingredient object into iterable tree
+    categoryTree.increment(ingredient.getCategory()); //count the ingredient in its category
+    caloriesTreeOf(ingredient.getCategoryId())
+        .insert(ingredient.getCalories(), ingredient); //index by calories within category
+  }
+
+  /**
+   * Removes the ingredient with the given name, which is the one getCalorieCount and
+   * getNameSubstitutes use. If another ingredient has the same name, it takes the removed
+   * ingredient's place in the name index. Each index is updated in O(log n).
+   *
+   * @param ingredientName The name of the ingredient to remove.
+   * @return true if an ingredient was removed, false if no ingredient has this name.
+   */
+  public boolean removeIngredient(String ingredientName) {
+    Ingredient ingredient = nameIndex.get(ingredientName);
+    if (ingredient == null) {
+      return false;
+    }
+    removeFromTrees(ingredient);
+    unindexName(ingredient.getName(), ingredient);
+    ingredient.setOwner(null);
+    return true;
+  }
+
+  /**
+   * Replaces the ingredient with the given name by another ingredient, for example to correct its
+   * calories. When the name stays the same, the replacement also takes the original's place in the
+   * name index. Each index is updated in O(log n).
+   *
+   * @param ingredientName The name of the ingredient to replace.
+   * @param replacement    The ingredient to store instead.
+   * @return true if the ingredient was replaced, false if no ingredient has this name or a
+   *         dataset already holds the replacement.
+   * @throws NullPointerException if replacement is null
+   */
+  public boolean updateIngredient(String ingredientName, Ingredient replacement) {
+    if (replacement == null) {throw new NullPointerException();}
+    Ingredient ingredient = nameIndex.get(ingredientName);
+    if (ingredient == null || replacement.getOwner() != null) {
+      return false;
+    }
+    removeFromTrees(ingredient);
+    if (replacement.getName().equals(ingredient.getName())) {
+      nameIndex.put(ingredientName, replacement);
+    } else {
+      unindexName(ingredient.getName(), ingredient);
+      indexName(replacement);
+    }
+    insertIntoTrees(replacement);
+    ingredient.setOwner(null);
+    replacement.setOwner(this);
+    return true;
+  }
+
+  /**
+   * Changes a field of an ingredient held by this dataset. The ingredient is taken out of the
+   * trees, changed, and inserted again at the position of its new values, which costs O(log n)
+   * per index. It keeps its place in the name index unless its name changes.
+   *
+   * @param ingredient the ingredient that changes
+   * @param change     sets the new value of the field
+   * @throws IllegalArgumentException if this dataset does not hold the ingredient
+   */
+  @Override
+  public void reindex(Ingredient ingredient, Runnable change) {
+    if (ingredient.getOwner() != this) {
+      throw new IllegalArgumentException("ingredient is not held by this dataset");
+    }
+    String oldName = ingredient.getName();
+    removeFromTrees(ingredient);
+    try {
+      change.run();
+    } finally {
+      // Put the ingredient back even if the change failed, so no index loses it.
+      if (!oldName.equals(ingredient.getName())) {
+        unindexName(oldName, ingredient);
+        indexName(ingredient);
+      }
+      insertIntoTrees(ingredient);
+    }
+  }
+
+  /**
+   * Removes an ingredient from the ingredient tree, the category counts and its category's
+   * calorie index.
+   *
+   * @param ingredient the stored ingredient to remove
+   */
+  private void removeFromTrees(Ingredient ingredient) {
+    ingredientTree.removeKey(ingredient);
+    categoryTree.decrement(ingredient.getCategory());
+    caloriesTreeOf(ingredient.getCategoryId()).remove(ingredient.getCalories(), ingredient);
+  }
+
+  /**
+   * Adds an ingredient to the name index, or to the duplicate names if an earlier ingredient
+   * already has its name.
+   *
+   * @param ingredient the ingredient to add
+   */
+  private void indexName(Ingredient ingredient) {
+    if (nameIndex.putIfAbsent(ingredient.getName(), ingredient) != null) {
+      duplicateNames.computeIfAbsent(ingredient.getName(), name -> new ArrayList<>())
+          .add(ingredient);
+    }
+  }
+
+  /**
+   * Removes an ingredient from the name index or the duplicate names. When it was in the name
+   * index, the next ingredient with the same name takes its place.
+   *
+   * @param name       the name the ingredient is indexed under
+   * @param ingredient the ingredient to remove
+   */
+  private void unindexName(String name, Ingredient ingredient) {
+    ArrayList<Ingredient> duplicates = duplicateNames.get(name);
+    if (nameIndex.get(name) == ingredient) {
+      if (duplicates == null) {
+        nameIndex.remove(name);
+      } else {
+        nameIndex.put(name, duplicates.remove(0));
+      }
+    } else if (duplicates != null) {
+      duplicates.removeIf(duplicate -> duplicate == ingredient);
+    }
+    if (duplicates != null && duplicates.isEmpty()) {
+      duplicateNames.remove(name);
+    }
+  }
+
+  /**
+   * Inserts many ingredients at once. The result is the same as calling insertIngredient on every
+   * ingredient of every batch in order, but instead of one tree insertion per ingredient the
+   * ingredients are sorted in parallel and each distinct key is inserted once. The ingredient
+   * tree, the category index and the name index are built by separate tasks.
+   *
+   * @param batches lists of ingredients, in insertion order
+   * @param pool    the pool that runs the sorting and merging tasks
+   * @throws NullPointerException     if any ingredient is null
+   * @throws IllegalArgumentException if a dataset already holds any of the ingredients
+   */
+  public void insertIngredients(List<? extends List<Ingredient>> batches, ForkJoinPool pool) {
+    int total = 0;
+    for (List<Ingredient> batch : batches) {
+      total += batch.size();
+    }
+    Ingredient[] ingredients = new Ingredient[total];
+    int index = 0;
+    for (List<Ingredient> batch : batches) {
+      for (Ingredient ingredient : batch) {
+        if (ingredient == null) {throw new NullPointerException();}
+        if (ingredient.getOwner() != null) {
+          throw new IllegalArgumentException("a dataset already holds " + ingredient);
+        }
+        ingredients[index++] = ingredient;
+      }
+    }
+    for (Ingredient ingredient : ingredients) {
+      ingredient.setOwner(this);
+      ingredient.setInsertionNumber(++insertions);
+    }
+
+    pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(
+        // Stable sort, so equal keys keep their insertion order inside each KeyList.
+        ForkJoinTask.adapt(() -> {
+          Ingredient[] sorted = ingredients.clone();
+          Arrays.parallelSort(sorted);
+          ingredientTree.insertSortedKeys(Arrays.asList(sorted));
+        }),
+        ForkJoinTask.adapt(() -> insertIntoCategoryIndexes(ingredients)),
+        ForkJoinTask.adapt(() -> {
+          for (Ingredient ingredient : ingredients) {
+            indexName(ingredient);
+          }
+        }))));
+  }
+
+  /**
+   * Groups ingredients by category and merges each group into its category's calorie index, with
+   * one task per category. Also records the per-category counts in the category tree.
+   *
+   * @param ingredients the ingredients to add, in insertion order
+   */
+  private void insertIntoCategoryIndexes(Ingredient[] ingredients) {
+    HashMap<Integer, ArrayList<Ingredient>> groups = new HashMap<>();
+    for (Ingredient ingredient : ingredients) {
+      groups.computeIfAbsent(ingredient.getCategoryId(), categoryId -> new ArrayList<>())
+          .add(ingredient);
+    }
+
+    ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (Map.Entry<Integer, ArrayList<Ingredient>> group : groups.entrySet()) {
+      SortedIntMultimapInterface<Ingredient> caloriesTree = caloriesTreeOf(group.getKey());
+      tasks.add(ForkJoinTask.adapt(() -> {
+        // stable, keeps insertion order for equal calories
+        group.getValue().sort(Comparator.comparingInt(Ingredient::getCalories));
+        caloriesTree.insertSorted(group.getValue(), Ingredient::getCalories);
+      }));
+      categoryTree.increment(CategoryDictionary.nameOf(group.getKey()), group.getValue().size());
+    }
+    ForkJoinTask.invokeAll(tasks);
+  }
+
+  /**
+   * Returns the calorie index of a category, creating an empty one if the category has none yet.
+   *
+   * @param categoryId the CategoryDictionary id of the category
+   * @return the ingredients of the category ordered by calories
+   */
+  private SortedIntMultimapInterface<Ingredient> caloriesTreeOf(int categoryId) {
+    while (categoryIndex.size() <= categoryId) {
+      categoryIndex.add(null);
+    }
+    SortedIntMultimapInterface<Ingredient> caloriesTree = categoryIndex.get(categoryId);
+    if (caloriesTree == null) {
+      caloriesTree = calorieIndexFactory.get();
+      categoryIndex.set(categoryId, caloriesTree);
+    }
+    return caloriesTree;
+  }
+
+  /**
+   * Builds a copy of this dataset for a read-mostly workload. Its ingredient tree is a
+   * FrozenMultiKeyArray and its calorie indexes are FrozenIntMultimaps, so substitute queries,
+   * range counts and medians binary search and scan sorted arrays instead of walking trees, and
+   * the ingredient tree needs a few bytes per ingredient instead of a tree node and a KeyList. The
+   * copy becomes the owner of every ingredient, so this dataset must not be changed afterwards,
+   * but it can still be read until the copy replaces it. Takes O(n) time.
+   *
+   * @return the frozen copy
+   */
+  public IngredientDataset frozenCopy() {
+    IngredientDataset copy =
+        new IngredientDataset(FrozenMultiKeyArray::new, FrozenIntMultimap::new);
+    copy.frozen = true;
+    ArrayList<Ingredient> sorted = new ArrayList<>(getIngredientCount());
+    ingredients().forEachRemaining(sorted::add);
+    copy.ingredientTree.insertSortedKeys(sorted);
+    for (String category : categoryTree) {
+      copy.categoryTree.increment(category, categoryTree.count(category));
+    }
+    copy.nameIndex.putAll(nameIndex);
+    duplicateNames.forEach((name, duplicates) ->
+        copy.duplicateNames.put(name, new ArrayList<>(duplicates)));
+    for (int categoryId = 0; categoryId < categoryIndex.size(); categoryId++) {
+      SortedIntMultimapInterface<Ingredient> caloriesTree = categoryIndex.get(categoryId);
+      if (caloriesTree != null && !caloriesTree.isEmpty()) {
+        ArrayList<Ingredient> byCalories = new ArrayList<>(caloriesTree.size());
+        caloriesTree.forEach(byCalories::add);
+        copy.caloriesTreeOf(categoryId).insertSorted(byCalories, Ingredient::getCalories);
+      }
+    }
+    copy.insertions = insertions;
+    for (Ingredient ingredient : sorted) {
+      if (ingredient.getOwner() == this) {
+        ingredient.setOwner(copy);
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * @return true if this dataset was built by frozenCopy
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Retrieves a list of up to three ingredients that can replace a given ingredient by name. The
+   * replacements are other ingredients of the same category with the same or up to 30 more
+   * calories, in order of calories and then of insertion. The list is empty if the ingredient is
+   * not found or has no such replacements.
+   *
+   * @param ingredientName The name of the ingredient to be replaced.
+   * @return A list of potential replacement ingredients.
+   */
+  public ArrayList<Ingredient> getNameSubstitutes(String ingredientName) {
+
+    // Look up the specified ingredient in the name index.
+    Ingredient holder;
+    Ingredient originalIngredient = nameIndex.get(ingredientName);
+
+    if (originalIngredient == null) {
+      System.out.println("Ingredient not found");
+      return new ArrayList<>(); // Return empty list instead of null
+    }
+
+    // The category index holds only ingredients of the same category ordered by calories, so we
+    // scan just the range from the original's calories up to the threshold. The range cursor has
+    // its own position, so concurrent queries on the same tree do not interfere.
+    ArrayList<Ingredient> substitutes = new ArrayList<>();
+    SortedIntMultimapInterface<Ingredient> caloriesTree =
+        categoryIndex.get(originalIngredient.getCategoryId());
+    int threshold = originalIngredient.getCalories() + 30;
+    Iterator<Ingredient> subIterator =
+        caloriesTree.range(originalIngredient.getCalories(), threshold);
+
+    while (subIterator.hasNext() && substitutes.size() < 3) {
+      holder = subIterator.next();
+      // Making sure it is not a duplicate ingredient
+      if (!holder.getName().equals(originalIngredient.getName())) {
+        substitutes.add(holder);
+      }
+    }
+
+    return substitutes; // Always return the ArrayList, whether it's empty or has items
+  }
+
+
+  /**
+   * This method returns the calorie count for an ingredient specified
+   * by name. The calories returned is the caloric count per 100g as
+   * provided in the .csv file.
+   *
+   * @param ingredientName name of ingredient
+   * @return ingredient calories, -1 if ingredient doesn't exist
+   */
+  public int getCalorieCount(String ingredientName) {
+
+    // Look up the ingredient's calorie count in the name index.
+    Ingredient originalIngredient = nameIndex.get(ingredientName);
+    if (originalIngredient != null) {
+      return originalIngredient.getCalories();
+    }
+    //return - 1 if ingredient cannot be found
+    return -1;
+  }
+
+  /**
+   * Counts the ingredients whose calories are within a range, using the subtree weights of each
+   * category's calorie index instead of scanning the ingredients.
+   *
+   * @param low  the smallest calorie count to include
+   * @param high the largest calorie count to include
+   * @return the number of ingredients with low <= calories <= high
+   */
+  public int countIngredientsInCalorieRange(int low, int high) {
+    int count = 0;
+    for (SortedIntMultimapInterface<Ingredient> caloriesTree : categoryIndex) {
+      if (caloriesTree != null) {
+        count += caloriesTree.countInRange(low, high);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the median calorie count of a category. For an even number of ingredients the lower of
+   * the two middle values is returned.
+   *
+   * @param category the category
+   * @return the median calories of the category, -1 if the category has no ingredients
+   */
+  public int getMedianCalories(String category) {
+    if (categoryTree.count(category) == 0) {
+      return -1;
+    }
+    SortedIntMultimapInterface<Ingredient> caloriesTree =
+        categoryIndex.get(CategoryDictionary.idOf(category));
+    return caloriesTree.keyAt((caloriesTree.size() - 1) / 2);
+  }
+
+  /**
+   * Gets the total number of ingredients in the dataset.
+   *
+   * @return The total count of ingredients.
+   */
+  public int getIngredientCount() {
+    // Retrieve the count of all ingredients.
+    return (int) categoryTree.totalCount();
+  }
+
+  /**
+   * Gets the total number of unique categories in the dataset.
+   *
+   * @return The count of unique categories.
+   */
+  public int getCategoryCount() {
+    // Retrieve the count of unique categories.
+    return categoryTree.distinctCount();
+  }
+  /**
+   * Returns an iterator over all ingredients in ingredient order. The iterator has its own
+   * position, so several threads can iterate at once.
+   *
+   * @return an iterator over the ingredients
+   */
+  public Iterator<Ingredient> ingredients() {
+    return ingredientTree.iterator();
+  }
+
+  /**
+   * Returns all ingredients in the order in which they entered the indexes. An ingredient that
+   * was changed through a setter or that replaced another one with updateIngredient counts as
+   * inserted at the time of the change, because that is when the calorie index placed it after the
+   * ingredients with equal calories. Inserting the ingredients into an empty dataset in this order
+   * therefore rebuilds the same calorie indexes and the same name index, except that a replacement
+   * which took over the name of an earlier ingredient now comes after the other ingredients with
+   * that name. Takes O(n log n) time.
+   *
+   * @return the ingredients in insertion order
+   */
+  public ArrayList<Ingredient> ingredientsInOrder() {
+    ArrayList<Ingredient> ordered = new ArrayList<>(getIngredientCount());
+    ingredients().forEachRemaining(ordered::add);
+    ordered.sort(Comparator.comparingLong(Ingredient::getInsertionNumber));
+    return ordered;
+  }
+
+  /**
+   * Estimates the heap memory used by the ingredients and all indexes of this dataset, counting
+   * every ingredient name but not the category names, which CategoryDictionary shares between
+   * datasets. The estimate visits every ingredient, so it takes O(n) time.
+   *
+   * @return the estimated size of the dataset in bytes
+   */
+  public long estimatedBytes() {
+    long nodes = categoryTree.distinctCount();
+    long keyLists = 0;
+    long keys = 0;
+    long bytes = 0;
+    if (ingredientTree instanceof FrozenMultiKeyArray) {
+      // The delta of recent changes is small and not counted.
+      bytes += (long) ingredientTree.numKeys() * FROZEN_KEY_BYTES
+          + (long) ingredientTree.size() * FROZEN_RUN_BYTES;
+    } else if (ingredientTree instanceof BPlusMultiKeyTree) {
+      bytes += (long) ingredientTree.numKeys() * B_PLUS_KEY_BYTES;
+    } else {
+      nodes += ingredientTree.size();
+      keyLists += ingredientTree.size();
+      keys += ingredientTree.numKeys();
+    }
+    for (SortedIntMultimapInterface<Ingredient> caloriesIndex : categoryIndex) {
+      if (caloriesIndex instanceof IntRedBlackTree) {
+        IntRedBlackTree<Ingredient> caloriesTree = (IntRedBlackTree<Ingredient>) caloriesIndex;
+        keys += caloriesTree.size() - caloriesTree.keyCount(); // values after the first of a key
+        bytes += caloriesTree.keyCount() * INT_NODE_BYTES;
+      } else if (caloriesIndex instanceof BPlusIntMultimap) {
+        bytes += (long) caloriesIndex.size() * B_PLUS_ENTRY_BYTES;
+      } else if (caloriesIndex != null) {
+        bytes += (long) caloriesIndex.size() * FROZEN_VALUE_BYTES;
+      }
+    }
+    bytes += nodes * NODE_BYTES + keyLists * KEY_LIST_BYTES
+        + (keys - keyLists) * EXTRA_KEY_BYTES + categoryTree.distinctCount() * COUNT_BYTES
+        + (nameIndex.size() + duplicateNames.size()) * MAP_ENTRY_BYTES;
+    for (ArrayList<Ingredient> duplicates : duplicateNames.values()) {
+      bytes += LIST_BYTES + duplicates.size() * EXTRA_KEY_BYTES;
+    }
+    Iterator<Ingredient> ingredients = ingredients();
+    while (ingredients.hasNext()) {
+      // Latin-1 names take one byte per character, and objects are padded to 8 bytes.
+      bytes += INGREDIENT_BYTES
+          + ((STRING_BYTES + ingredients.next().getName().length() + 7) & ~7);
+    }
+    return bytes;
+  }
+
+  /**
+   * Gives up ownership of every ingredient, so they can be inserted into another dataset and their
+   * setters no longer reindex this one. The indexes are left as they are, so queries that are
+   * still reading this dataset finish normally.
+   */
+  public void release() {
+    ingredientTree.iterator().forEachRemaining(ingredient -> {
+      if (ingredient.getOwner() == this) {
+        ingredient.setOwner(null);
+      }
+    });
+  }
+}
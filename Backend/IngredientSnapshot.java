@@ -0,0 +1,218 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes a compact binary snapshot of a set of ingredients, so that a backend can start
+ * without parsing the CSV file again.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ *   int    magic "SUBS"
+ *   int    format version
+ *   int    string count, then for each string: int byte length, UTF-8 bytes
+ *   int    row count
+ *   int[]  category string id of every row
+ *   int[]  name string id of every row
+ *   int[]  calories of every row
+ *   long   CRC32 of everything above
+ * </pre>
+ * Every distinct category and name is stored once in the string table, and the rows are stored as
+ * three primitive columns. Reading memory maps the file, verifies the checksum and all ids before
+ * creating any ingredient, and shares one String instance per distinct value.
+ */
+public class IngredientSnapshot {
+
+  public static final int MAGIC = 0x53554253; // "SUBS"
+  public static final int VERSION = 1;
+
+  /**
+   * Writes a snapshot of the given ingredients. The snapshot is written to a temporary file first
+   * and then moved into place, so an existing snapshot is never left half written.
+   *
+   * @param ingredients the ingredients, in the order they should be restored
+   * @param rows        the number of ingredients
+   * @param path        the snapshot file to write
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(Iterable<Ingredient> ingredients, int rows, Path path)
+      throws IOException {
+    // Build the string table and the three columns.
+    HashMap<String, Integer> stringIds = new HashMap<>();
+    ArrayList<String> strings = new ArrayList<>();
+    int[] categoryIds = new int[rows];
+    int[] nameIds = new int[rows];
+    int[] calories = new int[rows];
+    int row = 0;
+    for (Ingredient ingredient : ingredients) {
+      if (row == rows) {
+        throw new IllegalArgumentException("more than " + rows + " ingredients");
+      }
+      categoryIds[row] = stringId(ingredient.getCategory(), stringIds, strings);
+      nameIds[row] = stringId(ingredient.getName(), stringIds, strings);
+      calories[row] = ingredient.getCalories();
+      row++;
+    }
+    if (row != rows) {
+      throw new IllegalArgumentException("expected " + rows + " ingredients but found " + row);
+    }
+
+    Path directory = path.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      CRC32 checksum = new CRC32();
+      try (OutputStream file = Files.newOutputStream(temporary);
+          DataOutputStream out = new DataOutputStream(
+              new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), checksum))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.size());
+        for (String string : strings) {
+          byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+        out.writeInt(rows);
+        writeInts(out, categoryIds);
+        writeInts(out, nameIds);
+        writeInts(out, calories);
+        out.flush();
+        // The checksum itself is not part of the checked data.
+        new DataOutputStream(file).writeLong(checksum.getValue());
+      }
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Reads the ingredients stored in a snapshot, in the order they were written.
+   *
+   * @param path the snapshot file to read
+   * @return the ingredients
+   * @throws FileNotFoundException if the file does not exist
+   * @throws IOException           if the file cannot be read, is not a snapshot, has an
+   *                               unsupported version or fails validation
+   */
+  public static ArrayList<Ingredient> read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < 20 || size > Integer.MAX_VALUE) {
+        throw new IOException("not a snapshot: " + path);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException("not a snapshot: " + path);
+      }
+      if (buffer.getInt(4) != VERSION) {
+        throw new IOException("unsupported snapshot version " + buffer.getInt(4));
+      }
+
+      CRC32 checksum = new CRC32();
+      checksum.update(buffer.slice(0, (int) size - 8));
+      if (checksum.getValue() != buffer.getLong((int) size - 8)) {
+        throw new IOException("snapshot checksum mismatch: " + path);
+      }
+      buffer.limit((int) size - 8);
+      buffer.position(8);
+
+      try {
+        String[] strings = new String[count(buffer, 4)];
+        for (int i = 0; i < strings.length; i++) {
+          byte[] bytes = new byte[count(buffer, 1)];
+          buffer.get(bytes);
+          strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int rows = count(buffer, 12);
+        int[] categoryIds = readIds(buffer, rows, strings.length);
+        int[] nameIds = readIds(buffer, rows, strings.length);
+        ArrayList<Ingredient> ingredients = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+          ingredients.add(new Ingredient(strings[categoryIds[row]], strings[nameIds[row]],
+              buffer.getInt()));
+        }
+        if (buffer.hasRemaining()) {
+          throw new IOException("snapshot has trailing data: " + path);
+        }
+        return ingredients;
+      } catch (BufferUnderflowException e) {
+        throw new IOException("snapshot is truncated: " + path);
+      }
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException(path.toString());
+    }
+  }
+
+  /**
+   * Returns the id of a string in the string table, adding it if it is new.
+   */
+  private static int stringId(String string, HashMap<String, Integer> stringIds,
+      ArrayList<String> strings) {
+    Integer id = stringIds.get(string);
+    if (id == null) {
+      id = strings.size();
+      stringIds.put(string, id);
+      strings.add(string);
+    }
+    return id;
+  }
+
+  /**
+   * Writes an int column through a byte buffer rather than one writeInt call per value.
+   */
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    ByteBuffer block = ByteBuffer.allocate(1 << 16);
+    for (int value : values) {
+      if (!block.hasRemaining()) {
+        out.write(block.array(), 0, block.position());
+        block.clear();
+      }
+      block.putInt(value);
+    }
+    out.write(block.array(), 0, block.position());
+  }
+
+  /**
+   * Reads a count and checks that the remaining data can hold that many items of the given size.
+   */
+  private static int count(ByteBuffer buffer, int itemSize) throws IOException {
+    int count = buffer.getInt();
+    if (count < 0 || (long) count * itemSize > buffer.remaining()) {
+      throw new IOException("snapshot has an invalid count " + count);
+    }
+    return count;
+  }
+
+  /**
+   * Reads a column of string ids and checks that every id is in the string table.
+   */
+  private static int[] readIds(ByteBuffer buffer, int rows, int strings) throws IOException {
+    int[] ids = new int[rows];
+    buffer.asIntBuffer().get(ids);
+    buffer.position(buffer.position() + rows * 4);
+    for (int id : ids) {
+      if (id < 0 || id >= strings) {
+        throw new IOException("snapshot has an invalid string id " + id);
+      }
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,772 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A red-black tree that maps int keys to values and may hold the same key several times, like an
+ * IterableMultiKeyRBT whose keys are ints. Each node stores one distinct key as a primitive int
+ * together with the values of that key, inline for the first value and in an array for the rest,
+ * and direct links to its parent and children. A search therefore compares ints without boxing or
+ * calls to compareTo, and a key with a single value costs a single object. Values with equal keys
+ * are kept in the order they were inserted. Every node also counts the values of its subtree,
+ * which answers rank, select and range count queries in O(log n).
+ *
+ * @param <V> the type of the values
+ */
+public class IntRedBlackTree<V> implements SortedIntMultimapInterface<V> {
+
+  /**
+   * A node of the tree, holding all values of one key.
+   */
+  protected static class IntNode<V> {
+    public int key;
+    public V first; // the first value of the key
+    public Object[] rest; // the other values in insertion order, null until there are any
+    public int count; // number of values of the key
+    public IntNode<V> up;
+    public IntNode<V> left;
+    public IntNode<V> right;
+    public boolean red;
+    public int size; // number of values in the subtree rooted here
+
+    public IntNode(int key, V value) {
+      this.key = key;
+      this.first = value;
+      this.count = 1;
+      this.size = 1;
+    }
+
+    /**
+     * @param index the position of a value among the values of this node
+     * @return the value at that position
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int index) {
+      return index == 0 ? first : (V) rest[index - 1];
+    }
+
+    /**
+     * Appends a value to the values of this node. The size is not changed.
+     *
+     * @param value the value
+     */
+    public void add(V value) {
+      if (rest == null) {
+        rest = new Object[2];
+      } else if (count - 1 == rest.length) {
+        rest = Arrays.copyOf(rest, rest.length * 2);
+      }
+      rest[count - 1] = value;
+      count++;
+    }
+
+    /**
+     * Removes the value at a position from the values of this node. The size is not changed.
+     *
+     * @param index the position of the value
+     */
+    @SuppressWarnings("unchecked")
+    public void remove(int index) {
+      if (index == 0) {
+        first = count > 1 ? (V) rest[0] : null;
+        index = 1;
+      }
+      if (count > 1) {
+        System.arraycopy(rest, index, rest, index - 1, count - 1 - index);
+        rest[count - 2] = null;
+      }
+      count--;
+    }
+  }
+
+  protected IntNode<V> root;
+  protected int keyCount = 0; // number of nodes
+
+  /**
+   * @return the number of values in the tree
+   */
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * @return the number of distinct keys in the tree
+   */
+  public int keyCount() {
+    return keyCount;
+  }
+
+  /**
+   * @return true if the tree has no values
+   */
+  @Override
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Removes all values.
+   */
+  @Override
+  public void clear() {
+    root = null;
+    keyCount = 0;
+  }
+
+  /**
+   * Adds a value to a key. It is placed after all values the key already has.
+   *
+   * @param key   the key
+   * @param value the value, which may be null
+   */
+  @Override
+  public void insert(int key, V value) {
+    if (root == null) {
+      root = new IntNode<>(key, value);
+      keyCount = 1;
+      return;
+    }
+    // Every node on the path gains one value, whether or not the key is new.
+    IntNode<V> parent = root;
+    while (true) {
+      parent.size++;
+      if (key == parent.key) {
+        parent.add(value);
+        return;
+      }
+      IntNode<V> next = key < parent.key ? parent.left : parent.right;
+      if (next == null) {
+        break;
+      }
+      parent = next;
+    }
+    IntNode<V> node = new IntNode<>(key, value);
+    keyCount++;
+    node.red = true;
+    node.up = parent;
+    if (key < parent.key) {
+      parent.left = node;
+    } else {
+      parent.right = node;
+    }
+    enforceRBTreePropertiesAfterInsert(node);
+  }
+
+  /**
+   * Adds many entries at once. When the tree is empty it is built directly from the values in
+   * O(n) time without rotations; otherwise the values are inserted one by one.
+   *
+   * @param sortedValues the values, ordered by key; values with equal keys are kept in this order
+   * @param keyOf        gives the key of each value
+   * @throws IllegalArgumentException if the values are not ordered by key
+   */
+  @Override
+  public void insertSorted(List<V> sortedValues, ToIntFunction<V> keyOf) {
+    int[] keys = new int[sortedValues.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = keyOf.applyAsInt(sortedValues.get(i));
+      if (i > 0 && keys[i - 1] > keys[i]) {
+        throw new IllegalArgumentException("values must be ordered by key");
+      }
+    }
+    if (root != null) {
+      for (int i = 0; i < keys.length; i++) {
+        insert(keys[i], sortedValues.get(i));
+      }
+      return;
+    }
+    // Group the values by key into nodes, then build the tree over the distinct keys.
+    ArrayList<IntNode<V>> nodes = new ArrayList<>();
+    for (int i = 0; i < keys.length; i++) {
+      if (i > 0 && keys[i] == keys[i - 1]) {
+        nodes.get(nodes.size() - 1).add(sortedValues.get(i));
+      } else {
+        nodes.add(new IntNode<>(keys[i], sortedValues.get(i)));
+      }
+    }
+    root = buildSubtree(nodes, 0, nodes.size() - 1, 0, redLevel(nodes.size()));
+    keyCount = nodes.size();
+  }
+
+  /**
+   * Links the nodes in the index range [low, high] into a subtree, coloring them the same way as
+   * RedBlackTree.buildFromSorted.
+   *
+   * @param nodes    the nodes in key order
+   * @param low      index of the first node of the subtree
+   * @param high     index of the last node of the subtree
+   * @param depth    depth of the subtree's root
+   * @param redLevel depth at which nodes are colored red
+   * @return the root of the subtree, or null if the range is empty
+   */
+  private IntNode<V> buildSubtree(List<IntNode<V>> nodes, int low, int high, int depth,
+      int redLevel) {
+    if (low > high) {
+      return null;
+    }
+    int middle = (low + high) >>> 1;
+    IntNode<V> node = nodes.get(middle);
+    node.red = depth == redLevel;
+    node.left = buildSubtree(nodes, low, middle - 1, depth + 1, redLevel);
+    node.right = buildSubtree(nodes, middle + 1, high, depth + 1, redLevel);
+    if (node.left != null) {
+      node.left.up = node;
+    }
+    if (node.right != null) {
+      node.right.up = node;
+    }
+    node.size = size(node.left) + size(node.right) + node.count;
+    return node;
+  }
+
+  /**
+   * Finds the depth of the deepest level of a tree of the given size built by buildSubtree. When
+   * that level is full every node can be black, so -1 is returned.
+   *
+   * @param size the number of nodes
+   * @return the depth whose nodes must be red
+   */
+  private static int redLevel(int size) {
+    int depth = -1;
+    for (int remaining = size; remaining > 0; remaining /= 2) {
+      depth++;
+    }
+    return size == (2 << depth) - 1 ? -1 : depth;
+  }
+
+  /**
+   * Removes a value from a key. When the key has no values left, its node is removed.
+   *
+   * @param key   the key
+   * @param value the value, compared by identity; the first occurrence is removed
+   * @return true if the value was removed, false if the key does not have this value
+   */
+  @Override
+  public boolean remove(int key, V value) {
+    IntNode<V> node = root;
+    while (node != null && node.key != key) {
+      node = key < node.key ? node.left : node.right;
+    }
+    if (node == null) {
+      return false;
+    }
+    for (int i = 0; i < node.count; i++) {
+      if (node.get(i) == value) {
+        node.remove(i);
+        for (IntNode<V> ancestor = node; ancestor != null; ancestor = ancestor.up) {
+          ancestor.size--;
+        }
+        if (node.count == 0) {
+          removeNode(node);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts the values whose key is within a range.
+   *
+   * @param low  the smallest key to count
+   * @param high the largest key to count
+   * @return the number of values with low <= key <= high
+   */
+  @Override
+  public int countInRange(int low, int high) {
+    if (low > high) {
+      return 0;
+    }
+    return countBelow(high, true) - countBelow(low, false);
+  }
+
+  /**
+   * @param key a key
+   * @return the number of values with a smaller key
+   */
+  public int rank(int key) {
+    return countBelow(key, false);
+  }
+
+  /**
+   * Returns the key of the value at a position in key order.
+   *
+   * @param index the position, starting at 0
+   * @return the key at that position
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  @Override
+  public int keyAt(int index) {
+    return select(index).key;
+  }
+
+  /**
+   * Returns the value at a position in key order.
+   *
+   * @param index the position, starting at 0
+   * @return the value at that position
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  public V valueAt(int index) {
+    IntNode<V> node = select(index);
+    return node.get(index - countBelow(node.key, false));
+  }
+
+  /**
+   * @return an iterator over all values in key order
+   */
+  @Override
+  public Iterator<V> iterator() {
+    return range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns an iterator over the values whose key is within a range, in key order. The iterator
+   * keeps its own position, so several can be used at the same time. It must not be used after
+   * the tree has been changed.
+   *
+   * @param low  the smallest key to include
+   * @param high the largest key to include
+   * @return an iterator over the values with low <= key <= high
+   */
+  @Override
+  public Iterator<V> range(int low, int high) {
+    IntNode<V> start = low > high ? null : ceilingNode(low);
+    return new Iterator<V>() {
+      private IntNode<V> next = start != null && start.key <= high ? start : null;
+      private int index = 0; // position of the next value within next
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public V next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        V value = next.get(index++);
+        if (index == next.count) {
+          index = 0;
+          next = successor(next);
+          if (next != null && next.key > high) {
+            next = null;
+          }
+        }
+        return value;
+      }
+    };
+  }
+
+  /**
+   * @param node a node or null
+   * @return the number of values in the node's subtree
+   */
+  private static int size(IntNode<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * @param node a node or null
+   * @return true if the node is red; null children count as black
+   */
+  private static boolean isRed(IntNode<?> node) {
+    return node != null && node.red;
+  }
+
+  /**
+   * Counts the values with a key below, or up to, the given key.
+   *
+   * @param key       the key
+   * @param inclusive whether values of this key are counted
+   * @return the number of values
+   */
+  private int countBelow(int key, boolean inclusive) {
+    int count = 0;
+    IntNode<V> node = root;
+    while (node != null) {
+      if (node.key < key || (inclusive && node.key == key)) {
+        count += size(node.left) + node.count;
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param index a position in key order
+   * @return the node holding the value at this position
+   */
+  private IntNode<V> select(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("index " + index + " for size " + size());
+    }
+    IntNode<V> node = root;
+    while (true) {
+      int leftSize = size(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else if (index < leftSize + node.count) {
+        return node;
+      } else {
+        index -= leftSize + node.count;
+        node = node.right;
+      }
+    }
+  }
+
+  /**
+   * @param key a key
+   * @return the first node in key order whose key is at least key, null if there is none
+   */
+  private IntNode<V> ceilingNode(int key) {
+    IntNode<V> ceiling = null;
+    IntNode<V> node = root;
+    while (node != null) {
+      if (node.key >= key) {
+        ceiling = node;
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+    return ceiling;
+  }
+
+  /**
+   * @param node a node
+   * @return the next node in key order, null if node is the last one
+   */
+  private static <V> IntNode<V> successor(IntNode<V> node) {
+    if (node.right != null) {
+      node = node.right;
+      while (node.left != null) {
+        node = node.left;
+      }
+      return node;
+    }
+    while (node.up != null && node == node.up.right) {
+      node = node.up;
+    }
+    return node.up;
+  }
+
+  /**
+   * Moves a node's right child into its place.
+   *
+   * @param node the node to rotate down
+   */
+  private void rotateLeft(IntNode<V> node) {
+    IntNode<V> child = node.right;
+    node.right = child.left;
+    if (child.left != null) {
+      child.left.up = node;
+    }
+    replaceChild(node, child);
+    child.left = node;
+    node.up = child;
+    child.size = node.size;
+    node.size = size(node.left) + size(node.right) + node.count;
+  }
+
+  /**
+   * Moves a node's left child into its place.
+   *
+   * @param node the node to rotate down
+   */
+  private void rotateRight(IntNode<V> node) {
+    IntNode<V> child = node.left;
+    node.left = child.right;
+    if (child.right != null) {
+      child.right.up = node;
+    }
+    replaceChild(node, child);
+    child.right = node;
+    node.up = child;
+    child.size = node.size;
+    node.size = size(node.left) + size(node.right) + node.count;
+  }
+
+  /**
+   * Links a node, or null, into the place of another node under that node's parent.
+   *
+   * @param node        the node whose place is taken
+   * @param replacement the node that takes it
+   */
+  private void replaceChild(IntNode<V> node, IntNode<V> replacement) {
+    IntNode<V> parent = node.up;
+    if (parent == null) {
+      root = replacement;
+    } else if (parent.left == node) {
+      parent.left = replacement;
+    } else {
+      parent.right = replacement;
+    }
+    if (replacement != null) {
+      replacement.up = parent;
+    }
+  }
+
+  /**
+   * Restores the red-black properties after a red node has been added.
+   *
+   * @param node the new node
+   */
+  private void enforceRBTreePropertiesAfterInsert(IntNode<V> node) {
+    while (node != root && node.up.red) {
+      IntNode<V> parent = node.up;
+      IntNode<V> grandParent = parent.up; // exists because the root is black
+      boolean parentIsLeft = parent == grandParent.left;
+      IntNode<V> aunt = parentIsLeft ? grandParent.right : grandParent.left;
+      if (isRed(aunt)) {
+        parent.red = false;
+        aunt.red = false;
+        grandParent.red = true;
+        node = grandParent;
+        continue;
+      }
+      if (parentIsLeft && node == parent.right) {
+        rotateLeft(parent);
+        parent = node;
+      } else if (!parentIsLeft && node == parent.left) {
+        rotateRight(parent);
+        parent = node;
+      }
+      parent.red = false;
+      grandParent.red = true;
+      if (parentIsLeft) {
+        rotateRight(grandParent);
+      } else {
+        rotateLeft(grandParent);
+      }
+      break;
+    }
+    root.red = false;
+  }
+
+  /**
+   * Removes a node that has no values left. A node with two children takes the key and values of
+   * its successor, and the successor's node is removed instead.
+   *
+   * @param node the node to remove
+   */
+  private void removeNode(IntNode<V> node) {
+    if (node.left != null && node.right != null) {
+      IntNode<V> next = successor(node);
+      // The values move up to node, so the nodes between them no longer count them.
+      for (IntNode<V> between = next.up; between != node; between = between.up) {
+        between.size -= next.count;
+      }
+      node.key = next.key;
+      node.first = next.first;
+      node.rest = next.rest;
+      node.count = next.count;
+      node = next;
+    }
+    IntNode<V> child = node.left != null ? node.left : node.right;
+    IntNode<V> parent = node.up;
+    replaceChild(node, child);
+    keyCount--;
+    if (!node.red) {
+      enforceRBTreePropertiesAfterRemove(child, parent);
+    }
+  }
+
+  /**
+   * Restores the red-black properties after a black node has been removed. The path through
+   * node has one black node too few.
+   *
+   * @param node   the node that took the removed node's place, which may be null
+   * @param parent the parent of node
+   */
+  private void enforceRBTreePropertiesAfterRemove(IntNode<V> node, IntNode<V> parent) {
+    while (node != root && !isRed(node)) {
+      boolean isLeft = node == parent.left;
+      IntNode<V> sibling = isLeft ? parent.right : parent.left;
+      if (sibling.red) {
+        sibling.red = false;
+        parent.red = true;
+        if (isLeft) {
+          rotateLeft(parent);
+        } else {
+          rotateRight(parent);
+        }
+        sibling = isLeft ? parent.right : parent.left;
+      }
+      if (!isRed(sibling.left) && !isRed(sibling.right)) {
+        sibling.red = true;
+        node = parent;
+        parent = node.up;
+        continue;
+      }
+      if (isLeft && !isRed(sibling.right)) {
+        sibling.left.red = false;
+        sibling.red = true;
+        rotateRight(sibling);
+        sibling = parent.right;
+      } else if (!isLeft && !isRed(sibling.left)) {
+        sibling.right.red = false;
+        sibling.red = true;
+        rotateLeft(sibling);
+        sibling = parent.left;
+      }
+      sibling.red = parent.red;
+      parent.red = false;
+      if (isLeft) {
+        sibling.right.red = false;
+        rotateLeft(parent);
+      } else {
+        sibling.left.red = false;
+        rotateRight(parent);
+      }
+      node = root;
+    }
+    if (node != null) {
+      node.red = false;
+    }
+  }
+
+  /**
+   * Checks that this tree is a valid red-black tree: keys are distinct and in order, every node
+   * has a value, parent and child links agree, the root is black, no red node has a red child,
+   * every path from the root to a null child has the same number of black nodes, and every size
+   * matches its subtree.
+   *
+   * @throws IllegalStateException describing the first violation found
+   */
+  public void validate() {
+    if (isRed(root)) {
+      throw new IllegalStateException("root is red");
+    }
+    if (root != null && root.up != null) {
+      throw new IllegalStateException("root has a parent");
+    }
+    validate(root, Long.MIN_VALUE, Long.MAX_VALUE);
+    int nodes = countNodes(root);
+    if (nodes != keyCount) {
+      throw new IllegalStateException("keyCount is " + keyCount + " but the tree has " + nodes
+          + " nodes");
+    }
+  }
+
+  /**
+   * @return the number of nodes in the subtree rooted at node
+   */
+  private int countNodes(IntNode<V> node) {
+    return node == null ? 0 : countNodes(node.left) + countNodes(node.right) + 1;
+  }
+
+  /**
+   * Checks a subtree whose keys must be within the open range (low, high).
+   *
+   * @return the number of black nodes on every path from node to a null child
+   */
+  private int validate(IntNode<V> node, long low, long high) {
+    if (node == null) {
+      return 1;
+    }
+    if (node.key <= low || node.key >= high) {
+      throw new IllegalStateException("key " + node.key + " out of order");
+    }
+    if (node.count < 1) {
+      throw new IllegalStateException("key " + node.key + " has no values");
+    }
+    if ((node.left != null && node.left.up != node)
+        || (node.right != null && node.right.up != node)) {
+      throw new IllegalStateException("parent link broken below key " + node.key);
+    }
+    if (node.red && (isRed(node.left) || isRed(node.right))) {
+      throw new IllegalStateException("red node with red child at key " + node.key);
+    }
+    if (node.size != size(node.left) + size(node.right) + node.count) {
+      throw new IllegalStateException("wrong size at key " + node.key);
+    }
+    int leftBlack = validate(node.left, low, node.key);
+    int rightBlack = validate(node.right, node.key, high);
+    if (leftBlack != rightBlack) {
+      throw new IllegalStateException("black heights differ at key " + node.key);
+    }
+    return leftBlack + (node.red ? 0 : 1);
+  }
+
+  /**
+   * Tests that inserting keys with many duplicates keeps the tree valid, keeps equal keys in
+   * insertion order, and answers rank, select and range counts.
+   */
+  @Test
+  public void testInsertAndQueries() {
+    IntRedBlackTree<String> tree = new IntRedBlackTree<>();
+    Random random = new Random(21);
+    int[] counts = new int[50];
+    for (int i = 0; i < 2000; i++) {
+      int key = random.nextInt(50);
+      tree.insert(key, key + ":" + counts[key]++);
+      if (i % 100 == 0) {
+        tree.validate();
+      }
+    }
+    tree.validate();
+    Assertions.assertEquals(2000, tree.size());
+    Assertions.assertEquals(50, tree.keyCount());
+
+    int index = 0;
+    for (int key = 0; key < 50; key++) {
+      Assertions.assertEquals(index, tree.rank(key));
+      Iterator<String> values = tree.range(key, key);
+      for (int i = 0; i < counts[key]; i++) {
+        Assertions.assertEquals(key + ":" + i, values.next());
+        Assertions.assertEquals(key, tree.keyAt(index));
+        index++;
+      }
+      Assertions.assertFalse(values.hasNext());
+    }
+    Assertions.assertEquals(counts[10] + counts[11] + counts[12], tree.countInRange(10, 12));
+    Assertions.assertEquals(0, tree.countInRange(12, 10));
+    Assertions.assertEquals(2000, tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.keyAt(2000));
+  }
+
+  /**
+   * Tests that removing entries in random order keeps the tree valid and removes exactly the
+   * requested value, and that a bulk build matches single inserts.
+   */
+  @Test
+  public void testRemoveAndBulkBuild() {
+    Random random = new Random(22);
+    ArrayList<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      values.add(random.nextInt(100));
+    }
+    values.sort(null);
+    IntRedBlackTree<Integer> tree = new IntRedBlackTree<>();
+    tree.insertSorted(values, Integer::intValue);
+    tree.validate();
+    Assertions.assertEquals(1000, tree.size());
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new IntRedBlackTree<Integer>().insertSorted(List.of(2, 1), Integer::intValue));
+
+    Collections.shuffle(values, random);
+    Assertions.assertFalse(tree.remove(500, values.get(0)));
+    for (int i = 0; i < values.size(); i++) {
+      Integer value = values.get(i);
+      Assertions.assertTrue(tree.remove(value, value));
+      if (i % 50 == 0) {
+        tree.validate();
+      }
+    }
+    tree.validate();
+    Assertions.assertTrue(tree.isEmpty());
+    Assertions.assertFalse(tree.iterator().hasNext());
+  }
+}
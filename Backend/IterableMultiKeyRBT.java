@@ -13,6 +13,11 @@ import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An extension of a RedBlackTree that allows multiple keys per node. Each node stores a list of
@@ -27,6 +32,36 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
   private T startPoint;
   // Count of total keys in the tree
   private int numKeys;
+  // Creates the list that holds the keys of a new node, ArrayKeyList::new unless set by
+  // withKeyLists
+  private Function<T, KeyListInterface<T>> keyListFactory = ArrayKeyList::new;
+
+  /**
+   * Creates an empty tree that stores the keys of each node in an ArrayKeyList. This is the only
+   * constructor, so JUnit can create the class to run the tests below; use withKeyLists for other
+   * lists.
+   */
+  public IterableMultiKeyRBT() {
+  }
+
+  /**
+   * Creates an empty tree that stores the keys of each node in lists made by the given factory,
+   * for example KeyList::new for LinkedList backed nodes.
+   *
+   * @param keyListFactory creates a list holding the first key of a new node
+   * @param <T>            the type of the keys
+   * @return the new tree
+   * @throws NullPointerException if keyListFactory is null
+   */
+  public static <T extends Comparable<T>> IterableMultiKeyRBT<T> withKeyLists(
+      Function<T, KeyListInterface<T>> keyListFactory) {
+    if (keyListFactory == null) {
+      throw new NullPointerException("keyListFactory cannot be null");
+    }
+    IterableMultiKeyRBT<T> tree = new IterableMultiKeyRBT<>();
+    tree.keyListFactory = keyListFactory;
+    return tree;
+  }
 
   /**
    * Inserts a value into the tree that can store multiple objects per key by keeping lists of
@@ -43,22 +78,109 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
       throw new IllegalArgumentException("Key cannot be null.");
     }
 
-    KeyListInterface<T> list = new KeyList<T>(key);
-    Node<KeyListInterface<T>> node = findNode(list);
+    // Search with the key itself, so no list is created when the node already exists.
+    Node<KeyListInterface<T>> node = findNode(list -> key.compareTo(list.firstKey()));
 
     // If the node already exists, add the key to its list.
     if (node != null) {
       node.data.addKey(key);
+      addWeight(node, 1);
       numKeys++;
       return false;
     } else {
       // Otherwise, insert a new node for the key.
-      this.insert(list);
+      this.insert(keyListFactory.apply(key));
       numKeys++;
       return true;
     }
   }
 
+  /**
+   * Removes one key from the tree. The node holding keys that compare equal to key is found in
+   * O(log n), and the first key in its list that is equal to key is removed. When that was the
+   * last key of the node, the node itself is removed from the tree.
+   *
+   * @param key object to remove
+   * @return true if a key was removed, false if the tree does not contain key
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  @Override
+  public boolean removeKey(T key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key cannot be null.");
+    }
+    Node<KeyListInterface<T>> node = findNode(list -> key.compareTo(list.firstKey()));
+    if (node == null || !node.data.removeKey(key)) {
+      return false;
+    }
+    numKeys--;
+    if (node.data.size() == 0) {
+      removeNode(node);
+    } else {
+      addWeight(node, -1);
+    }
+    return true;
+  }
+
+  /**
+   * Inserts many keys that are already sorted. Runs of keys that compare equal are gathered into a
+   * single KeyList first. When the tree is empty, the tree is then built from the lists in O(n)
+   * with buildFromSorted; otherwise each distinct key costs one search and at most one insertion.
+   * Either way the result is the same as calling insertSingleKey on each key in order.
+   *
+   * @param sortedKeys keys in non-decreasing order
+   * @throws IllegalArgumentException if a key is null or the keys are not sorted
+   */
+  @Override
+  public void insertSortedKeys(List<T> sortedKeys) {
+    List<KeyListInterface<T>> lists = groupSortedKeys(sortedKeys);
+    if (isEmpty()) {
+      buildFromSorted(lists);
+    } else {
+      for (KeyListInterface<T> list : lists) {
+        Node<KeyListInterface<T>> node = findNode(list);
+        if (node == null) {
+          this.insert(list);
+        } else {
+          for (T key : list) {
+            node.data.addKey(key);
+          }
+          addWeight(node, list.size());
+        }
+      }
+    }
+    numKeys += sortedKeys.size();
+  }
+
+  /**
+   * Gathers runs of equal keys from a sorted list into KeyLists.
+   *
+   * @param sortedKeys keys in non-decreasing order
+   * @return one list per distinct key, in increasing order
+   * @throws IllegalArgumentException if a key is null or the keys are not sorted
+   */
+  private List<KeyListInterface<T>> groupSortedKeys(List<T> sortedKeys) {
+    List<KeyListInterface<T>> lists = new ArrayList<>();
+    KeyListInterface<T> current = null;
+    T first = null;
+    for (T key : sortedKeys) {
+      if (key == null) {
+        throw new IllegalArgumentException("Key cannot be null.");
+      }
+      int compare = first == null ? -1 : first.compareTo(key);
+      if (compare > 0) {
+        throw new IllegalArgumentException("Keys must be sorted.");
+      } else if (compare == 0) {
+        current.addKey(key);
+      } else {
+        first = key;
+        current = keyListFactory.apply(key);
+        lists.add(current);
+      }
+    }
+    return lists;
+  }
+
   /**
    * @return the number of values in the tree.
    */
@@ -67,38 +189,242 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
     return this.numKeys;
   }
 
+  /**
+   * Weighs each node by the number of keys in its list, so that the subtreeWeight of a node is the
+   * number of keys in its subtree.
+   *
+   * @param list the keys of a node
+   * @return the number of keys in the list
+   */
+  @Override
+  protected int weightOf(KeyListInterface<T> list) {
+    return list.size();
+  }
+
+  /**
+   * Returns the number of keys in the tree that are less than the given key, or equal to it when
+   * inclusive is set. Runs in O(log n) using the subtree weights.
+   *
+   * @param key       the key to compare with
+   * @param inclusive whether keys equal to key are counted
+   * @return the number of keys before key
+   */
+  private int countBefore(Comparable<T> key, boolean inclusive) {
+    int count = 0;
+    Node<KeyListInterface<T>> curr = root;
+    while (curr != null) {
+      int compare = key.compareTo(curr.data.firstKey());
+      if (compare < 0 || (compare == 0 && !inclusive)) {
+        curr = curr.down[0];
+      } else {
+        // every key of the left subtree and of this node comes before key
+        count += subtreeWeight(curr.down[0]) + curr.data.size();
+        curr = curr.down[1];
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the rank of a key: the number of keys in the tree that are less than it. This is also
+   * the index that select returns the first key equal to it for. Runs in O(log n).
+   *
+   * @param key the key to rank
+   * @return the number of keys less than key
+   * @throws NullPointerException if key is null
+   */
+  public int rank(Comparable<T> key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null.");
+    }
+    return countBefore(key, false);
+  }
+
+  /**
+   * Returns the key at an index of the in-order sequence of keys, so select(0) is the smallest key
+   * and select(numKeys() / 2) is a median. Finding the node takes O(log n); equal keys within the
+   * node are then counted off in insertion order.
+   *
+   * @param index the index of the key, from 0 to numKeys() - 1
+   * @return the key at that index
+   * @throws IndexOutOfBoundsException if index is negative or not less than numKeys()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= numKeys) {
+      throw new IndexOutOfBoundsException("index " + index + " for " + numKeys + " keys");
+    }
+    Node<KeyListInterface<T>> curr = root;
+    while (true) {
+      int leftWeight = subtreeWeight(curr.down[0]);
+      if (index < leftWeight) {
+        curr = curr.down[0];
+      } else if (index < leftWeight + curr.data.size()) {
+        Iterator<T> keys = curr.data.iterator();
+        for (int skip = index - leftWeight; skip > 0; skip--) {
+          keys.next();
+        }
+        return keys.next();
+      } else {
+        index -= leftWeight + curr.data.size();
+        curr = curr.down[1];
+      }
+    }
+  }
+
+  /**
+   * Counts the keys between two bounds, both inclusive, in O(log n).
+   *
+   * @param low  the smallest key to count
+   * @param high the largest key to count
+   * @return the number of keys k with low <= k <= high, or 0 if low is after high
+   * @throws NullPointerException if low or high is null
+   */
+  public int countInRange(Comparable<T> low, Comparable<T> high) {
+    if (low == null || high == null) {
+      throw new NullPointerException("Bounds cannot be null.");
+    }
+    return Math.max(0, countBefore(high, true) - countBefore(low, false));
+  }
+
   /**
    * Returns a stack containing nodes for in-order traversal. The starting node is determined based
    * on whether a starting point has been set. If no starting point is set, the traversal begins
-   * from the leftmost node of the tree. Otherwise, it starts from the closest node to the specified
-   * startPoint.
+   * from the leftmost node of the tree. Otherwise, it starts from the first node whose keys are
+   * equal to or greater than the specified startPoint.
    *
    * @return Stack containing nodes for in-order traversal.
-   * @throws IllegalStateException If the tree is empty (i.e., the root is null).
    */
   protected Stack<Node<KeyListInterface<T>>> getStartStack() {
     Stack<Node<KeyListInterface<T>>> initialStack = new Stack<>();
-
-    if (startPoint == null) {
-      Node curr = root;
-      // Traverse to the leftmost node and push nodes onto the stack for in-order traversal
-      while (curr != null) {
+    Node<KeyListInterface<T>> curr = root;
+    // Traverse to the first node at or after the set startPoint and push nodes onto the stack
+    while (curr != null) {
+      if (startPoint == null || startPoint.compareTo(curr.data.firstKey()) <= 0) {
         initialStack.push(curr);
         curr = curr.down[0];
+      } else {
+        curr = curr.down[1];
       }
-    } else {
-      Node<KeyListInterface<T>> curr = root;
-      // Traverse to the node closest to the set startPoint and push nodes onto the stack
-      while (curr != null) {
-        if (startPoint.compareTo(curr.data.iterator().next())< 0) {
-          initialStack.push(curr);
-          curr = curr.down[0];
-        } else {
-          curr = curr.down[1];
+    }
+    return initialStack;
+  }
+
+  /**
+   * Iterates over the keys of the tree in order, from a start node up to an optional upper bound.
+   * The cursor moves from node to node through the up and down references of the nodes, so it
+   * needs O(1) extra memory. Each cursor keeps its own position, so any number of cursors can be
+   * used on the same tree at once as long as the tree is not modified.
+   */
+  protected class MultiKeyRBTIterator implements Iterator<T> {
+    // The next node to visit, or null when the traversal is over
+    private Node<KeyListInterface<T>> nextNode;
+    // Upper bound of the traversal, or null if it runs to the last key
+    private final Comparable<T> to;
+    private final boolean toInclusive;
+    // Iterator for the current node's list. It will iterate over the keys in a node.
+    private Iterator<T> currListIterator = null;
+
+    /**
+     * Creates a cursor that starts at the keys of the given node.
+     *
+     * @param startNode   the first node to visit, or null for an empty traversal
+     * @param to          upper bound of the traversal, or null for no bound
+     * @param toInclusive whether keys equal to the upper bound are part of the traversal
+     */
+    protected MultiKeyRBTIterator(Node<KeyListInterface<T>> startNode, Comparable<T> to,
+        boolean toInclusive) {
+      this.nextNode = startNode;
+      this.to = to;
+      this.toInclusive = toInclusive;
+    }
+
+    /**
+     * Checks if there are more keys to be iterated over. Moves to the next node when the keys of
+     * the current node are used up, and ends the traversal once that node is past the upper bound.
+     *
+     * @return true if there are more keys, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+      if (currListIterator != null && currListIterator.hasNext()) {
+        return true;
+      }
+      if (nextNode == null) {
+        return false;
+      }
+      if (to != null) {
+        int compare = to.compareTo(nextNode.data.firstKey());
+        if (compare < 0 || (compare == 0 && !toInclusive)) {
+          nextNode = null;
+          return false;
         }
       }
+      currListIterator = nextNode.data.iterator();
+      nextNode = successor(nextNode);
+      return true;
+    }
+
+    /**
+     * Returns the next key in the in-order traversal.
+     *
+     * @return Next key in the traversal.
+     * @throws NoSuchElementException if there are no more keys to return.
+     */
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return currListIterator.next();
+    }
+  }
+
+  /**
+   * The previous iterator, which keeps the nodes still to be visited on a java.util.Stack. Kept as
+   * a reference point for benchmarks of MultiKeyRBTIterator.
+   */
+  protected class StackIterator implements Iterator<T> {
+    // Stack to assist with in-order traversal. Initialized with the starting nodes for traversal.
+    private final Stack<Node<KeyListInterface<T>>> iteratingStack = getStartStack();
+    // Iterator for the current node's list. It will iterate over the keys in a node.
+    private Iterator<T> currListIterator = null;
+
+    /**
+     * Checks if there are more keys to be iterated over.
+     *
+     * @return true if there are more keys, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+      return !iteratingStack.isEmpty() || (currListIterator != null && currListIterator.hasNext());
+    }
+
+    /**
+     * Returns the next key in the in-order traversal.
+     *
+     * @return Next key in the traversal.
+     * @throws NoSuchElementException if there are no more keys to return.
+     */
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      // If there are no more keys in the current list or it's the first call to next
+      while (currListIterator == null || !currListIterator.hasNext()) {
+        Node<KeyListInterface<T>> currNode = iteratingStack.pop();
+        currListIterator = currNode.data.iterator();
+
+        // If the current node has a right child, push its leftmost path to the stack for in-order traversal
+        Node<KeyListInterface<T>> temp = currNode.down[1];
+        while (temp != null) {
+          iteratingStack.push(temp);
+          temp = temp.down[0];
+        }
+      }
+      return currListIterator.next();
     }
-    return initialStack;
   }
 
   /**
@@ -110,50 +436,176 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
    */
   @Override
   public Iterator<T> iterator() {
-    class MultiKeyRBTIterator implements Iterator<T> {
-      // Stack to assist with in-order traversal. Initialized with the starting nodes for traversal.
-      Stack<Node<KeyListInterface<T>>> iteratingStack = getStartStack();
-      // Iterator for the current node's list. It will iterate over the keys in a node.
-      Iterator<T> currListIterator = null;
-
-      /**
-       * Checks if there are more keys to be iterated over.
-       *
-       * @return true if there are more keys, false otherwise.
-       */
-      @Override
-      public boolean hasNext() {
-        return !iteratingStack.isEmpty() || (currListIterator != null && currListIterator.hasNext());
+    return range(startPoint, true, null, false);
+  }
+
+  /**
+   * Returns the Stack based iterator that iterator() used before it followed parent references.
+   * It visits the same keys in the same order as iterator().
+   *
+   * @return Iterator for in-order traversal.
+   */
+  protected Iterator<T> stackIterator() {
+    return new StackIterator();
+  }
+
+  /**
+   * Returns an iterator over the keys that are equal to or greater than from. Unlike
+   * setIterationStartPoint, this does not change the state of the tree.
+   *
+   * @param from lower bound of the iteration, or null to start from the first key
+   * @return Iterator for in-order traversal from the lower bound.
+   */
+  public Iterator<T> iterator(Comparable<T> from) {
+    return range(from, true, null, false);
+  }
+
+  /**
+   * Returns an iterator over the keys between two bounds. The iterator has its own position and
+   * does not change the state of the tree, so concurrent readers can each scan their own range.
+   *
+   * @param from          lower bound of the range, or null for no lower bound
+   * @param fromInclusive whether keys equal to from are included
+   * @param to            upper bound of the range, or null for no upper bound
+   * @param toInclusive   whether keys equal to to are included
+   * @return Iterator for in-order traversal of the keys in the range.
+   */
+  public Iterator<T> range(Comparable<T> from, boolean fromInclusive, Comparable<T> to,
+      boolean toInclusive) {
+    Node<KeyListInterface<T>> startNode = from == null ? ceilingNode(null, true)
+        : ceilingNode(list -> from.compareTo(list.firstKey()), fromInclusive);
+    return new MultiKeyRBTIterator(startNode, to, toInclusive);
+  }
+
+  /**
+   * Splits the keys of the tree for parallel traversal. A spliterator covers the nodes from a
+   * first node up to (but not including) a fence node, and splits at subtree boundaries: the
+   * first split hands off everything before the root, and later splits hand off the part before
+   * the right child of the next node or before the left child of the fence. This is the same
+   * scheme java.util.TreeMap uses, so the halves are close to even in a balanced tree.
+   */
+  protected class MultiKeyRBTSpliterator implements Spliterator<T> {
+    // The next node to visit, or null when the traversal is over
+    private Node<KeyListInterface<T>> current;
+    // The node after the last one to visit, or null to run to the end of the tree
+    private final Node<KeyListInterface<T>> fence;
+    // 0 for the spliterator over the whole tree, 1 after it was split, -1 for a split off prefix
+    private int side;
+    // Exact number of keys for the whole tree, an estimate after splitting
+    private long estimate;
+    // Remaining keys of the node being visited, or null between nodes
+    private Iterator<T> currListIterator;
+
+    protected MultiKeyRBTSpliterator(Node<KeyListInterface<T>> current,
+        Node<KeyListInterface<T>> fence, int side, long estimate, Iterator<T> currListIterator) {
+      this.current = current;
+      this.fence = fence;
+      this.side = side;
+      this.estimate = estimate;
+      this.currListIterator = currListIterator;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      Node<KeyListInterface<T>> first = current;
+      Node<KeyListInterface<T>> split = (first == null || first == fence) ? null
+          : side == 0 ? root
+          : side > 0 ? first.down[1]
+          : fence != null ? fence.down[0] : null;
+      if (split == null || split == first || split == fence
+          || first.data.compareTo(split.data) >= 0) {
+        return null;
       }
+      // The prefix also takes the rest of the node being visited, since those keys come first.
+      Spliterator<T> prefix = new MultiKeyRBTSpliterator(first, split, -1, estimate >>>= 1,
+          currListIterator);
+      side = 1;
+      current = split;
+      currListIterator = null;
+      return prefix;
+    }
 
-      /**
-       * Returns the next key in the in-order traversal.
-       *
-       * @return Next key in the traversal.
-       * @throws NoSuchElementException if there are no more keys to return.
-       */
-      @Override
-      public T next() {
-        if (!hasNext()) {
-          throw new NoSuchElementException();
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (action == null) {
+        throw new NullPointerException();
+      }
+      while (currListIterator == null || !currListIterator.hasNext()) {
+        if (current == null || current == fence) {
+          return false;
         }
+        currListIterator = current.data.iterator();
+        current = successor(current);
+      }
+      action.accept(currListIterator.next());
+      return true;
+    }
 
-        // If there are no more keys in the current list or it's the first call to next
-        while (currListIterator == null || !currListIterator.hasNext()) {
-          Node<KeyListInterface<T>> currNode = iteratingStack.pop();
-          currListIterator = currNode.data.iterator();
-
-          // If the current node has a right child, push its leftmost path to the stack for in-order traversal
-          Node<KeyListInterface<T>> temp = currNode.down[1];
-          while (temp != null) {
-            iteratingStack.push(temp);
-            temp = temp.down[0];
-          }
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      if (action == null) {
+        throw new NullPointerException();
+      }
+      if (currListIterator != null) {
+        currListIterator.forEachRemaining(action);
+        currListIterator = null;
+      }
+      for (; current != null && current != fence; current = successor(current)) {
+        for (T key : current.data) {
+          action.accept(key);
         }
-        return currListIterator.next();
       }
     }
-    return new MultiKeyRBTIterator();
+
+    @Override
+    public long estimateSize() {
+      return estimate;
+    }
+
+    /**
+     * @return ORDERED, SORTED and NONNULL, plus SIZED while the whole tree is covered
+     */
+    @Override
+    public int characteristics() {
+      return (side == 0 ? Spliterator.SIZED : 0)
+          | Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL;
+    }
+
+    /**
+     * @return null, since keys are sorted by their natural ordering
+     */
+    @Override
+    public Comparator<? super T> getComparator() {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a spliterator over all keys of the tree in order. It ignores the iteration start point
+   * and is SIZED until it is first split.
+   *
+   * @return Spliterator over the keys.
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    return new MultiKeyRBTSpliterator(ceilingNode(null, true), null, 0, numKeys, null);
+  }
+
+  /**
+   * @return a sequential stream of the keys of the tree in order
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Returns a parallel stream of the keys of the tree. The tree must not be modified while the
+   * stream runs.
+   *
+   * @return a parallel stream of the keys of the tree
+   */
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
   }
 
   /**
@@ -311,6 +763,235 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
     Assertions.assertFalse(iter.hasNext());
   }
 
+  /**
+   * Tests that a start point equal to a key in the tree includes that key in the iteration.
+   */
+  @Test
+  public void testIterationStartPointOnExistingKey() {
+    tree.insertSingleKey(10);
+    tree.insertSingleKey(5);
+    tree.insertSingleKey(20);
+    tree.insertSingleKey(10);
+
+    tree.setIterationStartPoint(10);
+    Iterator<Integer> iter = tree.iterator();
+    Assertions.assertEquals(10, iter.next());
+    Assertions.assertEquals(10, iter.next());
+    Assertions.assertEquals(20, iter.next());
+    Assertions.assertFalse(iter.hasNext());
+  }
+
+  /**
+   * Tests that inserting sorted keys into an empty tree builds a valid red-black tree with the
+   * duplicates grouped, and that sorted keys can be merged into a non-empty tree.
+   */
+  @Test
+  public void testInsertSortedKeys() {
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add(i / 3);
+    }
+    tree.insertSortedKeys(keys);
+    tree.validate();
+    Assertions.assertEquals(334, tree.size());
+    Assertions.assertEquals(1000, tree.numKeys());
+
+    tree.insertSortedKeys(List.of(-5, 10, 10, 2000));
+    tree.validate();
+    Assertions.assertEquals(336, tree.size());
+    Assertions.assertEquals(1004, tree.numKeys());
+
+    List<Integer> expected = new ArrayList<>(keys);
+    expected.addAll(List.of(-5, 10, 10, 2000));
+    Collections.sort(expected);
+    List<Integer> actual = new ArrayList<>();
+    tree.iterator().forEachRemaining(actual::add);
+    Assertions.assertEquals(expected, actual);
+
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> tree.insertSortedKeys(List.of(3, 2)));
+  }
+
+  /**
+   * Tests that range cursors honor inclusive and exclusive bounds, ignore the shared start point,
+   * and keep independent positions.
+   */
+  @Test
+  public void testRange() {
+    for (int i = 0; i < 20; i += 2) {
+      tree.insertSingleKey(i);
+      tree.insertSingleKey(i);
+    }
+    tree.setIterationStartPoint(15);
+
+    List<Integer> actual = new ArrayList<>();
+    tree.range(4, true, 8, true).forEachRemaining(actual::add);
+    Assertions.assertEquals(List.of(4, 4, 6, 6, 8, 8), actual);
+
+    actual.clear();
+    tree.range(4, false, 8, false).forEachRemaining(actual::add);
+    Assertions.assertEquals(List.of(6, 6), actual);
+
+    actual.clear();
+    tree.range(null, false, 3, true).forEachRemaining(actual::add);
+    Assertions.assertEquals(List.of(0, 0, 2, 2), actual);
+
+    actual.clear();
+    tree.iterator(17).forEachRemaining(actual::add);
+    Assertions.assertEquals(List.of(18, 18), actual);
+    Assertions.assertFalse(tree.range(9, true, 9, true).hasNext());
+
+    // Two cursors over the same tree do not affect each other.
+    Iterator<Integer> first = tree.iterator(null);
+    Iterator<Integer> second = tree.iterator(10);
+    Assertions.assertEquals(0, first.next());
+    Assertions.assertEquals(10, second.next());
+    Assertions.assertEquals(0, first.next());
+    Assertions.assertEquals(10, second.next());
+    Assertions.assertEquals(12, second.next());
+    Assertions.assertEquals(2, first.next());
+
+    // The start point set above still applies to iterator().
+    Assertions.assertEquals(16, tree.iterator().next());
+  }
+
+  /**
+   * Tests that the parent pointer iterator visits the same keys as the Stack based iterator after
+   * inserts in random order, with and without a start point.
+   */
+  @Test
+  public void testIteratorMatchesStackIterator() {
+    Random random = new Random(400);
+    for (int i = 0; i < 2000; i++) {
+      tree.insertSingleKey(random.nextInt(500));
+    }
+    for (Integer startPoint : new Integer[] {null, 0, 250, 499, 500}) {
+      tree.setIterationStartPoint(startPoint);
+      List<Integer> expected = new ArrayList<>();
+      tree.stackIterator().forEachRemaining(expected::add);
+      List<Integer> actual = new ArrayList<>();
+      tree.iterator().forEachRemaining(actual::add);
+      Assertions.assertEquals(expected, actual);
+    }
+  }
+
+  /**
+   * Tests that splitting the spliterator down to single nodes still covers every key once and in
+   * order, and that parallel streams see all keys.
+   */
+  @Test
+  public void testSpliterator() {
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      tree.insertSingleKey(i % 1000);
+      expected.add(i % 1000);
+    }
+    Collections.sort(expected);
+
+    Spliterator<Integer> whole = tree.spliterator();
+    Assertions.assertEquals(3000L, whole.getExactSizeIfKnown());
+    Assertions.assertTrue(whole.hasCharacteristics(Spliterator.ORDERED));
+    // Consume part of a node first, so the split has to hand off the rest of that node.
+    List<Integer> actual = new ArrayList<>();
+    whole.tryAdvance(actual::add);
+    splitAndCollect(whole, actual);
+    Assertions.assertEquals(expected, actual);
+
+    Assertions.assertEquals(expected, tree.parallelStream().collect(Collectors.toList()));
+    Assertions.assertEquals(expected.stream().mapToLong(Integer::longValue).sum(),
+        tree.parallelStream().mapToLong(Integer::longValue).sum());
+  }
+
+  /**
+   * Tests rank, select and countInRange against a sorted list, for trees built by single inserts
+   * with rotations and by a bulk build followed by merges.
+   */
+  @Test
+  public void testOrderStatistics() {
+    Random random = new Random(14);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      int key = random.nextInt(300);
+      tree.insertSingleKey(key);
+      expected.add(key);
+    }
+    IterableMultiKeyRBT<Integer> bulk = new IterableMultiKeyRBT<>();
+    List<Integer> sorted = new ArrayList<>(expected);
+    Collections.sort(sorted);
+    bulk.insertSortedKeys(sorted.subList(0, 1000));
+    bulk.insertSortedKeys(sorted.subList(1000, 2000));
+    Collections.sort(expected);
+
+    for (IterableMultiKeyRBT<Integer> t : List.of(tree, bulk)) {
+      t.validate();
+      for (int i = 0; i < expected.size(); i += 7) {
+        Assertions.assertEquals(expected.get(i), t.select(i));
+      }
+      for (int key = -1; key <= 301; key += 5) {
+        int less = 0;
+        int inRange = 0;
+        for (int value : expected) {
+          less += value < key ? 1 : 0;
+          inRange += value >= key && value <= key + 40 ? 1 : 0;
+        }
+        Assertions.assertEquals(less, t.rank(key));
+        Assertions.assertEquals(inRange, t.countInRange(key, key + 40));
+      }
+      Assertions.assertEquals(0, t.countInRange(200, 100));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> t.select(2000));
+    }
+  }
+
+  /**
+   * Tests that removing keys in random order keeps the tree valid and leaves exactly the keys that
+   * were not removed, for both key list implementations.
+   */
+  @Test
+  public void testRemoveKey() {
+    Random random = new Random(15);
+    for (IterableMultiKeyRBT<Integer> t
+        : List.of(tree, IterableMultiKeyRBT.<Integer>withKeyLists(KeyList::new))) {
+      List<Integer> keys = new ArrayList<>();
+      for (int i = 0; i < 1500; i++) {
+        keys.add(random.nextInt(400));
+      }
+      for (int key : keys) {
+        t.insertSingleKey(key);
+      }
+      Assertions.assertFalse(t.removeKey(-1));
+
+      Collections.shuffle(keys, random);
+      List<Integer> remaining = new ArrayList<>(keys);
+      Collections.sort(remaining);
+      for (int i = 0; i < keys.size(); i++) {
+        Assertions.assertTrue(t.removeKey(keys.get(i)));
+        remaining.remove(keys.get(i));
+        if (i % 50 == 0) {
+          t.validate();
+          List<Integer> actual = new ArrayList<>();
+          t.iterator().forEachRemaining(actual::add);
+          Assertions.assertEquals(remaining, actual);
+          Assertions.assertEquals(remaining.size(), t.numKeys());
+        }
+      }
+      Assertions.assertTrue(t.isEmpty());
+      Assertions.assertEquals(0, t.numKeys());
+    }
+  }
+
+  /**
+   * Splits a spliterator as far as possible and adds its keys to a list in encounter order.
+   */
+  private static void splitAndCollect(Spliterator<Integer> spliterator, List<Integer> keys) {
+    Spliterator<Integer> prefix = spliterator.trySplit();
+    if (prefix != null) {
+      splitAndCollect(prefix, keys);
+      splitAndCollect(spliterator, keys);
+    } else {
+      spliterator.forEachRemaining(keys::add);
+    }
+  }
+
   /**
    * Tests the iterator behavior after clearing the tree.
    */
@@ -1,4 +1,5 @@
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * This interfaces extends the SortedCollectionInterface to allow storing multiple values for a
@@ -16,6 +17,37 @@ public interface IterableMultiKeySortedCollectionInterface<T extends Comparable<
    */
   public boolean insertSingleKey(T key);
 
+  /**
+   * Inserts many keys that are already sorted, with the same result as calling insertSingleKey on
+   * each key in order. Implementations may build their structure faster from sorted keys.
+   *
+   * @param sortedKeys keys in non-decreasing order
+   * @throws IllegalArgumentException if a key is null or the keys are not sorted
+   */
+  public default void insertSortedKeys(List<T> sortedKeys) {
+    for (int i = 0; i < sortedKeys.size(); i++) {
+      T key = sortedKeys.get(i);
+      if (key == null) {
+        throw new IllegalArgumentException("Key cannot be null.");
+      }
+      if (i > 0 && sortedKeys.get(i - 1).compareTo(key) > 0) {
+        throw new IllegalArgumentException("Keys must be sorted.");
+      }
+    }
+    for (T key : sortedKeys) {
+      insertSingleKey(key);
+    }
+  }
+
+  /**
+   * Removes one key that is equal to key.
+   *
+   * @param key object to remove
+   * @return true if a key was removed, false if the collection does not contain key
+   * @throws IllegalArgumentException if the provided key is null.
+   */
+  public boolean removeKey(T key);
+
   /**
    * @return the number of values in the tree.
    */
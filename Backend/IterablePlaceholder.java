@@ -24,6 +24,17 @@ public class IterablePlaceholder
     return true;
   }
 
+  /**
+   * Removes one key that is equal to key.
+   *
+   * @param key object to remove
+   * @return true if a key was removed, false if the collection does not contain key
+   */
+  @Override
+  public boolean removeKey(IngredientInterface key) {
+    return false;
+  }
+
   /**
    * @return the number of values in the tree.
    */
@@ -40,6 +40,15 @@ public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
     return this.keyList.contains(key);
   }
 
+  /**
+   * Removes the first object in the list that is equal to key.
+   * @return true if an object was removed, false if this KeyList does not contain key
+   */
+  @Override
+  public boolean removeKey(T key) {
+    return this.keyList.remove(key);
+  }
+
   /**
    * Compares this KeyList to another KeyList based on the keys of the objects that
    * both lists contain.
@@ -50,7 +59,25 @@ public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
    */
   @Override
   public int compareTo(KeyListInterface<T> o) {
-    return keyList.get(0).compareTo(o.iterator().next());
+    return keyList.get(0).compareTo(o.firstKey());
+  }
+
+  /**
+   * Returns the first key added to the list.
+   * @return the first key
+   */
+  @Override
+  public T firstKey() {
+    return keyList.get(0);
+  }
+
+  /**
+   * Returns the number of keys in the list.
+   * @return the number of keys
+   */
+  @Override
+  public int size() {
+    return keyList.size();
   }
 
   /**
@@ -19,4 +19,26 @@ public interface KeyListInterface<T extends Comparable<T>>
    */
   public boolean containsKey(T key);
 
+  /**
+   * Removes one object from the list that is equal to key. A list whose last key was removed
+   * must not be used any further.
+   *
+   * @param key the object to remove
+   * @return true if an object was removed, false if the list does not contain key
+   */
+  public boolean removeKey(T key);
+
+  /**
+   * Returns the first key added to the list. Every key in the list compares equal to it, so it
+   * stands for the whole list when the list is compared or searched.
+   *
+   * @return the first key in the list
+   */
+  public T firstKey();
+
+  /**
+   * @return the number of keys in the list
+   */
+  public int size();
+
 }
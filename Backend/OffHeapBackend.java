@@ -0,0 +1,426 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A backend that keeps its ingredients in an OffHeapIngredientStore instead of Ingredient objects,
+ * for datasets so large that tracing millions of small objects makes garbage collection slow. The
+ * indexes refer to rows by their int id and are made of primitive arrays only:
+ *
+ * - an open addressing hash table from name to the first row with that name, with the other rows
+ *   of the same name chained through sameName
+ * - a sorted long array per category, each entry holding a row's calories in the upper 32 bits
+ *   and its row id in the lower 32, so substitutes are found by a binary search and a scan
+ *
+ * Loading a CSV copies names from the mapped file straight into the store without decoding them.
+ * Queries compare bytes in the store and only create Ingredient objects for the results they
+ * return. Those Ingredients are copies: changing them does not change the backend, so the backend
+ * never becomes their owner, and inserted ingredients are copied as well.
+ */
+public class OffHeapBackend implements BackendInterface {
+
+  // Slot values of the name table besides row + 1
+  private static final int EMPTY = 0;
+  private static final int DELETED = -1;
+
+  private final OffHeapIngredientStore store = new OffHeapIngredientStore();
+  // Open addressing table holding row + 1 of the first live row of every name
+  private int[] nameTable = new int[1024];
+  // Number of slots that are not EMPTY, including DELETED ones
+  private int usedSlots;
+  // Next live row with the same name as a row, -1 if none; -2 marks a removed row
+  private int[] sameName = new int[1024];
+  // Entries (calories << 32 | row) of each category id, sorted, and how many of them are used
+  private long[][] categoryRows = new long[0][];
+  private int[] categorySizes = new int[0];
+  private int ingredientCount;
+  private int categoryCount;
+
+  /**
+   * Reads ingredient data from a specified CSV file by memory mapping it.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  @Override
+  public boolean loadData(String filePath) throws FileNotFoundException {
+    int firstRow = store.rows();
+    IngredientCsvParser.CategoryCache categories = new IngredientCsvParser.CategoryCache();
+    try {
+      IngredientCsvParser.parseFile(filePath,
+          (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) -> {
+            int categoryId =
+                CategoryDictionary.idOf(categories.get(buffer, categoryStart, categoryEnd));
+            addRow(store.addRow(buffer, nameStart, nameEnd, categoryId, calories, kilojoules),
+                false);
+          });
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      // Rows are appended unsorted while loading, so sort the categories they went into once.
+      boolean[] appended = new boolean[categorySizes.length];
+      for (int row = firstRow; row < store.rows(); row++) {
+        appended[store.categoryId(row)] = true;
+      }
+      for (int id = 0; id < appended.length; id++) {
+        if (appended[id]) {
+          Arrays.sort(categoryRows[id], 0, categorySizes[id]);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Inserts a copy of an ingredient. Its kilojoules are derived from its calories.
+   *
+   * @param ingredient The ingredient object to be inserted.
+   * @return true, ingredients are always inserted
+   */
+  @Override
+  public boolean insertIngredient(Ingredient ingredient) {
+    if (ingredient == null) {throw new NullPointerException();}
+    addRow(store.addRow(ingredient.getName(), ingredient.getCategoryId(),
+        ingredient.getCalories(), kilojoulesOf(ingredient.getCalories())), true);
+    return true;
+  }
+
+  /**
+   * Removes the ingredient with the given name, which is the one getCalorieCount and
+   * getNameSubstitutes use. If another ingredient has the same name, it takes the removed
+   * ingredient's place. The row stays in the store but is no longer indexed.
+   *
+   * @param ingredientName The name of the ingredient to remove.
+   * @return true if an ingredient was removed, false if no ingredient has this name.
+   */
+  @Override
+  public boolean removeIngredient(String ingredientName) {
+    int slot = findSlot(ingredientName);
+    if (slot < 0) {
+      return false;
+    }
+    int row = nameTable[slot] - 1;
+    nameTable[slot] = sameName[row] < 0 ? DELETED : sameName[row] + 1;
+    sameName[row] = -2;
+    removeEntry(row);
+    return true;
+  }
+
+  /**
+   * Replaces the ingredient with the given name by a copy of another ingredient. When the name
+   * stays the same, the row is changed in place and keeps its place among ingredients with that
+   * name.
+   *
+   * @param ingredientName The name of the ingredient to replace.
+   * @param replacement    The ingredient to store instead.
+   * @return true if the ingredient was replaced, false if no ingredient has this name
+   * @throws NullPointerException if replacement is null
+   */
+  @Override
+  public boolean updateIngredient(String ingredientName, Ingredient replacement) {
+    if (replacement == null) {throw new NullPointerException();}
+    if (!replacement.getName().equals(ingredientName)) {
+      return removeIngredient(ingredientName) && insertIngredient(replacement);
+    }
+    int row = firstRow(ingredientName);
+    if (row < 0) {
+      return false;
+    }
+    removeEntry(row);
+    store.setCategoryId(row, replacement.getCategoryId());
+    store.setCalories(row, replacement.getCalories());
+    store.setKilojoules(row, kilojoulesOf(replacement.getCalories()));
+    addEntry(row, true);
+    return true;
+  }
+
+  /**
+   * Retrieves a list of up to three ingredients of the same category that can replace a given
+   * ingredient by name, with the same or up to 30 more calories.
+   *
+   * @param ingredientName The name of the ingredient to be replaced.
+   * @return A list of potential replacement ingredients, empty if there are none.
+   */
+  @Override
+  public ArrayList<Ingredient> getNameSubstitutes(String ingredientName) {
+    ArrayList<Ingredient> substitutes = new ArrayList<>();
+    int original = firstRow(ingredientName);
+    if (original < 0) {
+      System.out.println("Ingredient not found");
+      return substitutes;
+    }
+    int categoryId = store.categoryId(original);
+    long[] entries = categoryRows[categoryId];
+    int size = categorySizes[categoryId];
+    long to = entry(store.calories(original) + 30L, Integer.MAX_VALUE);
+    int index = lowerBound(entries, size, entry(store.calories(original), 0));
+    for (; index < size && entries[index] <= to && substitutes.size() < 3; index++) {
+      int row = (int) entries[index];
+      if (!store.sameName(row, original)) {
+        substitutes.add(store.toIngredient(row));
+      }
+    }
+    return substitutes;
+  }
+
+  /**
+   * Returns the calories of the ingredient with the given name.
+   *
+   * @param ingredientName name of ingredient
+   * @return ingredient calories, -1 if ingredient doesn't exist
+   */
+  @Override
+  public int getCalorieCount(String ingredientName) {
+    int row = firstRow(ingredientName);
+    return row < 0 ? -1 : store.calories(row);
+  }
+
+  /**
+   * Returns the kilojoules of the ingredient with the given name, as read from the CSV file or
+   * derived from the calories of an inserted ingredient.
+   *
+   * @param ingredientName name of ingredient
+   * @return ingredient kilojoules, -1 if ingredient doesn't exist or the file had no kilojoules
+   */
+  public int getKilojoules(String ingredientName) {
+    int row = firstRow(ingredientName);
+    return row < 0 ? -1 : store.kilojoules(row);
+  }
+
+  @Override
+  public int getIngredientCount() {
+    return ingredientCount;
+  }
+
+  @Override
+  public int getCategoryCount() {
+    return categoryCount;
+  }
+
+  /**
+   * Removes all ingredients and releases the store's memory.
+   */
+  @Override
+  public void clearData() {
+    store.clear();
+    nameTable = new int[1024];
+    usedSlots = 0;
+    sameName = new int[1024];
+    categoryRows = new long[0][];
+    categorySizes = new int[0];
+    ingredientCount = 0;
+    categoryCount = 0;
+  }
+
+  /**
+   * @return the number of bytes of direct memory the store has reserved
+   */
+  public long offHeapBytes() {
+    return store.offHeapBytes();
+  }
+
+  /**
+   * @return the approximate number of heap bytes taken by the indexes
+   */
+  public long indexBytes() {
+    long bytes = Integer.BYTES * ((long) nameTable.length + sameName.length);
+    for (long[] entries : categoryRows) {
+      bytes += (long) Long.BYTES * entries.length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Indexes a row that was just added to the store.
+   *
+   * @param row    the row
+   * @param sorted true to keep its category sorted, false to append it while loading
+   */
+  private void addRow(int row, boolean sorted) {
+    if (row == sameName.length) {
+      sameName = Arrays.copyOf(sameName, sameName.length * 2);
+    }
+    sameName[row] = -1;
+    addName(row);
+    addEntry(row, sorted);
+  }
+
+  /**
+   * Adds a row to the name table, or to the end of the chain of rows with its name.
+   *
+   * @param row the row
+   */
+  private void addName(int row) {
+    if ((usedSlots + 1) * 2 > nameTable.length) {
+      rehash();
+    }
+    int mask = nameTable.length - 1;
+    int free = -1;
+    for (int slot = firstSlot(store.nameHash(row), nameTable.length); ; slot = (slot + 1) & mask) {
+      int value = nameTable[slot];
+      if (value == EMPTY) {
+        if (free < 0) {
+          free = slot;
+          usedSlots++;
+        }
+        nameTable[free] = row + 1;
+        return;
+      }
+      if (value == DELETED) {
+        free = free < 0 ? slot : free;
+      } else if (store.sameName(value - 1, row)) {
+        int last = value - 1;
+        while (sameName[last] >= 0) {
+          last = sameName[last];
+        }
+        sameName[last] = row;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the name table without DELETED slots, doubling it if it is still half full.
+   */
+  private void rehash() {
+    int[] old = nameTable;
+    int live = 0;
+    for (int value : old) {
+      live += value > 0 ? 1 : 0;
+    }
+    nameTable = new int[(live + 1) * 2 > old.length / 2 ? old.length * 2 : old.length];
+    usedSlots = live;
+    int mask = nameTable.length - 1;
+    for (int value : old) {
+      if (value > 0) {
+        int slot = firstSlot(store.nameHash(value - 1), nameTable.length);
+        while (nameTable[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        nameTable[slot] = value;
+      }
+    }
+  }
+
+  /**
+   * @param name a name
+   * @return the slot of the name table holding the name, -1 if it is not there
+   */
+  private int findSlot(String name) {
+    int mask = nameTable.length - 1;
+    for (int slot = firstSlot(OffHeapIngredientStore.hash(name), nameTable.length); ;
+        slot = (slot + 1) & mask) {
+      int value = nameTable[slot];
+      if (value == EMPTY) {
+        return -1;
+      }
+      if (value != DELETED && store.nameEquals(value - 1, name)) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * @param ingredientName a name
+   * @return the first live row with this name, -1 if there is none
+   */
+  private int firstRow(String ingredientName) {
+    int slot = findSlot(ingredientName);
+    return slot < 0 ? -1 : nameTable[slot] - 1;
+  }
+
+  /**
+   * Adds a row to the entries of its category.
+   *
+   * @param row    the row
+   * @param sorted true to insert it at its sorted position, false to append it
+   */
+  private void addEntry(int row, boolean sorted) {
+    int categoryId = store.categoryId(row);
+    if (categoryId >= categoryRows.length) {
+      int length = Math.max(categoryId + 1, categoryRows.length * 2);
+      int oldLength = categoryRows.length;
+      categoryRows = Arrays.copyOf(categoryRows, length);
+      categorySizes = Arrays.copyOf(categorySizes, length);
+      for (int id = oldLength; id < length; id++) {
+        categoryRows[id] = new long[0];
+      }
+    }
+    long[] entries = categoryRows[categoryId];
+    int size = categorySizes[categoryId];
+    if (size == entries.length) {
+      entries = Arrays.copyOf(entries, Math.max(16, size * 2));
+      categoryRows[categoryId] = entries;
+    }
+    long entry = entry(store.calories(row), row);
+    int index = sorted ? lowerBound(entries, size, entry) : size;
+    System.arraycopy(entries, index, entries, index + 1, size - index);
+    entries[index] = entry;
+    categorySizes[categoryId] = size + 1;
+    categoryCount += size == 0 ? 1 : 0;
+    ingredientCount++;
+  }
+
+  /**
+   * Removes a row from the entries of its category.
+   *
+   * @param row the row
+   */
+  private void removeEntry(int row) {
+    int categoryId = store.categoryId(row);
+    long[] entries = categoryRows[categoryId];
+    int size = categorySizes[categoryId];
+    int index = lowerBound(entries, size, entry(store.calories(row), row));
+    System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+    categorySizes[categoryId] = size - 1;
+    categoryCount -= size == 1 ? 1 : 0;
+    ingredientCount--;
+  }
+
+  /**
+   * @return the index of the first of the sorted entries that is not less than key
+   */
+  private static int lowerBound(long[] entries, int size, long key) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (entries[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return a category entry ordered by calories, then by row
+   */
+  private static long entry(long calories, int row) {
+    return calories << 32 | row;
+  }
+
+  /**
+   * @return kilojoules per 100g for the given calories per 100g
+   */
+  private static int kilojoulesOf(int calories) {
+    return (int) Math.round(calories * 4.184);
+  }
+
+  /**
+   * Picks the first slot for a hash from its product with the golden ratio, whose upper bits
+   * depend on every bit of the hash. Names that differ only in their last characters have hashes
+   * close together, which would otherwise fill neighbouring slots and form long probe sequences.
+   *
+   * @param hash   the hash of a name
+   * @param length the length of the name table, a power of two
+   * @return the slot
+   */
+  private static int firstSlot(int hash, int length) {
+    return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(length));
+  }
+}
@@ -0,0 +1,319 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores ingredients outside of the Java heap, one row per ingredient. The calories, kilojoules,
+ * category ids and name positions are int columns in direct ByteBuffers, and the names are kept
+ * as UTF-8 bytes one after another in a separate direct buffer. Rows are addressed by their int
+ * id, which is the order in which they were added. No object is created per row, so the garbage
+ * collector never has to trace the stored ingredients; Ingredient objects are only built when a
+ * row is returned by toIngredient.
+ *
+ * Names are limited to 2 GB in total, the size of the largest ByteBuffer.
+ */
+public class OffHeapIngredientStore {
+
+  // Number of rows and name bytes the buffers start with
+  private static final int INITIAL_ROWS = 1024;
+
+  // Int columns, four bytes per row
+  private ByteBuffer calories;
+  private ByteBuffer kilojoules;
+  private ByteBuffer categoryIds;
+  private ByteBuffer nameOffsets; // position of the row's name in names
+  private ByteBuffer nameLengths; // length of the row's name in bytes
+  // UTF-8 bytes of all names
+  private ByteBuffer names;
+  // Number of rows and of name bytes in use
+  private int rows;
+  private int namesEnd;
+
+  /**
+   * Creates an empty store.
+   */
+  public OffHeapIngredientStore() {
+    clear();
+  }
+
+  /**
+   * Adds a row whose name is copied from a buffer without decoding it.
+   *
+   * @param source     the buffer holding the UTF-8 name, for example a mapped CSV file
+   * @param nameStart  index of the first byte of the name
+   * @param nameEnd    index after the last byte of the name
+   * @param categoryId the CategoryDictionary id of the category
+   * @param calories   calories per 100g
+   * @param kilojoules kilojoules per 100g
+   * @return the id of the new row
+   * @throws IllegalStateException if the names no longer fit into a ByteBuffer
+   */
+  public int addRow(ByteBuffer source, int nameStart, int nameEnd, int categoryId, int calories,
+      int kilojoules) {
+    int length = nameEnd - nameStart;
+    ensureNameCapacity(length);
+    names.put(namesEnd, source, nameStart, length);
+    return addRow(length, categoryId, calories, kilojoules);
+  }
+
+  /**
+   * Adds a row.
+   *
+   * @param name       the name of the ingredient
+   * @param categoryId the CategoryDictionary id of the category
+   * @param calories   calories per 100g
+   * @param kilojoules kilojoules per 100g
+   * @return the id of the new row
+   * @throws IllegalStateException if the names no longer fit into a ByteBuffer
+   */
+  public int addRow(String name, int categoryId, int calories, int kilojoules) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    ensureNameCapacity(bytes.length);
+    names.put(namesEnd, bytes);
+    return addRow(bytes.length, categoryId, calories, kilojoules);
+  }
+
+  /**
+   * Adds a row whose name has just been written at namesEnd.
+   */
+  private int addRow(int nameLength, int categoryId, int calories, int kilojoules) {
+    if (rows * Integer.BYTES == this.calories.capacity()) {
+      int capacity = this.calories.capacity() * 2;
+      this.calories = grow(this.calories, capacity);
+      this.kilojoules = grow(this.kilojoules, capacity);
+      this.categoryIds = grow(this.categoryIds, capacity);
+      this.nameOffsets = grow(this.nameOffsets, capacity);
+      this.nameLengths = grow(this.nameLengths, capacity);
+    }
+    int row = rows++;
+    int at = row * Integer.BYTES;
+    this.calories.putInt(at, calories);
+    this.kilojoules.putInt(at, kilojoules);
+    this.categoryIds.putInt(at, categoryId);
+    this.nameOffsets.putInt(at, namesEnd);
+    this.nameLengths.putInt(at, nameLength);
+    namesEnd += nameLength;
+    return row;
+  }
+
+  /**
+   * @return the number of rows
+   */
+  public int rows() {
+    return rows;
+  }
+
+  public int calories(int row) {
+    return calories.getInt(row * Integer.BYTES);
+  }
+
+  public int kilojoules(int row) {
+    return kilojoules.getInt(row * Integer.BYTES);
+  }
+
+  public int categoryId(int row) {
+    return categoryIds.getInt(row * Integer.BYTES);
+  }
+
+  public void setCalories(int row, int value) {
+    calories.putInt(row * Integer.BYTES, value);
+  }
+
+  public void setKilojoules(int row, int value) {
+    kilojoules.putInt(row * Integer.BYTES, value);
+  }
+
+  public void setCategoryId(int row, int value) {
+    categoryIds.putInt(row * Integer.BYTES, value);
+  }
+
+  /**
+   * @param row a row
+   * @return the hash of the row's name, equal to hash of the name's UTF-8 bytes
+   */
+  public int nameHash(int row) {
+    int offset = nameOffsets.getInt(row * Integer.BYTES);
+    int end = offset + nameLengths.getInt(row * Integer.BYTES);
+    int hash = 0;
+    for (int index = offset; index < end; index++) {
+      hash = 31 * hash + names.get(index);
+    }
+    return hash;
+  }
+
+  /**
+   * Hashes the UTF-8 bytes of a name, which are worked out from its chars one at a time, so no
+   * byte array is allocated.
+   *
+   * @param name a name
+   * @return the hash of the name, as returned by nameHash for a row with this name
+   */
+  public static int hash(String name) {
+    int hash = 0;
+    for (int i = 0; i < name.length(); ) {
+      int codePoint = codePointAt(name, i);
+      i += Character.charCount(codePoint);
+      for (int b = 0, length = utf8Length(codePoint); b < length; b++) {
+        hash = 31 * hash + utf8Byte(codePoint, length, b);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Compares the name of a row with a String by encoding the String's chars as they are read, so
+   * no byte array is allocated.
+   *
+   * @param row  a row
+   * @param name a name
+   * @return true if the row has this name
+   */
+  public boolean nameEquals(int row, String name) {
+    int index = nameOffsets.getInt(row * Integer.BYTES);
+    int end = index + nameLengths.getInt(row * Integer.BYTES);
+    for (int i = 0; i < name.length(); ) {
+      int codePoint = codePointAt(name, i);
+      i += Character.charCount(codePoint);
+      int length = utf8Length(codePoint);
+      if (end - index < length) {
+        return false;
+      }
+      for (int b = 0; b < length; b++) {
+        if (names.get(index++) != utf8Byte(codePoint, length, b)) {
+          return false;
+        }
+      }
+    }
+    return index == end;
+  }
+
+  /**
+   * @return the code point at a position of name, or '?' for a lone surrogate, which is how
+   * String.getBytes encodes it in UTF-8
+   */
+  private static int codePointAt(String name, int index) {
+    int codePoint = name.codePointAt(index);
+    return codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT
+        && Character.isSurrogate((char) codePoint) ? '?' : codePoint;
+  }
+
+  /**
+   * @return the number of bytes of the UTF-8 encoding of a code point
+   */
+  private static int utf8Length(int codePoint) {
+    return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+  }
+
+  /**
+   * @param codePoint a code point
+   * @param length    the number of bytes of its UTF-8 encoding
+   * @param index     which of these bytes to return
+   * @return a byte of the UTF-8 encoding of the code point
+   */
+  private static byte utf8Byte(int codePoint, int length, int index) {
+    if (length == 1) {
+      return (byte) codePoint;
+    }
+    int bits = codePoint >> (6 * (length - 1 - index));
+    // The first byte starts with one 1 bit per byte of the encoding, the others with 10.
+    return (byte) (index == 0 ? (0xF00 >> length) & 0xFF | bits : 0x80 | bits & 0x3F);
+  }
+
+  /**
+   * @return true if both rows have the same name
+   */
+  public boolean sameName(int row, int other) {
+    int length = nameLengths.getInt(row * Integer.BYTES);
+    if (length != nameLengths.getInt(other * Integer.BYTES)) {
+      return false;
+    }
+    int offset = nameOffsets.getInt(row * Integer.BYTES);
+    int otherOffset = nameOffsets.getInt(other * Integer.BYTES);
+    for (int i = 0; i < length; i++) {
+      if (names.get(offset + i) != names.get(otherOffset + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes the name of a row into a String.
+   *
+   * @param row a row
+   * @return the name
+   */
+  public String name(int row) {
+    return IngredientCsvParser.decode(names, nameOffsets.getInt(row * Integer.BYTES),
+        nameOffsets.getInt(row * Integer.BYTES) + nameLengths.getInt(row * Integer.BYTES));
+  }
+
+  /**
+   * Builds an Ingredient holding the values of a row. Changes to the Ingredient do not change the
+   * row.
+   *
+   * @param row a row
+   * @return a new Ingredient
+   */
+  public Ingredient toIngredient(int row) {
+    return new Ingredient(CategoryDictionary.nameOf(categoryId(row)), name(row), calories(row));
+  }
+
+  /**
+   * @return the number of bytes of direct memory reserved by the store
+   */
+  public long offHeapBytes() {
+    return 5L * calories.capacity() + names.capacity();
+  }
+
+  /**
+   * Removes all rows and releases the buffers.
+   */
+  public void clear() {
+    calories = allocate(INITIAL_ROWS * Integer.BYTES);
+    kilojoules = allocate(INITIAL_ROWS * Integer.BYTES);
+    categoryIds = allocate(INITIAL_ROWS * Integer.BYTES);
+    nameOffsets = allocate(INITIAL_ROWS * Integer.BYTES);
+    nameLengths = allocate(INITIAL_ROWS * Integer.BYTES);
+    names = allocate(INITIAL_ROWS * 16);
+    rows = 0;
+    namesEnd = 0;
+  }
+
+  /**
+   * Makes sure another name of the given length fits into the names buffer.
+   *
+   * @param length the length of the name in bytes
+   */
+  private void ensureNameCapacity(int length) {
+    long needed = (long) namesEnd + length;
+    if (needed <= names.capacity()) {
+      return;
+    }
+    if (needed > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("the names of the store are full");
+    }
+    names = grow(names, (int) Math.min(Integer.MAX_VALUE - 8,
+        Math.max(needed, 2L * names.capacity())));
+  }
+
+  /**
+   * @return a direct buffer of the given size in the platform's byte order
+   */
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Copies a buffer into a larger one.
+   *
+   * @param buffer   the buffer to copy
+   * @param capacity the size of the new buffer
+   * @return the new buffer
+   */
+  private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+    ByteBuffer grown = allocate(capacity);
+    grown.put(0, buffer, 0, buffer.capacity());
+    return grown;
+  }
+}
@@ -0,0 +1,161 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses an ingredient CSV file on several threads. The file is split into chunks that each start
+ * at the beginning of a line, every chunk is memory mapped and parsed by IngredientCsvParser in its
+ * own fork-join task, and the rows of each chunk are returned in file order.
+ *
+ * Chunk boundaries are moved forward to the next newline. Quotes never span lines in this format,
+ * so a newline is always outside of a quoted field and always ends a row.
+ */
+public class ParallelCsvLoader {
+
+  // Smallest chunk worth handing to its own task.
+  public static final int DEFAULT_MIN_CHUNK = 256 * 1024;
+  // Largest chunk, bounded by the size of a single mapping.
+  private static final int MAX_CHUNK = 1 << 30;
+
+  /**
+   * Parses a CSV file using the tasks of a fork-join pool, with chunks of at least
+   * DEFAULT_MIN_CHUNK bytes.
+   *
+   * @param filePath path to the CSV file
+   * @param pool     pool that runs the chunk tasks
+   * @return the ingredients of each chunk, chunks and rows in file order
+   * @throws FileNotFoundException if the file does not exist
+   * @throws IOException           if the file cannot be read
+   */
+  public static List<ArrayList<Ingredient>> parse(String filePath, ForkJoinPool pool)
+      throws IOException {
+    return parse(filePath, pool, DEFAULT_MIN_CHUNK);
+  }
+
+  /**
+   * Parses a CSV file using the tasks of a fork-join pool. The file is cut into about four chunks
+   * per thread so that faster threads can pick up extra work.
+   *
+   * @param filePath path to the CSV file
+   * @param pool     pool that runs the chunk tasks
+   * @param minChunk smallest chunk size in bytes
+   * @return the ingredients of each chunk, chunks and rows in file order
+   * @throws FileNotFoundException if the file does not exist
+   * @throws IOException           if the file cannot be read
+   */
+  public static List<ArrayList<Ingredient>> parse(String filePath, ForkJoinPool pool,
+      int minChunk) throws IOException {
+    try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+      long[] bounds = chunkBounds(channel, pool.getParallelism() * 4, minChunk);
+      ArrayList<ForkJoinTask<ArrayList<Ingredient>>> tasks = new ArrayList<>();
+      for (int i = 0; i + 1 < bounds.length; i++) {
+        long start = bounds[i];
+        long end = bounds[i + 1];
+        tasks.add(ForkJoinTask.adapt(() -> parseChunk(channel, start, end)));
+      }
+
+      List<ArrayList<Ingredient>> chunks = new ArrayList<>();
+      try {
+        pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        for (ForkJoinTask<ArrayList<Ingredient>> task : tasks) {
+          chunks.add(task.join());
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      return chunks;
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException(filePath);
+    }
+  }
+
+  /**
+   * Splits the data rows of a file (everything after the header line) into chunks that start and
+   * end on line boundaries.
+   *
+   * @param channel  the open file
+   * @param chunks   the preferred number of chunks
+   * @param minChunk smallest chunk size in bytes
+   * @return increasing offsets where element i is the start of chunk i and the last element is the
+   *         size of the file
+   * @throws IOException if the file cannot be read
+   */
+  static long[] chunkBounds(FileChannel channel, int chunks, int minChunk) throws IOException {
+    long size = channel.size();
+    long start = nextLineStart(channel, 0);
+    long chunkSize = Math.max(minChunk, (size - start + chunks - 1) / Math.max(1, chunks));
+    chunkSize = Math.min(chunkSize, MAX_CHUNK / 2);
+
+    ArrayList<Long> bounds = new ArrayList<>();
+    bounds.add(start);
+    while (start < size) {
+      long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize);
+      bounds.add(end);
+      start = end;
+    }
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the start of the first line that begins after the given offset.
+   *
+   * @param channel  the open file
+   * @param position offset to search from
+   * @return the offset just after the next newline, or the file size if there is none
+   * @throws IOException if the file cannot be read
+   */
+  private static long nextLineStart(FileChannel channel, long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    while (true) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Maps and parses one chunk of the file.
+   *
+   * @param channel the open file
+   * @param start   offset of the first byte of the chunk
+   * @param end     offset after the last byte of the chunk
+   * @return the ingredients of the chunk in file order
+   * @throws UncheckedIOException if the chunk cannot be mapped
+   */
+  private static ArrayList<Ingredient> parseChunk(FileChannel channel, long start, long end) {
+    ArrayList<Ingredient> rows = new ArrayList<>();
+    IngredientCsvParser.CategoryCache categories = new IngredientCsvParser.CategoryCache();
+    try {
+      MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      IngredientCsvParser.parse(chunk, 0, (int) (end - start),
+          (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+              rows.add(new Ingredient(categories.get(buffer, categoryStart, categoryEnd),
+                  IngredientCsvParser.decode(buffer, nameStart, nameEnd), calories)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return rows;
+  }
+}
@@ -9,6 +9,12 @@
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
 /**
  * This class represents a Red-Black Tree with all its properties to ensure that the tree remains
  * balanced during insertions and deletions. As a result, the tree ensures O(log n) search time.
@@ -141,6 +147,271 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
     return true;
   }
 
+  /**
+   * Removes the value that compares equal to data from the tree, if there is one, and restores the
+   * Red-Black Tree properties.
+   *
+   * @param data the value to remove
+   * @return true if a value was removed, false if no value in the tree compares equal to data
+   * @throws NullPointerException if data is null
+   */
+  public boolean remove(Comparable<T> data) {
+    if (data == null) {
+      throw new NullPointerException("Cannot remove data value null from the tree.");
+    }
+    Node<T> node = findNode(data);
+    if (node == null) {
+      return false;
+    }
+    removeNode(node);
+    return true;
+  }
+
+  /**
+   * Removes a node from the tree. A node with two children takes over the value of its in-order
+   * successor, and the successor's node (which has at most one child) is removed instead. That
+   * node is replaced by its child, the subtree weights above it are recomputed, and if a black
+   * node was removed the tree is fixed up by enforceRBTreePropertiesAfterRemove.
+   *
+   * Because values may move between nodes, references to nodes of this tree (such as those held
+   * by iterators) are no longer valid after a removal.
+   *
+   * @param node the node to remove
+   */
+  protected void removeNode(Node<T> node) {
+    if (node.down[0] != null && node.down[1] != null) {
+      Node<T> successor = successor(node);
+      node.data = successor.data;
+      node = successor;
+    }
+    Node<T> child = node.down[0] != null ? node.down[0] : node.down[1];
+    Node<T> parent = node.up;
+    if (child != null) {
+      child.up = parent;
+    }
+    if (parent == null) {
+      root = child;
+    } else {
+      parent.down[node.isRightChild() ? 1 : 0] = child;
+    }
+    node.up = null;
+    node.down[0] = null;
+    node.down[1] = null;
+    size--;
+    for (Node<T> ancestor = parent; ancestor != null; ancestor = ancestor.up) {
+      updateWeight(ancestor);
+    }
+
+    if (((RBTNode<T>) node).blackHeight == 1) {
+      enforceRBTreePropertiesAfterRemove((RBTNode<T>) child, (RBTNode<T>) parent);
+    }
+  }
+
+  /**
+   * Restores the Red-Black Tree properties after a black node was removed. The node that took its
+   * place (possibly null) is missing one black node on every path through it. Violations are
+   * resolved with re-coloring and at most three rotations:
+   * - Case 1: The sibling is red. Rotate it above the parent, which turns this into one of the
+   *   cases below with a black sibling.
+   * - Case 2: The sibling and both of its children are black. Color the sibling red and move the
+   *   missing black up to the parent.
+   * - Case 3: The sibling's far child is black but its near child is red. Rotate the near child
+   *   above the sibling, which turns this into case 4.
+   * - Case 4: The sibling's far child is red. Rotate the sibling above the parent and re-color,
+   *   which adds the missing black node.
+   *
+   * @param node   the node that replaced the removed node, or null
+   * @param parent the parent of that position, or null if it is the root
+   */
+  protected void enforceRBTreePropertiesAfterRemove(RBTNode<T> node, RBTNode<T> parent) {
+    while (node != root && isBlack(node)) {
+      // A null node is only possible at the position of the removed node, whose sibling is then
+      // not null, so comparing with the left child finds the right side.
+      int side = parent.down[0] == node ? 0 : 1;
+      RBTNode<T> sibling = (RBTNode<T>) parent.down[1 - side];
+      if (sibling.blackHeight == 0) {
+        // Case 1: Sibling is red.
+        sibling.blackHeight = 1;
+        parent.blackHeight = 0;
+        rotate(sibling, parent);
+        sibling = (RBTNode<T>) parent.down[1 - side];
+      }
+      if (isBlack((RBTNode<T>) sibling.down[0]) && isBlack((RBTNode<T>) sibling.down[1])) {
+        // Case 2: Sibling and its children are black.
+        sibling.blackHeight = 0;
+        node = parent;
+        parent = node.getUp();
+      } else {
+        if (isBlack((RBTNode<T>) sibling.down[1 - side])) {
+          // Case 3: Only the near child of the sibling is red.
+          RBTNode<T> near = (RBTNode<T>) sibling.down[side];
+          near.blackHeight = 1;
+          sibling.blackHeight = 0;
+          rotate(near, sibling);
+          sibling = near;
+        }
+        // Case 4: The far child of the sibling is red.
+        sibling.blackHeight = parent.blackHeight;
+        parent.blackHeight = 1;
+        ((RBTNode<T>) sibling.down[1 - side]).blackHeight = 1;
+        rotate(sibling, parent);
+        node = (RBTNode<T>) root;
+      }
+    }
+    if (node != null) {
+      node.blackHeight = 1;
+    }
+  }
+
+  /**
+   * @return true if the node is black, treating null nodes as black
+   */
+  private static boolean isBlack(RBTNode<?> node) {
+    return node == null || node.blackHeight == 1;
+  }
+
+  /**
+   * Replaces the contents of this tree with the given values, which must be sorted and distinct.
+   * The tree is built top-down from the middle of each range in O(n) time without any rotations,
+   * so it is as balanced as possible. Every node is black except for the nodes on the deepest
+   * level when that level is not full, which are red. This keeps the same number of black nodes on
+   * every path from the root.
+   *
+   * @param sortedData the values in strictly increasing order
+   * @throws NullPointerException     if sortedData or any value is null
+   * @throws IllegalArgumentException if the values are not strictly increasing
+   */
+  public void buildFromSorted(List<T> sortedData) {
+    for (int i = 0; i < sortedData.size(); i++) {
+      if (sortedData.get(i) == null) {
+        throw new NullPointerException("Cannot insert data value null into the tree.");
+      }
+      if (i > 0 && sortedData.get(i - 1).compareTo(sortedData.get(i)) >= 0) {
+        throw new IllegalArgumentException("values must be sorted and distinct");
+      }
+    }
+    root = buildSubtree(sortedData, 0, sortedData.size() - 1, 0, redLevel(sortedData.size()));
+    if (root != null) {
+      root.up = null;
+    }
+    size = sortedData.size();
+  }
+
+  /**
+   * Builds a subtree holding the values in the index range [low, high].
+   *
+   * @param sortedData the sorted values
+   * @param low        index of the smallest value of the subtree
+   * @param high       index of the largest value of the subtree
+   * @param depth      depth of the subtree's root
+   * @param redLevel   depth at which nodes are colored red
+   * @return the root of the subtree, or null if the range is empty
+   */
+  private RBTNode<T> buildSubtree(List<T> sortedData, int low, int high, int depth,
+      int redLevel) {
+    if (low > high) {
+      return null;
+    }
+    int middle = (low + high) >>> 1;
+    RBTNode<T> node = new RBTNode<>(sortedData.get(middle));
+    node.blackHeight = depth == redLevel ? 0 : 1;
+    node.down[0] = buildSubtree(sortedData, low, middle - 1, depth + 1, redLevel);
+    node.down[1] = buildSubtree(sortedData, middle + 1, high, depth + 1, redLevel);
+    if (node.down[0] != null) {
+      node.down[0].up = node;
+    }
+    if (node.down[1] != null) {
+      node.down[1].up = node;
+    }
+    updateWeight(node);
+    return node;
+  }
+
+  /**
+   * Finds the depth of the deepest level of a tree of the given size built by buildSubtree. When
+   * that level is full every node can be black, so -1 is returned.
+   *
+   * @param size the number of nodes
+   * @return the depth whose nodes must be red
+   */
+  private static int redLevel(int size) {
+    int depth = -1;
+    for (int remaining = size; remaining > 0; remaining /= 2) {
+      depth++;
+    }
+    // A tree with 2^(depth+1)-1 nodes is perfect, so no level has to be red.
+    return size == (2 << depth) - 1 ? -1 : depth;
+  }
+
+  /**
+   * Checks that this tree is a valid red-black tree: values are in strictly increasing order,
+   * parent and child references agree, the root is black, no red node has a red child, every path
+   * from the root to a null child has the same number of black nodes, every subtreeWeight matches
+   * the weights of the values below it, and size matches the number of nodes.
+   *
+   * @throws IllegalStateException describing the first violation found
+   */
+  public void validate() {
+    if (root == null) {
+      if (size != 0) {
+        throw new IllegalStateException("empty tree has size " + size);
+      }
+      return;
+    }
+    if (root.up != null) {
+      throw new IllegalStateException("root has a parent");
+    }
+    if (((RBTNode<T>) root).blackHeight != 1) {
+      throw new IllegalStateException("root is red");
+    }
+    int[] count = new int[1];
+    validateSubtree((RBTNode<T>) root, null, null, count);
+    if (count[0] != size) {
+      throw new IllegalStateException("tree has " + count[0] + " nodes but size " + size);
+    }
+  }
+
+  /**
+   * Checks the red-black properties of a subtree.
+   *
+   * @param node  root of the subtree
+   * @param lower every value must be greater than this, or null for no bound
+   * @param upper every value must be less than this, or null for no bound
+   * @param count running count of nodes visited
+   * @return the number of black nodes on every path from node down to a null child
+   */
+  private int validateSubtree(RBTNode<T> node, T lower, T upper, int[] count) {
+    if (node == null) {
+      return 0;
+    }
+    count[0]++;
+    if ((lower != null && lower.compareTo(node.data) >= 0)
+        || (upper != null && upper.compareTo(node.data) <= 0)) {
+      throw new IllegalStateException("value " + node.data + " is out of order");
+    }
+    for (int side = 0; side < 2; side++) {
+      RBTNode<T> child = (RBTNode<T>) node.down[side];
+      if (child != null) {
+        if (child.up != node) {
+          throw new IllegalStateException("child of " + node.data + " has the wrong parent");
+        }
+        if (node.blackHeight == 0 && child.blackHeight == 0) {
+          throw new IllegalStateException("red node " + node.data + " has a red child");
+        }
+      }
+    }
+    int left = validateSubtree(node.getDownLeft(), lower, node.data, count);
+    int right = validateSubtree(node.getDownRight(), node.data, upper, count);
+    if (left != right) {
+      throw new IllegalStateException("black heights differ below " + node.data);
+    }
+    if (node.subtreeWeight != weightOf(node.data) + subtreeWeight(node.down[0])
+        + subtreeWeight(node.down[1])) {
+      throw new IllegalStateException("wrong subtree weight at " + node.data);
+    }
+    return left + node.blackHeight;
+  }
+
   /**
    * Test case 1: Test to ensure that the root of the tree has the correct blackHeight after
    * insertion of nodes.
@@ -271,4 +542,83 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
     Assertions.assertEquals(0,
         ((RBTNode<T>) tree.root).getDownLeft().getDownRight().getDownRight().blackHeight);
   }
+
+  /**
+   * Test case 6: Trees built from sorted values of every size up to 100 hold all values in order
+   * and satisfy every red-black property.
+   */
+  @Test
+  public void testCase6() {
+    for (int n = 0; n <= 100; n++) {
+      List<Integer> values = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        values.add(i * 2);
+      }
+      RedBlackTree<Integer> tree = new RedBlackTree<>();
+      tree.insert(7); // replaced by the build
+      tree.buildFromSorted(values);
+      tree.validate();
+
+      Assertions.assertEquals(n, tree.size());
+      Assertions.assertEquals(values.toString().replace("[", "[ ").replace("]", " ]"),
+          tree.toInOrderString());
+      // Inserting after a build still keeps the tree valid.
+      tree.insert(-1);
+      tree.insert(2 * n + 1);
+      tree.validate();
+    }
+  }
+
+  /**
+   * Test case 7: Building from unsorted or duplicate values is rejected, and validate detects a
+   * broken tree.
+   */
+  @Test
+  public void testCase7() {
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> tree.buildFromSorted(List.of(1, 3, 2)));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> tree.buildFromSorted(List.of(1, 1)));
+
+    for (int i = 0; i < 50; i++) {
+      tree.insert((i * 37) % 101);
+    }
+    tree.validate();
+    ((RBTNode<Integer>) tree.root).getDownLeft().blackHeight = 0;
+    ((RBTNode<Integer>) tree.root).getDownLeft().getDownLeft().blackHeight = 0;
+    Assertions.assertThrows(IllegalStateException.class, () -> tree.validate());
+  }
+
+  /**
+   * Test case 8: Removes values in random order, checking the Red-Black Tree properties and the
+   * remaining values after every removal.
+   */
+  @Test
+  public void testCase8() {
+    Random random = new Random(15);
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      values.add(i);
+    }
+    Collections.shuffle(values, random);
+    for (int value : values) {
+      tree.insert(value);
+    }
+    Assertions.assertFalse(tree.remove(500));
+
+    Collections.shuffle(values, random);
+    TreeSet<Integer> remaining = new TreeSet<>(values);
+    for (int value : values) {
+      Assertions.assertTrue(tree.remove(value));
+      remaining.remove(value);
+      tree.validate();
+      Assertions.assertEquals(remaining.size(), tree.size());
+      Assertions.assertFalse(tree.contains(value));
+    }
+    Assertions.assertTrue(tree.isEmpty());
+    Assertions.assertThrows(NullPointerException.class, () -> tree.remove(null));
+  }
+
 }
@@ -0,0 +1,384 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A backend built on concurrent collections instead of locks, for workloads that insert
+ * ingredients while other threads query. Ingredients are ordered in a ConcurrentSkipListSet by
+ * category, calories and insertion order, which answers substitute queries with one range scan,
+ * and a ConcurrentHashMap finds ingredients by name. Readers never block, and writers only
+ * contend with writers that touch the same name or the same part of the skip list.
+ *
+ * Each method is atomic on its own, and the results match BackendImplementation when the calls
+ * are made one after another. A query that runs during a write may see the write in one index
+ * before the other, for example count an ingredient that getCalorieCount does not find yet.
+ */
+public class SkipListBackend implements BackendInterface, Ingredient.Owner {
+
+  /**
+   * Position of an ingredient in the skip list. The key fields are copied from the ingredient
+   * when it is inserted, so changing the ingredient cannot break the order of the set.
+   */
+  private static class Entry implements Comparable<Entry> {
+    final int categoryId;
+    final int calories;
+    final long sequence; // insertion order, which keeps equal ingredients apart
+    final Ingredient ingredient;
+
+    Entry(int categoryId, int calories, long sequence, Ingredient ingredient) {
+      this.categoryId = categoryId;
+      this.calories = calories;
+      this.sequence = sequence;
+      this.ingredient = ingredient;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      if (categoryId != other.categoryId) {
+        return Integer.compare(categoryId, other.categoryId);
+      }
+      if (calories != other.calories) {
+        return Integer.compare(calories, other.calories);
+      }
+      return Long.compare(sequence, other.sequence);
+    }
+  }
+
+  // All ingredients ordered by category id, calories and insertion order
+  private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+  // Entries of every name in insertion order; the lists are never changed, only replaced
+  private final ConcurrentHashMap<String, List<Entry>> nameIndex = new ConcurrentHashMap<>();
+  // Number of ingredients in each category that has any
+  private final ConcurrentHashMap<String, Integer> categoryCounts = new ConcurrentHashMap<>();
+  private final AtomicInteger ingredientCount = new AtomicInteger();
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  /**
+   * Reads ingredient data from a specified CSV file by memory mapping it.
+   *
+   * @param filePath The path to the CSV file containing ingredient data.
+   * @return true if data is loaded successfully, false otherwise.
+   */
+  @Override
+  public boolean loadData(String filePath) throws FileNotFoundException {
+    IngredientCsvParser.CategoryCache categories = new IngredientCsvParser.CategoryCache();
+    try {
+      IngredientCsvParser.parseFile(filePath,
+          (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+              insertIngredient(new Ingredient(categories.get(buffer, categoryStart, categoryEnd),
+                  IngredientCsvParser.decode(buffer, nameStart, nameEnd), calories)));
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Inserts an ingredient. The backend becomes the ingredient's owner, so later changes through
+   * its setters are reindexed.
+   *
+   * @param ingredient The ingredient object to be inserted.
+   * @return true if the ingredient was successfully inserted, false if a backend already holds
+   *         this ingredient object.
+   */
+  @Override
+  public boolean insertIngredient(Ingredient ingredient) {
+    if (ingredient == null) {throw new NullPointerException();}
+    // Holding the ingredient keeps its setters from changing it until it is indexed.
+    synchronized (ingredient) {
+      if (!ingredient.claimOwner(this)) {
+        return false;
+      }
+      Entry entry = newEntry(ingredient);
+      addEntry(entry);
+      addName(entry);
+    }
+    return true;
+  }
+
+  /**
+   * Removes the ingredient with the given name, which is the one getCalorieCount and
+   * getNameSubstitutes use. If another ingredient has the same name, it takes the removed
+   * ingredient's place.
+   *
+   * @param ingredientName The name of the ingredient to remove.
+   * @return true if an ingredient was removed, false if no ingredient has this name.
+   */
+  @Override
+  public boolean removeIngredient(String ingredientName) {
+    Entry entry = claimFirst(ingredientName, null);
+    if (entry == null) {
+      return false;
+    }
+    removeEntry(entry);
+    entry.ingredient.setOwner(null);
+    return true;
+  }
+
+  /**
+   * Replaces the ingredient with the given name by another ingredient. When the name stays the
+   * same, the replacement also takes the original's place among ingredients with that name.
+   *
+   * @param ingredientName The name of the ingredient to replace.
+   * @param replacement    The ingredient to store instead.
+   * @return true if the ingredient was replaced, false if no ingredient has this name or a
+   *         backend already holds the replacement.
+   * @throws NullPointerException if replacement is null
+   */
+  @Override
+  public boolean updateIngredient(String ingredientName, Ingredient replacement) {
+    if (replacement == null) {throw new NullPointerException();}
+    // Holding the replacement keeps its setters from changing it until it is indexed.
+    synchronized (replacement) {
+      if (!replacement.claimOwner(this)) {
+        return false;
+      }
+      // The new entry is in the skip list before the name index can hand it to a removal.
+      Entry next = newEntry(replacement);
+      addEntry(next);
+      boolean sameName = replacement.getName().equals(ingredientName);
+      Entry entry = claimFirst(ingredientName, sameName ? next : null);
+      if (entry == null) {
+        removeEntry(next);
+        replacement.setOwner(null);
+        return false;
+      }
+      if (!sameName) {
+        addName(next);
+      }
+      removeEntry(entry);
+      entry.ingredient.setOwner(null);
+    }
+    return true;
+  }
+
+  /**
+   * Changes a field of an ingredient held by this backend and moves it to the position of its
+   * new values. It keeps its place among ingredients with the same name unless its name changes.
+   * Changes to the same ingredient from several threads are applied one after another.
+   *
+   * @param ingredient the ingredient that changes
+   * @param change     sets the new value of the field
+   * @throws IllegalArgumentException if this backend does not hold the ingredient
+   */
+  @Override
+  public void reindex(Ingredient ingredient, Runnable change) {
+    if (ingredient.getOwner() != this) {
+      throw new IllegalArgumentException("ingredient is not held by this backend");
+    }
+    synchronized (ingredient) {
+      String oldName = ingredient.getName();
+      Entry[] moved = new Entry[2]; // the entry that is taken out and the one that replaces it
+      // The entry is claimed in the name index and the change applied in one step, so a removal
+      // by name either wins and the change is not indexed, or removes the new entry afterwards.
+      nameIndex.computeIfPresent(oldName, (name, named) -> {
+        int index = 0;
+        while (index < named.size() && named.get(index).ingredient != ingredient) {
+          index++;
+        }
+        if (index == named.size()) {
+          return named;
+        }
+        change.run();
+        moved[0] = named.get(index);
+        moved[1] = newEntry(ingredient);
+        ArrayList<Entry> changed = new ArrayList<>(named);
+        if (oldName.equals(ingredient.getName())) {
+          addEntry(moved[1]);
+          changed.set(index, moved[1]);
+        } else {
+          changed.remove(index);
+        }
+        return changed.isEmpty() ? null : List.copyOf(changed);
+      });
+      if (moved[0] == null) { // removed by another thread in the meantime
+        change.run();
+        return;
+      }
+      if (!oldName.equals(ingredient.getName())) {
+        addEntry(moved[1]);
+        addName(moved[1]);
+      }
+      removeEntry(moved[0]);
+    }
+  }
+
+  /**
+   * Retrieves a list of up to three ingredients of the same category that can replace a given
+   * ingredient by name, with the same or up to 30 more calories.
+   *
+   * @param ingredientName The name of the ingredient to be replaced.
+   * @return A list of potential replacement ingredients, empty if there are none.
+   */
+  @Override
+  public ArrayList<Ingredient> getNameSubstitutes(String ingredientName) {
+    ArrayList<Ingredient> substitutes = new ArrayList<>();
+    Entry original = first(ingredientName);
+    if (original == null) {
+      System.out.println("Ingredient not found");
+      return substitutes;
+    }
+    Entry from = new Entry(original.categoryId, original.calories, Long.MIN_VALUE, null);
+    Entry to = new Entry(original.categoryId, original.calories + 30, Long.MAX_VALUE, null);
+    for (Entry entry : entries.subSet(from, true, to, true)) {
+      if (substitutes.size() == 3) {
+        break;
+      }
+      if (!entry.ingredient.getName().equals(ingredientName)) {
+        substitutes.add(entry.ingredient);
+      }
+    }
+    return substitutes;
+  }
+
+  /**
+   * Returns the calories of the ingredient with the given name.
+   *
+   * @param ingredientName name of ingredient
+   * @return ingredient calories, -1 if ingredient doesn't exist
+   */
+  @Override
+  public int getCalorieCount(String ingredientName) {
+    Entry entry = first(ingredientName);
+    return entry == null ? -1 : entry.calories;
+  }
+
+  @Override
+  public int getIngredientCount() {
+    return ingredientCount.get();
+  }
+
+  @Override
+  public int getCategoryCount() {
+    return categoryCounts.size();
+  }
+
+  /**
+   * Removes all ingredients. Ingredients inserted while the data is cleared may be kept.
+   */
+  @Override
+  public void clearData() {
+    for (Entry entry : entries) {
+      // Taking the entry out of the name index decides which thread removes it.
+      if (replaceName(entry.ingredient.getName(), entry, null)) {
+        removeEntry(entry);
+        entry.ingredient.setOwner(null);
+      }
+    }
+  }
+
+  /**
+   * @param ingredient the ingredient to place
+   * @return a new entry with the ingredient's current category and calories, ordered after all
+   *         earlier entries with the same values
+   */
+  private Entry newEntry(Ingredient ingredient) {
+    return new Entry(ingredient.getCategoryId(), ingredient.getCalories(),
+        nextSequence.getAndIncrement(), ingredient);
+  }
+
+  /**
+   * @param ingredientName a name
+   * @return the first inserted entry with this name, null if there is none
+   */
+  private Entry first(String ingredientName) {
+    List<Entry> named = nameIndex.get(ingredientName);
+    return named == null ? null : named.get(0);
+  }
+
+  /**
+   * Takes the first entry of a name out of the name index, retrying if another thread takes it
+   * first.
+   *
+   * @param ingredientName the name
+   * @param replacement    the entry that takes its place, or null to just remove it
+   * @return the entry that was taken, null if the name has no entries
+   */
+  private Entry claimFirst(String ingredientName, Entry replacement) {
+    while (true) {
+      Entry entry = first(ingredientName);
+      if (entry == null || replaceName(ingredientName, entry, replacement)) {
+        return entry;
+      }
+    }
+  }
+
+  /**
+   * Adds an entry to the skip list and the counts. Its name is added to the name index afterwards,
+   * so no removal can find the entry before it is in the skip list.
+   *
+   * @param entry the entry to add
+   */
+  private void addEntry(Entry entry) {
+    entries.add(entry);
+    categoryCounts.merge(CategoryDictionary.nameOf(entry.categoryId), 1, Integer::sum);
+    ingredientCount.incrementAndGet();
+  }
+
+  /**
+   * Removes an entry from the skip list and, if it was still there, from the counts. Its name
+   * must already have been removed from the name index.
+   *
+   * @param entry the entry to remove
+   * @return true if the entry was removed, false if it was not in the skip list
+   */
+  private boolean removeEntry(Entry entry) {
+    if (!entries.remove(entry)) {
+      return false;
+    }
+    categoryCounts.computeIfPresent(CategoryDictionary.nameOf(entry.categoryId),
+        (category, count) -> count == 1 ? null : count - 1);
+    ingredientCount.decrementAndGet();
+    return true;
+  }
+
+  /**
+   * Appends an entry to the entries of its name.
+   *
+   * @param entry the entry to add
+   */
+  private void addName(Entry entry) {
+    nameIndex.compute(entry.ingredient.getName(), (name, named) -> {
+      if (named == null) {
+        return List.of(entry);
+      }
+      ArrayList<Entry> longer = new ArrayList<>(named);
+      longer.add(entry);
+      return List.copyOf(longer);
+    });
+  }
+
+  /**
+   * Replaces or removes one entry of a name.
+   *
+   * @param ingredientName the name the entry is stored under
+   * @param entry          the entry to replace
+   * @param replacement    the entry to store in its place, or null to remove it
+   * @return true if the entry was found, false if another thread removed it first
+   */
+  private boolean replaceName(String ingredientName, Entry entry, Entry replacement) {
+    boolean[] found = new boolean[1];
+    nameIndex.computeIfPresent(ingredientName, (name, named) -> {
+      ArrayList<Entry> changed = new ArrayList<>(named.size());
+      for (Entry other : named) {
+        if (other != entry) {
+          changed.add(other);
+        } else {
+          found[0] = true;
+          if (replacement != null) {
+            changed.add(replacement);
+          }
+        }
+      }
+      return changed.isEmpty() ? null : List.copyOf(changed);
+    });
+    return found[0];
+  }
+}
@@ -0,0 +1,90 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A collection that maps int keys to values, may hold the same key several times, and keeps its
+ * values in key order. Values with equal keys are kept in the order they were inserted. The
+ * calorie indexes of an IngredientDataset are collections of this kind.
+ *
+ * @param <V> the type of the values
+ */
+public interface SortedIntMultimapInterface<V> extends Iterable<V> {
+
+  /**
+   * @return the number of values in the collection
+   */
+  public int size();
+
+  /**
+   * @return true if the collection has no values
+   */
+  public boolean isEmpty();
+
+  /**
+   * Removes all values.
+   */
+  public void clear();
+
+  /**
+   * Adds a value to a key. It is placed after all values the key already has.
+   *
+   * @param key   the key
+   * @param value the value, which may be null
+   */
+  public void insert(int key, V value);
+
+  /**
+   * Adds many entries at once, with the same result as calling insert on each value in order.
+   * Implementations may build their structure faster when the collection is empty.
+   *
+   * @param sortedValues the values, ordered by key; values with equal keys are kept in this order
+   * @param keyOf        gives the key of each value
+   * @throws IllegalArgumentException if the values are not ordered by key
+   */
+  public void insertSorted(List<V> sortedValues, ToIntFunction<V> keyOf);
+
+  /**
+   * Removes a value from a key.
+   *
+   * @param key   the key
+   * @param value the value, compared by identity; the first occurrence is removed
+   * @return true if the value was removed, false if the key does not have this value
+   */
+  public boolean remove(int key, V value);
+
+  /**
+   * Counts the values whose key is within a range.
+   *
+   * @param low  the smallest key to count
+   * @param high the largest key to count
+   * @return the number of values with low <= key <= high
+   */
+  public int countInRange(int low, int high);
+
+  /**
+   * Returns the key of the value at a position in key order.
+   *
+   * @param index the position, starting at 0
+   * @return the key at that position
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  public int keyAt(int index);
+
+  /**
+   * Returns an iterator over the values whose key is within a range, in key order. The iterator
+   * keeps its own position, so several can be used at the same time. It must not be used after
+   * the collection has been changed.
+   *
+   * @param low  the smallest key to include
+   * @param high the largest key to include
+   * @return an iterator over the values with low <= key <= high
+   */
+  public Iterator<V> range(int low, int high);
+
+  /**
+   * @return an iterator over all values in key order
+   */
+  @Override
+  public Iterator<V> iterator();
+}
@@ -0,0 +1,158 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one independent backend per tenant, for example one per regional ingredient dataset, so a
+ * single process can serve several datasets. Every tenant has its own indexes, is loaded and
+ * reloaded on its own, and reports its own memory use. The query methods take the tenant as their
+ * first argument and forward to that tenant's backend.
+ *
+ * Tenants can be added and removed while other threads query the registry.
+ */
+public class TenantRegistry {
+
+  // Backend of every tenant
+  private final ConcurrentHashMap<String, BackendImplementation> tenants =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Adds a tenant with an empty backend.
+   *
+   * @param tenant the name of the tenant
+   * @return the backend of the new tenant
+   * @throws NullPointerException     if tenant is null
+   * @throws IllegalArgumentException if the tenant already exists
+   */
+  public BackendImplementation addTenant(String tenant) {
+    BackendImplementation backend = new BackendImplementation();
+    if (tenants.putIfAbsent(tenant, backend) != null) {
+      throw new IllegalArgumentException("tenant " + tenant + " already exists");
+    }
+    return backend;
+  }
+
+  /**
+   * Removes a tenant and releases its data. Queries that already reached its backend finish
+   * normally.
+   *
+   * @param tenant the name of the tenant
+   * @return true if the tenant was removed, false if there was no such tenant
+   */
+  public boolean removeTenant(String tenant) {
+    BackendImplementation backend = tenants.remove(tenant);
+    if (backend == null) {
+      return false;
+    }
+    backend.clearData();
+    return true;
+  }
+
+  /**
+   * Returns the backend of a tenant.
+   *
+   * @param tenant the name of the tenant
+   * @return the tenant's backend
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public BackendImplementation getBackend(String tenant) {
+    BackendImplementation backend = tenants.get(tenant);
+    if (backend == null) {
+      throw new IllegalArgumentException("unknown tenant " + tenant);
+    }
+    return backend;
+  }
+
+  /**
+   * @return the names of all tenants in alphabetical order
+   */
+  public ArrayList<String> getTenants() {
+    ArrayList<String> names = new ArrayList<>(tenants.keySet());
+    names.sort(null);
+    return names;
+  }
+
+  /**
+   * Loads a CSV file into a tenant's data.
+   *
+   * @param tenant   the name of the tenant
+   * @param filePath the path to the CSV file containing ingredient data
+   * @return true if data is loaded successfully, false otherwise
+   * @throws FileNotFoundException    if the file does not exist
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public boolean loadData(String tenant, String filePath) throws FileNotFoundException {
+    return getBackend(tenant).loadData(filePath);
+  }
+
+  /**
+   * Replaces a tenant's data with the contents of a CSV file, see
+   * BackendImplementation.reloadData. Other tenants are not affected.
+   *
+   * @param tenant   the name of the tenant
+   * @param filePath the path to the CSV file containing ingredient data
+   * @param mode     the loader used to read the file
+   * @return true if data is loaded successfully, false otherwise
+   * @throws FileNotFoundException    if the file does not exist
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public boolean reloadData(String tenant, String filePath, BackendImplementation.LoadMode mode)
+      throws FileNotFoundException {
+    return getBackend(tenant).reloadData(filePath, mode);
+  }
+
+  /**
+   * Finds substitutes for an ingredient in a tenant's data.
+   *
+   * @param tenant         the name of the tenant
+   * @param ingredientName the name of the ingredient to be replaced
+   * @return a list of potential replacement ingredients
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public ArrayList<Ingredient> getNameSubstitutes(String tenant, String ingredientName) {
+    return getBackend(tenant).getNameSubstitutes(ingredientName);
+  }
+
+  /**
+   * Looks up the calories of an ingredient in a tenant's data.
+   *
+   * @param tenant         the name of the tenant
+   * @param ingredientName the name of the ingredient
+   * @return the ingredient's calories, -1 if the tenant has no such ingredient
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public int getCalorieCount(String tenant, String ingredientName) {
+    return getBackend(tenant).getCalorieCount(ingredientName);
+  }
+
+  /**
+   * @param tenant the name of the tenant
+   * @return the number of ingredients of the tenant
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public int getIngredientCount(String tenant) {
+    return getBackend(tenant).getIngredientCount();
+  }
+
+  /**
+   * @param tenant the name of the tenant
+   * @return the estimated heap memory used by the tenant's data in bytes
+   * @throws IllegalArgumentException if there is no such tenant
+   */
+  public long estimatedBytes(String tenant) {
+    return getBackend(tenant).estimatedBytes();
+  }
+
+  /**
+   * Estimates the memory of every tenant. Each estimate visits all of the tenant's ingredients.
+   *
+   * @return the estimated heap memory used by each tenant's data in bytes, by tenant name
+   */
+  public Map<String, Long> estimatedBytesByTenant() {
+    TreeMap<String, Long> bytes = new TreeMap<>();
+    tenants.forEach((tenant, backend) -> bytes.put(tenant, backend.estimatedBytes()));
+    return bytes;
+  }
+}
@@ -4,13 +4,78 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.sun.management.ThreadMXBean;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Scanner;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class BackendDeveloperTests {
 
+  // Names of the rows of ingredients.csv in file order, read by csvNames on first use
+  private static List<String> csvNames;
+
+  /**
+   * @return the name of every row of ingredients.csv, in file order
+   */
+  private static List<String> csvNames() throws IOException {
+    if (csvNames == null) {
+      ArrayList<String> names = new ArrayList<>();
+      IngredientCsvParser.parseFile("ingredients.csv",
+          (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+              names.add(IngredientCsvParser.decode(buffer, nameStart, nameEnd)));
+      csvNames = List.copyOf(names);
+    }
+    return csvNames;
+  }
+
+  /**
+   * @return a BackendImplementation loaded from ingredients.csv, to compare other backends with
+   */
+  private static BackendImplementation loadedBaseline() throws FileNotFoundException {
+    BackendImplementation baseline = new BackendImplementation();
+    baseline.loadData("ingredients.csv");
+    return baseline;
+  }
+
+  /**
+   * Checks that a backend answers like a baseline that went through the same changes: the same
+   * counts, and the same calories and substitutes for every seventh name of ingredients.csv from
+   * first on. Two BackendImplementations must also agree on a calorie range and a median.
+   *
+   * @param baseline the backend whose answers are expected
+   * @param actual   the backend under test
+   * @param first    the index of the first name to query, so that repeated checks can query
+   *                 different names
+   */
+  private static void assertMatchesBaseline(BackendInterface baseline, BackendInterface actual,
+      int first) throws IOException {
+    Assertions.assertEquals(baseline.getIngredientCount(), actual.getIngredientCount());
+    Assertions.assertEquals(baseline.getCategoryCount(), actual.getCategoryCount());
+    List<String> names = csvNames();
+    for (int i = first; i < names.size(); i += 7) {
+      String name = names.get(i);
+      Assertions.assertEquals(baseline.getCalorieCount(name), actual.getCalorieCount(name), name);
+      Assertions.assertEquals(baseline.getNameSubstitutes(name).toString(),
+          actual.getNameSubstitutes(name).toString(), name);
+    }
+    if (baseline instanceof BackendImplementation && actual instanceof BackendImplementation) {
+      BackendImplementation expected = (BackendImplementation) baseline;
+      BackendImplementation backend = (BackendImplementation) actual;
+      Assertions.assertEquals(expected.countIngredientsInCalorieRange(100, 200),
+          backend.countIngredientsInCalorieRange(100, 200));
+      Assertions.assertEquals(expected.getMedianCalories("Fruits"),
+          backend.getMedianCalories("Fruits"));
+    }
+  }
+
   /**
    * Test if method loadData handles non-existent file.
    */
@@ -202,6 +267,869 @@ public class BackendDeveloperTests {
     backend.clearData();
   }
 
+  /**
+   * Tests that ingredients are ordered by category, then calories, then name, and that ingredients
+   * with equal keys are grouped into a single node of the tree.
+   */
+  @Test
+  public void testIngredientCompositeOrdering() {
+    Ingredient apple = new Ingredient("Fruits", "Apple", 52);
+    Ingredient banana = new Ingredient("Fruits", "Banana", 89);
+    Ingredient kale = new Ingredient("Vegetables", "Kale", 49);
+
+    Assertions.assertTrue(apple.compareTo(banana) < 0);
+    Assertions.assertTrue(banana.compareTo(kale) < 0); // category is compared first
+    Assertions.assertEquals(0, apple.compareTo(new Ingredient("Fruits", "Apple", 52)));
+
+    IterableMultiKeyRBT<Ingredient> tree = new IterableMultiKeyRBT<>();
+    Assertions.assertTrue(tree.insertSingleKey(kale));
+    Assertions.assertTrue(tree.insertSingleKey(banana));
+    Assertions.assertTrue(tree.insertSingleKey(apple));
+    Assertions.assertFalse(tree.insertSingleKey(new Ingredient("Fruits", "Apple", 52)));
+    Assertions.assertEquals(3, tree.size());
+    Assertions.assertEquals(4, tree.numKeys());
+    Assertions.assertTrue(tree.contains(new KeyList<>(new Ingredient("Fruits", "Banana", 89))));
+  }
+
+  /**
+   * Tests that substitutes come from the same category, have equal or up to 30 more calories than
+   * the original, and are returned in increasing calorie order.
+   */
+  @Test
+  public void testSubstitutesRangeScan() {
+    BackendImplementation backend = new BackendImplementation();
+    backend.insertIngredient(new Ingredient("Fruits", "Pear", 57));
+    backend.insertIngredient(new Ingredient("Fruits", "Grape", 69));
+    backend.insertIngredient(new Ingredient("Fruits", "Kiwi", 61));
+    backend.insertIngredient(new Ingredient("Fruits", "Apple", 52));
+    backend.insertIngredient(new Ingredient("Fruits", "Banana", 89));
+    backend.insertIngredient(new Ingredient("Fruits", "Plum", 46));
+    backend.insertIngredient(new Ingredient("Vegetables", "Peas", 60));
+    backend.insertIngredient(new Ingredient("Fruits", "Apricot", 52));
+
+    ArrayList<Ingredient> substitutes = backend.getNameSubstitutes("Apple");
+    Assertions.assertEquals(3, substitutes.size());
+    Assertions.assertEquals("Apricot", substitutes.get(0).getName());
+    Assertions.assertEquals("Pear", substitutes.get(1).getName());
+    Assertions.assertEquals("Kiwi", substitutes.get(2).getName());
+
+    // Only Banana is within range of Grape, and nothing is within range of Banana
+    Assertions.assertEquals(1, backend.getNameSubstitutes("Grape").size());
+    Assertions.assertTrue(backend.getNameSubstitutes("Banana").isEmpty());
+    backend.clearData();
+  }
+
+  /**
+   * Tests that the byte level CSV parser handles quoted categories, CRLF line endings, multi-byte
+   * names and a last line without a newline.
+   */
+  @Test
+  public void testCsvParserFields() {
+    String csv = "\"Pastries,Breads&Rolls\",Bagel,100g,257 cal,1079 kJ\r\n"
+        + "FastFood,Arby\u2019s Reuben,100g,208 cal,874 kJ";
+    java.nio.ByteBuffer buffer =
+        java.nio.ByteBuffer.wrap(csv.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    ArrayList<Ingredient> rows = new ArrayList<>();
+    ArrayList<Integer> kilojoules = new ArrayList<>();
+
+    int count = IngredientCsvParser.parse(buffer, 0, buffer.limit(),
+        (buf, categoryStart, categoryEnd, nameStart, nameEnd, calories, kj) -> {
+          rows.add(new Ingredient(IngredientCsvParser.decode(buf, categoryStart, categoryEnd),
+              IngredientCsvParser.decode(buf, nameStart, nameEnd), calories));
+          kilojoules.add(kj);
+        });
+
+    Assertions.assertEquals(2, count);
+    Assertions.assertEquals("\"Pastries,Breads&Rolls\"", rows.get(0).getCategory());
+    Assertions.assertEquals("Bagel", rows.get(0).getName());
+    Assertions.assertEquals(257, rows.get(0).getCalories());
+    Assertions.assertEquals(1079, kilojoules.get(0));
+    Assertions.assertEquals("Arby\u2019s Reuben", rows.get(1).getName());
+    Assertions.assertEquals(208, rows.get(1).getCalories());
+    Assertions.assertEquals(874, kilojoules.get(1));
+  }
+
+  /**
+   * Tests that the memory mapped loader produces the same data as the Scanner based loader.
+   */
+  @Test
+  public void testMappedLoaderMatchesScannerLoader() throws FileNotFoundException {
+    BackendImplementation backend = new BackendImplementation();
+    backend.loadData("ingredients.csv", BackendImplementation.LoadMode.SCANNER);
+    int scannerIngredients = backend.getIngredientCount();
+    int scannerCategories = backend.getCategoryCount();
+    ArrayList<Ingredient> scannerSubstitutes = backend.getNameSubstitutes("Bagel");
+
+    backend.clearData();
+    backend.loadData("ingredients.csv", BackendImplementation.LoadMode.MAPPED);
+    Assertions.assertEquals(1993, backend.getIngredientCount());
+    Assertions.assertEquals(scannerIngredients, backend.getIngredientCount());
+    Assertions.assertEquals(scannerCategories, backend.getCategoryCount());
+    Assertions.assertEquals(257, backend.getCalorieCount("Bagel"));
+    Assertions.assertEquals(208, backend.getCalorieCount("Arby\u2019s Reuben"));
+    ArrayList<Ingredient> mappedSubstitutes = backend.getNameSubstitutes("Bagel");
+    Assertions.assertEquals(scannerSubstitutes.size(), mappedSubstitutes.size());
+    for (int i = 0; i < scannerSubstitutes.size(); i++) {
+      Assertions.assertEquals(scannerSubstitutes.get(i).getName(),
+          mappedSubstitutes.get(i).getName());
+    }
+    backend.clearData();
+  }
+
+  /**
+   * Tests that chunked parallel parsing returns exactly the rows of a sequential parse, in order,
+   * when the file is split into many small chunks.
+   */
+  @Test
+  public void testParallelChunksMatchSequentialParse() throws IOException {
+    ArrayList<String> sequential = new ArrayList<>();
+    IngredientCsvParser.parseFile("ingredients.csv",
+        (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+            sequential.add(IngredientCsvParser.decode(buffer, categoryStart, nameEnd)));
+
+    ArrayList<String> parallel = new ArrayList<>();
+    java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+    List<ArrayList<Ingredient>> chunks = ParallelCsvLoader.parse("ingredients.csv", pool, 1024);
+    pool.shutdown();
+    for (ArrayList<Ingredient> chunk : chunks) {
+      for (Ingredient ingredient : chunk) {
+        parallel.add(ingredient.getCategory() + "," + ingredient.getName());
+      }
+    }
+
+    Assertions.assertTrue(chunks.size() > 10);
+    Assertions.assertEquals(sequential, parallel);
+  }
+
+  /**
+   * Tests that a parallel load produces the same counts, calories and substitutes as a
+   * sequential load.
+   */
+  @Test
+  public void testParallelLoadMatchesSequentialLoad() throws IOException {
+    List<String> names = csvNames();
+
+    BackendImplementation backend = new BackendImplementation();
+    backend.loadData("ingredients.csv", BackendImplementation.LoadMode.MAPPED);
+    int ingredients = backend.getIngredientCount();
+    int categories = backend.getCategoryCount();
+    ArrayList<String> expected = new ArrayList<>();
+    for (String name : names) {
+      expected.add(backend.getCalorieCount(name) + " " + backend.getNameSubstitutes(name));
+    }
+
+    backend.clearData();
+    backend.loadData("ingredients.csv", BackendImplementation.LoadMode.PARALLEL);
+    Assertions.assertEquals(ingredients, backend.getIngredientCount());
+    Assertions.assertEquals(categories, backend.getCategoryCount());
+    ArrayList<String> actual = new ArrayList<>();
+    for (String name : names) {
+      actual.add(backend.getCalorieCount(name) + " " + backend.getNameSubstitutes(name));
+    }
+    Assertions.assertEquals(expected, actual);
+    backend.clearData();
+  }
+
+  /**
+   * Tests that a backend restored from a snapshot answers the same queries as the backend that
+   * wrote it, and that damaged snapshots are rejected.
+   */
+  @Test
+  public void testSnapshotRoundTrip() throws IOException {
+    List<String> names = csvNames();
+    java.nio.file.Path snapshot = java.nio.file.Files.createTempFile("ingredients", ".snap");
+
+    BackendImplementation backend = new BackendImplementation();
+    backend.loadData("ingredients.csv");
+    backend.saveSnapshot(snapshot.toString());
+    int ingredients = backend.getIngredientCount();
+    int categories = backend.getCategoryCount();
+    ArrayList<Integer> calories = new ArrayList<>();
+    ArrayList<String> substitutes = new ArrayList<>();
+    for (String name : names) {
+      calories.add(backend.getCalorieCount(name));
+      substitutes.add(backend.getNameSubstitutes(name).toString());
+    }
+
+    backend.clearData();
+    Assertions.assertTrue(backend.loadSnapshot(snapshot.toString()));
+    Assertions.assertEquals(ingredients, backend.getIngredientCount());
+    Assertions.assertEquals(categories, backend.getCategoryCount());
+    // The rows are restored in insertion order, so equal calories and duplicate names are
+    // ordered as they were before the snapshot was written.
+    for (int i = 0; i < names.size(); i++) {
+      Assertions.assertEquals(calories.get(i), backend.getCalorieCount(names.get(i)));
+      Assertions.assertEquals(substitutes.get(i),
+          backend.getNameSubstitutes(names.get(i)).toString(), names.get(i));
+    }
+    Assertions.assertEquals(3, backend.getNameSubstitutes("Pineapple").size());
+
+    // Flip one byte in the middle of the file: the checksum no longer matches.
+    byte[] bytes = java.nio.file.Files.readAllBytes(snapshot);
+    bytes[bytes.length / 2] ^= 1;
+    java.nio.file.Files.write(snapshot, bytes);
+    backend.clearData();
+    Assertions.assertFalse(backend.loadSnapshot(snapshot.toString()));
+    Assertions.assertFalse(backend.loadSnapshot("ingredients.csv"));
+    Assertions.assertEquals(0, backend.getIngredientCount());
+    Assertions.assertThrows(FileNotFoundException.class,
+        () -> backend.loadSnapshot("non_existent_file.snap"));
+    java.nio.file.Files.delete(snapshot);
+  }
+
+  /**
+   * Tests that ArrayKeyList keeps keys in insertion order as it grows, finds keys, and rejects keys
+   * that do not compare equal to its first key.
+   */
+  @Test
+  public void testArrayKeyList() {
+    ArrayKeyList<Ingredient> list = new ArrayKeyList<>(new Ingredient("Fruits", "Apple", 52));
+    ArrayList<Ingredient> added = new ArrayList<>();
+    added.add(list.firstKey());
+    for (int i = 0; i < 20; i++) {
+      Ingredient copy = new Ingredient("Fruits", "Apple", 52);
+      list.addKey(copy);
+      added.add(copy);
+    }
+
+    Assertions.assertEquals(21, list.size());
+    ArrayList<Ingredient> iterated = new ArrayList<>();
+    list.forEach(iterated::add);
+    Assertions.assertEquals(added, iterated);
+    Assertions.assertTrue(list.containsKey(added.get(20)));
+    Assertions.assertFalse(list.containsKey(new Ingredient("Fruits", "Apple", 52)));
+    Assertions.assertEquals(0, list.compareTo(new KeyList<>(new Ingredient("Fruits", "Apple", 52))));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> list.addKey(new Ingredient("Fruits", "Banana", 89)));
+  }
+
+  /**
+   * Tests that trees using LinkedList and array backed key lists hold the same keys in the same
+   * order.
+   */
+  @Test
+  public void testKeyListImplementationsAgree() {
+    IterableMultiKeyRBT<Integer> linked = IterableMultiKeyRBT.withKeyLists(KeyList::new);
+    IterableMultiKeyRBT<Integer> array = new IterableMultiKeyRBT<>();
+    for (int i = 0; i < 500; i++) {
+      Assertions.assertEquals(linked.insertSingleKey(i % 37), array.insertSingleKey(i % 37));
+    }
+    Assertions.assertEquals(linked.size(), array.size());
+    Assertions.assertEquals(linked.numKeys(), array.numKeys());
+    Assertions.assertIterableEquals(linked, array);
+  }
+
+  /**
+   * Tests that the counting multiset keeps one count per distinct key, and that a key whose count
+   * drops to zero no longer counts as distinct.
+   */
+  @Test
+  public void testCountingMultiset() {
+    CountingMultiset<String> multiset = new CountingMultiset<>();
+    for (int i = 0; i < 1000; i++) {
+      multiset.increment(i % 2 == 0 ? "Fruits" : "Vegetables");
+    }
+    Assertions.assertEquals(7, multiset.increment("Beverages", 7));
+    Assertions.assertEquals(1007L, multiset.totalCount());
+    Assertions.assertEquals(3, multiset.distinctCount());
+    Assertions.assertEquals(500, multiset.count("Fruits"));
+    Assertions.assertEquals(0, multiset.count("Meat"));
+    Assertions.assertIterableEquals(List.of("Beverages", "Fruits", "Vegetables"), multiset);
+
+    for (int i = 7; i > 0; i--) {
+      Assertions.assertEquals(i - 1, multiset.decrement("Beverages"));
+    }
+    Assertions.assertEquals(1000L, multiset.totalCount());
+    Assertions.assertEquals(2, multiset.distinctCount());
+    Assertions.assertIterableEquals(List.of("Fruits", "Vegetables"), multiset);
+    Assertions.assertThrows(NoSuchElementException.class, () -> multiset.decrement("Beverages"));
+
+    multiset.increment("Beverages");
+    Assertions.assertEquals(3, multiset.distinctCount());
+    multiset.validate();
+    multiset.clear();
+    Assertions.assertEquals(0L, multiset.totalCount());
+    Assertions.assertTrue(multiset.isEmpty());
+  }
+
+  /**
+   * Tests that ingredients of the same category share one category id and String, and that
+   * categories still sort alphabetically whatever order their ids were assigned in.
+   */
+  @Test
+  public void testCategoryDictionary() {
+    Ingredient zucchini = new Ingredient(new String("Zz Test Squash"), "Zucchini", 17);
+    Ingredient pumpkin = new Ingredient(new String("Zz Test Squash"), "Pumpkin", 26);
+    Ingredient almond = new Ingredient("Aa Test Nuts", "Almond", 579);
+
+    Assertions.assertEquals(zucchini.getCategoryId(), pumpkin.getCategoryId());
+    Assertions.assertSame(zucchini.getCategory(), pumpkin.getCategory());
+    Assertions.assertTrue(almond.getCategoryId() > zucchini.getCategoryId());
+    Assertions.assertTrue(almond.compareTo(zucchini) < 0);
+    Assertions.assertEquals("Aa Test Nuts", CategoryDictionary.nameOf(almond.getCategoryId()));
+
+    zucchini.setCategory("Aa Test Nuts");
+    Assertions.assertEquals(almond.getCategoryId(), zucchini.getCategoryId());
+    Assertions.assertThrows(IndexOutOfBoundsException.class,
+        () -> CategoryDictionary.nameOf(CategoryDictionary.size()));
+  }
+
+  /**
+   * Tests the calorie range count and category median against a scan of the loaded ingredients.
+   */
+  @Test
+  public void testCalorieRangeAndMedian() throws IOException {
+    BackendImplementation backend = new BackendImplementation();
+    backend.loadData("ingredients.csv");
+    ArrayList<Integer> fruitCalories = new ArrayList<>();
+    int[] inRange = new int[1];
+    IngredientCsvParser.parseFile("ingredients.csv",
+        (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) -> {
+          if (calories >= 100 && calories <= 200) {
+            inRange[0]++;
+          }
+          if (IngredientCsvParser.decode(buffer, categoryStart, categoryEnd).equals("Fruits")) {
+            fruitCalories.add(calories);
+          }
+        });
+    java.util.Collections.sort(fruitCalories);
+
+    Assertions.assertEquals(inRange[0], backend.countIngredientsInCalorieRange(100, 200));
+    Assertions.assertEquals(fruitCalories.get((fruitCalories.size() - 1) / 2),
+        backend.getMedianCalories("Fruits"));
+    Assertions.assertEquals(-1, backend.getMedianCalories("Not A Category"));
+  }
+
+  /**
+   * Tests that removing and updating single ingredients keeps every index consistent, including
+   * for names that occur in more than one category.
+   */
+  @Test
+  public void testRemoveAndUpdateIngredient() {
+    BackendImplementation backend = new BackendImplementation();
+    backend.insertIngredient(new Ingredient("Fruits", "Apple", 52));
+    backend.insertIngredient(new Ingredient("Fruits", "Pear", 57));
+    backend.insertIngredient(new Ingredient("Fruits", "Plum", 46));
+    backend.insertIngredient(new Ingredient("Baking", "Apple", 70));
+
+    Assertions.assertFalse(backend.removeIngredient("Mango"));
+    Assertions.assertTrue(backend.removeIngredient("Apple"));
+    Assertions.assertEquals(3, backend.getIngredientCount());
+    Assertions.assertEquals(70, backend.getCalorieCount("Apple")); // the other Apple takes over
+    Assertions.assertEquals(1, backend.getNameSubstitutes("Plum").size());
+
+    Assertions.assertTrue(backend.updateIngredient("Pear", new Ingredient("Fruits", "Pear", 60)));
+    Assertions.assertEquals(60, backend.getCalorieCount("Pear"));
+    Assertions.assertEquals(3, backend.getIngredientCount());
+    Assertions.assertEquals(1, backend.countIngredientsInCalorieRange(60, 60));
+    Assertions.assertEquals(0, backend.countIngredientsInCalorieRange(57, 57));
+
+    Assertions.assertTrue(backend.updateIngredient("Apple", new Ingredient("Fruits", "Quince", 57)));
+    Assertions.assertEquals(-1, backend.getCalorieCount("Apple"));
+    Assertions.assertEquals(57, backend.getCalorieCount("Quince"));
+    Assertions.assertEquals(1, backend.getCategoryCount()); // no Baking ingredients are left
+
+    Assertions.assertTrue(backend.removeIngredient("Plum"));
+    Assertions.assertTrue(backend.removeIngredient("Pear"));
+    Assertions.assertTrue(backend.removeIngredient("Quince"));
+    Assertions.assertEquals(0, backend.getIngredientCount());
+    Assertions.assertEquals(0, backend.getCategoryCount());
+  }
+
+  /**
+   * Tests that changing an ingredient held by a backend through its setters moves it in every
+   * index, and that a released ingredient can be changed freely.
+   */
+  @Test
+  public void testSettersReindexIngredient() {
+    BackendImplementation backend = new BackendImplementation();
+    Ingredient kiwi = new Ingredient("Fruits", "Kiwi", 61);
+    backend.insertIngredient(kiwi);
+    backend.insertIngredient(new Ingredient("Fruits", "Grape", 69));
+    backend.insertIngredient(new Ingredient("Fruits", "Fig", 74));
+    Assertions.assertNotNull(kiwi.getOwner());
+    Assertions.assertFalse(backend.insertIngredient(kiwi));
+
+    kiwi.setCalories(200);
+    Assertions.assertEquals(200, backend.getCalorieCount("Kiwi"));
+    Assertions.assertEquals(1, backend.countIngredientsInCalorieRange(200, 200));
+    Assertions.assertEquals(1, backend.getNameSubstitutes("Grape").size()); // only Fig is left
+
+    kiwi.setName("Golden Kiwi");
+    Assertions.assertEquals(-1, backend.getCalorieCount("Kiwi"));
+    Assertions.assertEquals(200, backend.getCalorieCount("Golden Kiwi"));
+
+    kiwi.setCategory("Berries");
+    kiwi.setCalories(70);
+    Assertions.assertEquals(2, backend.getCategoryCount());
+    Assertions.assertEquals(0, backend.getNameSubstitutes("Golden Kiwi").size());
+    Assertions.assertEquals(1, backend.getNameSubstitutes("Grape").size());
+    Assertions.assertEquals(3, backend.getIngredientCount());
+
+    Assertions.assertTrue(backend.removeIngredient("Golden Kiwi"));
+    Assertions.assertNull(kiwi.getOwner());
+    kiwi.setCalories(10);
+    Assertions.assertEquals(2, backend.getIngredientCount());
+    Assertions.assertEquals(0, backend.countIngredientsInCalorieRange(0, 60));
+
+    backend.clearData();
+    Assertions.assertTrue(backend.insertIngredient(kiwi));
+  }
+
+  /**
+   * Tests that reloading builds the new data before replacing the old, so readers only ever see a
+   * complete dataset, and that a failed reload keeps the current data.
+   */
+  @Test
+  public void testReloadData() throws Exception {
+    BackendImplementation backend = new BackendImplementation();
+    int expected = (int) IngredientCsvParser.parseFile("ingredients.csv",
+        (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) -> {});
+    Ingredient extra = new Ingredient("Fruits", "Reload Test Fruit", 50);
+    backend.insertIngredient(extra);
+
+    // Count every value a reader sees while the reload runs; only 1 and expected are complete.
+    AtomicBoolean done = new AtomicBoolean();
+    Set<Integer> seen = ConcurrentHashMap.newKeySet();
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        seen.add(backend.getIngredientCount());
+      }
+    });
+    reader.start();
+    CompletableFuture<Boolean> reload = backend.reloadDataAsync("ingredients.csv",
+        BackendImplementation.LoadMode.MAPPED, ForkJoinPool.commonPool());
+    Assertions.assertTrue(reload.get());
+    done.set(true);
+    reader.join();
+    seen.remove(1);
+    seen.remove(expected);
+    Assertions.assertTrue(seen.isEmpty());
+
+    Assertions.assertEquals(expected, backend.getIngredientCount());
+    Assertions.assertEquals(-1, backend.getCalorieCount("Reload Test Fruit"));
+    Assertions.assertNull(extra.getOwner());
+
+    Assertions.assertThrows(FileNotFoundException.class,
+        () -> backend.reloadData("missing.csv", BackendImplementation.LoadMode.SCANNER));
+    Assertions.assertEquals(expected, backend.getIngredientCount());
+  }
+
+  /**
+   * Tests that backends keep their data apart and that the tenant registry routes every call to
+   * the right tenant and accounts memory per tenant.
+   */
+  @Test
+  public void testTenantRegistry() throws FileNotFoundException {
+    BackendImplementation first = new BackendImplementation();
+    BackendImplementation second = new BackendImplementation();
+    first.insertIngredient(new Ingredient("Fruits", "Kiwi", 61));
+    Assertions.assertEquals(1, first.getIngredientCount());
+    Assertions.assertEquals(0, second.getIngredientCount());
+
+    TenantRegistry registry = new TenantRegistry();
+    registry.addTenant("us");
+    registry.addTenant("eu").insertIngredient(new Ingredient("Fruits", "Kiwi", 58));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> registry.addTenant("eu"));
+    Assertions.assertTrue(registry.loadData("us", "ingredients.csv"));
+    Assertions.assertEquals(List.of("eu", "us"), registry.getTenants());
+
+    Assertions.assertEquals(1, registry.getIngredientCount("eu"));
+    Assertions.assertEquals(58, registry.getCalorieCount("eu", "Kiwi"));
+    Assertions.assertEquals(61, first.getCalorieCount("Kiwi"));
+    Assertions.assertTrue(registry.getIngredientCount("us") > 1);
+    Assertions.assertEquals(-1, registry.getCalorieCount("us", "Missing Ingredient"));
+
+    long eu = registry.estimatedBytes("eu");
+    long us = registry.estimatedBytes("us");
+    Assertions.assertTrue(eu > 0 && us > eu);
+    Assertions.assertEquals(eu, registry.estimatedBytesByTenant().get("eu"));
+
+    Assertions.assertTrue(registry.removeTenant("eu"));
+    Assertions.assertFalse(registry.removeTenant("eu"));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> registry.getNameSubstitutes("eu", "Kiwi"));
+    Assertions.assertEquals(List.of("us"), registry.getTenants());
+  }
+
+  /**
+   * Tests that readers of a ConcurrentBackend get consistent answers while another thread inserts
+   * and removes ingredients.
+   */
+  @Test
+  public void testConcurrentBackend() throws Exception {
+    ConcurrentBackend backend = new ConcurrentBackend();
+    Assertions.assertTrue(backend.loadData("ingredients.csv"));
+    int loaded = backend.getIngredientCount();
+    backend.insertIngredient(new Ingredient("Fruits", "Concurrent Kiwi", 61));
+
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicBoolean failed = new AtomicBoolean();
+    Thread[] readers = new Thread[3];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread(() -> {
+        while (!done.get()) {
+          if (backend.getCalorieCount("Concurrent Kiwi") != 61
+              || backend.getNameSubstitutes("Concurrent Kiwi").size() > 3) {
+            failed.set(true);
+          }
+        }
+      });
+      readers[i].start();
+    }
+    for (int i = 0; i < 2000; i++) {
+      backend.insertIngredient(new Ingredient("Fruits", "Concurrent Fruit " + i, i % 100));
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      backend.removeIngredient("Concurrent Fruit " + i);
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    Assertions.assertFalse(failed.get());
+    Assertions.assertEquals(loaded + 1001, backend.getIngredientCount());
+    Assertions.assertEquals(-1, backend.getCalorieCount("Concurrent Fruit 10"));
+    Assertions.assertEquals(11, backend.getCalorieCount("Concurrent Fruit 11"));
+  }
+
+  /**
+   * Tests that reloading a ConcurrentBackend while another thread inserts ingredients keeps every
+   * insertion either in the new data or out of it entirely.
+   */
+  @Test
+  public void testConcurrentReload() throws Exception {
+    ConcurrentBackend backend = new ConcurrentBackend();
+    Assertions.assertTrue(backend.loadData("ingredients.csv"));
+    int loaded = backend.getIngredientCount();
+
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < 2000; i++) {
+        backend.insertIngredient(new Ingredient("Fruits", "Reload Fruit " + i, i % 100));
+      }
+    });
+    writer.start();
+    for (int i = 0; i < 3; i++) {
+      Assertions.assertTrue(
+          backend.reloadData("ingredients.csv", BackendImplementation.LoadMode.MAPPED));
+    }
+    writer.join();
+
+    int kept = 0;
+    for (int i = 0; i < 2000; i++) {
+      int calories = backend.getCalorieCount("Reload Fruit " + i);
+      if (calories != -1) {
+        Assertions.assertEquals(i % 100, calories);
+        kept++;
+      }
+    }
+    Assertions.assertEquals(loaded + kept, backend.getIngredientCount());
+    // An ingredient that survived the reload can still be removed from the new data.
+    if (kept > 0) {
+      Assertions.assertTrue(backend.removeIngredient("Reload Fruit 1999"));
+      Assertions.assertEquals(loaded + kept - 1, backend.getIngredientCount());
+    }
+  }
+
+  /**
+   * Tests that SkipListBackend answers like BackendImplementation, including after removals,
+   * updates and setter changes, and while several threads insert at once.
+   */
+  @Test
+  public void testSkipListBackend() throws Exception {
+    BackendImplementation expected = loadedBaseline();
+    SkipListBackend backend = new SkipListBackend();
+    backend.loadData("ingredients.csv");
+    assertMatchesBaseline(expected, backend, 0);
+
+    Ingredient kiwi = new Ingredient("Fruits", "Skip Kiwi", 61);
+    backend.insertIngredient(kiwi);
+    backend.insertIngredient(new Ingredient("Fruits", "Skip Kiwi", 58));
+    Assertions.assertFalse(backend.insertIngredient(kiwi));
+    kiwi.setCalories(65);
+    Assertions.assertEquals(65, backend.getCalorieCount("Skip Kiwi"));
+    Assertions.assertTrue(backend.updateIngredient("Skip Kiwi", new Ingredient("Fruits", "Skip Kiwi", 70)));
+    Assertions.assertNull(kiwi.getOwner());
+    Assertions.assertEquals(70, backend.getCalorieCount("Skip Kiwi"));
+    Assertions.assertTrue(backend.removeIngredient("Skip Kiwi"));
+    Assertions.assertEquals(58, backend.getCalorieCount("Skip Kiwi"));
+    Assertions.assertTrue(backend.removeIngredient("Skip Kiwi"));
+    Assertions.assertFalse(backend.removeIngredient("Skip Kiwi"));
+    Assertions.assertEquals(expected.getIngredientCount(), backend.getIngredientCount());
+
+    Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      int writer = t;
+      writers[t] = new Thread(() -> {
+        for (int i = 0; i < 500; i++) {
+          backend.insertIngredient(
+              new Ingredient("Skip List " + (i % 5), "w" + writer + "-" + i, i));
+        }
+      });
+      writers[t].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    Assertions.assertEquals(expected.getIngredientCount() + 2000, backend.getIngredientCount());
+    Assertions.assertEquals(expected.getCategoryCount() + 5, backend.getCategoryCount());
+    // The other writers' last ingredients have the same category and calories.
+    Assertions.assertEquals(3, backend.getNameSubstitutes("w0-499").size());
+
+    // One thread removes ingredients while another changes them and a third inserts them again.
+    Ingredient[] racing = new Ingredient[1000];
+    for (int i = 0; i < racing.length; i++) {
+      racing[i] = new Ingredient("Skip Race", "race-" + i, i % 50);
+      backend.insertIngredient(racing[i]);
+    }
+    Thread remover = new Thread(() -> {
+      for (int i = 0; i < racing.length; i++) {
+        backend.removeIngredient("race-" + i);
+      }
+    });
+    Thread changer = new Thread(() -> {
+      for (int i = 0; i < racing.length; i++) {
+        racing[i].setCalories(i % 50 + 1);
+      }
+    });
+    Thread inserter = new Thread(() -> {
+      for (int i = 0; i < racing.length; i++) {
+        backend.insertIngredient(racing[i]);
+      }
+    });
+    remover.start();
+    changer.start();
+    inserter.start();
+    remover.join();
+    changer.join();
+    inserter.join();
+    int held = 0;
+    for (Ingredient ingredient : racing) {
+      if (ingredient.getOwner() != null) {
+        Assertions.assertEquals(ingredient.getCalories(),
+            backend.getCalorieCount(ingredient.getName()));
+        held++;
+      } else {
+        Assertions.assertEquals(-1, backend.getCalorieCount(ingredient.getName()));
+      }
+    }
+    Assertions.assertEquals(expected.getIngredientCount() + 2000 + held,
+        backend.getIngredientCount());
+    for (Ingredient ingredient : racing) {
+      backend.removeIngredient(ingredient.getName());
+    }
+    // No entry is left behind in the skip list once every name is removed.
+    Assertions.assertTrue(backend.insertIngredient(new Ingredient("Skip Race", "race-probe", 25)));
+    Assertions.assertEquals(0, backend.getNameSubstitutes("race-probe").size());
+    Assertions.assertEquals(expected.getCategoryCount() + 6, backend.getCategoryCount());
+    backend.clearData();
+    Assertions.assertEquals(0, backend.getIngredientCount());
+    Assertions.assertEquals(0, backend.getCategoryCount());
+  }
+
+  /**
+   * Tests that OffHeapBackend answers queries like BackendImplementation, keeps the kilojoules of
+   * the CSV file, and copies the ingredients it stores and returns.
+   */
+  @Test
+  public void testOffHeapBackend() throws Exception {
+    BackendImplementation expected = loadedBaseline();
+    OffHeapBackend backend = new OffHeapBackend();
+    backend.loadData("ingredients.csv");
+    assertMatchesBaseline(expected, backend, 0);
+    Assertions.assertEquals(1554, backend.getKilojoules("1000 Island Dressing"));
+    Assertions.assertTrue(backend.offHeapBytes() > 0);
+
+    Ingredient kiwi = new Ingredient("Fruits", "Off Heap Kiwi", 61);
+    Assertions.assertTrue(backend.insertIngredient(kiwi));
+    backend.insertIngredient(new Ingredient("Fruits", "Off Heap Kiwi", 58));
+    Assertions.assertNull(kiwi.getOwner());
+    kiwi.setCalories(65);
+    Assertions.assertEquals(61, backend.getCalorieCount("Off Heap Kiwi"));
+    Assertions.assertEquals(255, backend.getKilojoules("Off Heap Kiwi"));
+    Assertions.assertTrue(backend.updateIngredient("Off Heap Kiwi",
+        new Ingredient("Fruits", "Off Heap Kiwi", 70)));
+    Assertions.assertEquals(70, backend.getCalorieCount("Off Heap Kiwi"));
+    Assertions.assertTrue(backend.removeIngredient("Off Heap Kiwi"));
+    Assertions.assertEquals(58, backend.getCalorieCount("Off Heap Kiwi"));
+    Assertions.assertTrue(backend.updateIngredient("Off Heap Kiwi",
+        new Ingredient("Fruits", "Renamed Kiwi", 58)));
+    Assertions.assertFalse(backend.removeIngredient("Off Heap Kiwi"));
+    Assertions.assertEquals(58, backend.getCalorieCount("Renamed Kiwi"));
+    Assertions.assertTrue(backend.removeIngredient("Renamed Kiwi"));
+    Assertions.assertEquals(expected.getIngredientCount(), backend.getIngredientCount());
+
+    // Names are compared with the stored UTF-8 bytes without encoding them into an array, also
+    // for characters that take two to four bytes and for lone surrogates, which encode as '?'.
+    String[] encoded = {"Cr\u00e8me br\u00fbl\u00e9e", "\u62b9\u8336", "\ud83c\udf53 Berry",
+        "Lone \ud800 Surrogate"};
+    for (int i = 0; i < encoded.length; i++) {
+      backend.insertIngredient(new Ingredient("Encoded", encoded[i], 10 + i));
+      Assertions.assertEquals(10 + i, backend.getCalorieCount(encoded[i]));
+    }
+    Assertions.assertEquals(13, backend.getCalorieCount("Lone ? Surrogate"));
+    Assertions.assertEquals(-1, backend.getCalorieCount("Cr\u00e8me br\u00fbl\u00e9"));
+    Assertions.assertEquals(-1, backend.getCalorieCount("\ud83c\udf53 Berry!"));
+    if (ManagementFactory.getThreadMXBean() instanceof ThreadMXBean) {
+      ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+      long before = allocations.getCurrentThreadAllocatedBytes();
+      long checksum = 0;
+      for (int i = 0; i < 10_000; i++) {
+        checksum += backend.getCalorieCount(encoded[i % encoded.length]);
+      }
+      long allocated = allocations.getCurrentThreadAllocatedBytes() - before;
+      Assertions.assertTrue(allocated < 10_000, "lookups allocated " + allocated + " bytes");
+      Assertions.assertEquals(115_000, checksum);
+    }
+    for (String name : encoded) {
+      Assertions.assertTrue(backend.removeIngredient(name));
+    }
+    Assertions.assertEquals(expected.getIngredientCount(), backend.getIngredientCount());
+
+    for (int i = 0; i < 5000; i++) {
+      backend.insertIngredient(new Ingredient("Off Heap " + (i % 5), "o" + i, i % 100));
+    }
+    Assertions.assertEquals(expected.getIngredientCount() + 5000, backend.getIngredientCount());
+    Assertions.assertEquals(expected.getCategoryCount() + 5, backend.getCategoryCount());
+    // Ingredients with equal calories come in insertion order.
+    ArrayList<Ingredient> substitutes = backend.getNameSubstitutes("o0");
+    Assertions.assertEquals(3, substitutes.size());
+    Assertions.assertEquals("o100", substitutes.get(0).getName());
+    Assertions.assertEquals("o300", substitutes.get(2).getName());
+    backend.clearData();
+    Assertions.assertEquals(0, backend.getIngredientCount());
+    Assertions.assertEquals(-1, backend.getCalorieCount("o0"));
+  }
+
+  /**
+   * Tests that a frozen copy of a dataset answers like the dataset it was copied from and is
+   * reindexed by setters, that a frozen backend answers like an unfrozen one, also after enough
+   * changes to merge its buffered changes, and that reloaded and loaded data is frozen too.
+   */
+  @Test
+  public void testFreeze() throws Exception {
+    IngredientDataset original = new IngredientDataset();
+    IngredientCsvParser.parseFile("ingredients.csv",
+        (buffer, categoryStart, categoryEnd, nameStart, nameEnd, calories, kilojoules) ->
+            original.insertIngredient(new Ingredient(
+                IngredientCsvParser.decode(buffer, categoryStart, categoryEnd),
+                IngredientCsvParser.decode(buffer, nameStart, nameEnd), calories)));
+    List<String> names = csvNames();
+    String before = original.getNameSubstitutes(names.get(0)).toString();
+    IngredientDataset frozen = original.frozenCopy();
+    Assertions.assertTrue(frozen.isFrozen());
+    Assertions.assertFalse(original.isFrozen());
+    Assertions.assertEquals(before, frozen.getNameSubstitutes(names.get(0)).toString());
+    for (int i = 0; i < names.size(); i += 7) {
+      Assertions.assertEquals(original.getNameSubstitutes(names.get(i)).toString(),
+          frozen.getNameSubstitutes(names.get(i)).toString());
+    }
+    Assertions.assertEquals(original.getIngredientCount(), frozen.getIngredientCount());
+    Assertions.assertEquals(original.getCategoryCount(), frozen.getCategoryCount());
+    Assertions.assertEquals(original.countIngredientsInCalorieRange(100, 200),
+        frozen.countIngredientsInCalorieRange(100, 200));
+    Assertions.assertEquals(original.getMedianCalories("Fruits"),
+        frozen.getMedianCalories("Fruits"));
+    Assertions.assertEquals(original.ingredientsInOrder(), frozen.ingredientsInOrder());
+    // The copy owns the ingredients, so a setter moves an ingredient within its indexes.
+    Ingredient changed = frozen.ingredients().next();
+    Assertions.assertSame(frozen, changed.getOwner());
+    int count = frozen.countIngredientsInCalorieRange(100000, 100000);
+    changed.setCalories(100000);
+    Assertions.assertEquals(count + 1, frozen.countIngredientsInCalorieRange(100000, 100000));
+
+    BackendImplementation expected = loadedBaseline();
+    BackendImplementation backend = new BackendImplementation();
+    backend.loadData("ingredients.csv");
+    backend.freeze();
+
+    for (int round = 0; round < 3; round++) {
+      assertMatchesBaseline(expected, backend, round);
+
+      // Change enough ingredients that the frozen indexes merge their changes.
+      for (int i = round; i < names.size(); i += 3) {
+        String name = names.get(i);
+        int calories = expected.getCalorieCount(name) + 7;
+        expected.updateIngredient(name, new Ingredient("Fruits", name, calories));
+        backend.updateIngredient(name, new Ingredient("Fruits", name, calories));
+      }
+      for (int i = 0; i < 300; i++) {
+        expected.insertIngredient(new Ingredient("Frozen " + i % 3, "f" + round + "-" + i, i));
+        backend.insertIngredient(new Ingredient("Frozen " + i % 3, "f" + round + "-" + i, i));
+      }
+      Assertions.assertTrue(expected.removeIngredient(names.get(round)));
+      Assertions.assertTrue(backend.removeIngredient(names.get(round)));
+    }
+
+    backend.reloadData("ingredients.csv", BackendImplementation.LoadMode.PARALLEL);
+    BackendImplementation reloaded = loadedBaseline();
+    assertMatchesBaseline(reloaded, backend, 5);
+    // The frozen arrays take less memory than the red-black trees.
+    Assertions.assertTrue(backend.estimatedBytes() < reloaded.estimatedBytes());
+
+    // Loading into a cleared frozen backend publishes a frozen copy once the file is loaded, and
+    // a second load keeps the ingredients that were already there.
+    backend.clearData();
+    Assertions.assertTrue(backend.loadData("ingredients.csv"));
+    assertMatchesBaseline(reloaded, backend, 6);
+    Assertions.assertTrue(backend.estimatedBytes() < reloaded.estimatedBytes());
+    Assertions.assertTrue(
+        backend.loadData("ingredients.csv", BackendImplementation.LoadMode.PARALLEL));
+    Assertions.assertEquals(2 * reloaded.getIngredientCount(), backend.getIngredientCount());
+    Assertions.assertEquals(2 * reloaded.countIngredientsInCalorieRange(100, 200),
+        backend.countIngredientsInCalorieRange(100, 200));
+  }
+
+  /**
+   * Tests that a backend whose ingredients and calorie indexes are kept in B+-trees answers like
+   * one using the default red-black trees, through inserts, updates and removals, and needs less
+   * memory.
+   */
+  @Test
+  public void testBPlusTreeBackend() throws Exception {
+    BackendImplementation expected = loadedBaseline();
+    BackendImplementation backend =
+        new BackendImplementation(BPlusMultiKeyTree::new, BPlusIntMultimap::new);
+    backend.loadData("ingredients.csv", BackendImplementation.LoadMode.PARALLEL);
+    List<String> names = csvNames();
+    Assertions.assertTrue(backend.estimatedBytes() < expected.estimatedBytes());
+
+    for (int round = 0; round < 3; round++) {
+      assertMatchesBaseline(expected, backend, round);
+
+      for (int i = round; i < names.size(); i += 5) {
+        String name = names.get(i);
+        int calories = expected.getCalorieCount(name) + 3;
+        expected.updateIngredient(name, new Ingredient("Fruits", name, calories));
+        backend.updateIngredient(name, new Ingredient("Fruits", name, calories));
+      }
+      for (int i = 0; i < 200; i++) {
+        expected.insertIngredient(new Ingredient("B+ " + i % 4, "b" + round + "-" + i, i));
+        backend.insertIngredient(new Ingredient("B+ " + i % 4, "b" + round + "-" + i, i));
+      }
+      for (int i = round; i < names.size(); i += 13) {
+        Assertions.assertEquals(expected.removeIngredient(names.get(i)),
+            backend.removeIngredient(names.get(i)));
+      }
+    }
+    // Removing most ingredients rebuilds the sparse B+-trees, which keep answering the same.
+    for (int i = 0; i < names.size(); i++) {
+      if (i % 10 != 0) {
+        Assertions.assertEquals(expected.removeIngredient(names.get(i)),
+            backend.removeIngredient(names.get(i)));
+      }
+    }
+    assertMatchesBaseline(expected, backend, 0);
+    Assertions.assertEquals(expected.countIngredientsInCalorieRange(0, 1000),
+        backend.countIngredientsInCalorieRange(0, 1000));
+
+    backend.clearData();
+    Assertions.assertEquals(0, backend.getIngredientCount());
+    backend.reloadData("ingredients.csv", BackendImplementation.LoadMode.MAPPED);
+    Assertions.assertEquals(names.size(), backend.getIngredientCount());
+  }
+
   @Test
   public void FrontendTest1() {
     //this tester was utilized visually to check the contents the frontend program was ouputting,